@@ -0,0 +1,76 @@
+package Utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Concurrency limit that adapts to the server (AIMD).
+ *
+ * Every successful call raises the limit by 1/limit, so about one extra
+ * slot per round of calls; an overload signal (429, 503, timeout) halves
+ * it. Callers over the limit wait in FIFO order for a permit.
+ */
+public class AdaptiveLimiter {
+
+    public enum Outcome { SUCCESS, OVERLOADED, IGNORED }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private double limit;
+    private int inFlight;
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+    }
+
+    /** Completes once a permit is held; every permit must be given back with {@link #release}. */
+    public synchronized CompletableFuture<Void> acquire() {
+        if (waiters.isEmpty() && inFlight < (int) limit) {
+            inFlight++;
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    public void release(Outcome outcome) {
+        List<CompletableFuture<Void>> ready = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            if (outcome == Outcome.SUCCESS) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            } else if (outcome == Outcome.OVERLOADED) {
+                limit = Math.max(minLimit, limit / 2);
+            }
+            while (inFlight < (int) limit && !waiters.isEmpty()) {
+                CompletableFuture<Void> waiter = waiters.poll();
+                if (waiter.isDone()) continue; // gave up while queued
+                inFlight++;
+                ready.add(waiter);
+            }
+        }
+        // Completed outside the lock: the callers start their requests from here
+        for (CompletableFuture<Void> waiter : ready) {
+            if (!waiter.complete(null)) release(Outcome.IGNORED);
+        }
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return waiters.size();
+    }
+}
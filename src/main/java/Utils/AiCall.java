@@ -0,0 +1,58 @@
+package Utils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+
+/**
+ * Handle for a running AI operation: a CompletableFuture whose cancellation
+ * reaches the work behind it.
+ *
+ * Cancelling an AiCall cancels the futures it depends on, down to the
+ * HttpClient exchange, which aborts the request (Java 16 and later; older
+ * runtimes only drop the response). Stages derived from an AiCall (thenApply,
+ * thenCompose, ...) are AiCalls that depend on it, so cancelling the last
+ * stage of a chain, as SwingAsync does when a window closes, cancels the
+ * whole chain. Only derive stages whose cancellation should stop the call.
+ */
+public class AiCall<T> extends CompletableFuture<T> {
+
+    private final List<Future<?>> upstream = new CopyOnWriteArrayList<>();
+
+    /** An AiCall that completes with source and cancels it when cancelled. */
+    public static <T> AiCall<T> of(CompletableFuture<T> source) {
+        if (source instanceof AiCall) return (AiCall<T>) source;
+        AiCall<T> call = new AiCall<>();
+        call.dependsOn(source);
+        source.whenComplete((value, error) -> {
+            if (error != null) {
+                call.completeExceptionally(error);
+            } else {
+                call.complete(value);
+            }
+        });
+        return call;
+    }
+
+    /** Cancelling this call from now on also cancels future. */
+    public AiCall<T> dependsOn(Future<?> future) {
+        upstream.add(future);
+        if (isCancelled()) future.cancel(true);
+        return this;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            for (Future<?> future : upstream) future.cancel(mayInterruptIfRunning);
+        }
+        return cancelled;
+    }
+
+    @Override
+    public <U> CompletableFuture<U> newIncompleteFuture() {
+        return new AiCall<U>().dependsOn(this);
+    }
+}
@@ -0,0 +1,49 @@
+package Utils;
+
+import java.net.http.HttpTimeoutException;
+
+/** An AI request that failed for good: bad status after retries, network error, or missing configuration. */
+public class AiException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Why the request failed, for telemetry and for deciding what to tell the user. */
+    public enum Kind {
+        NOT_CONFIGURED, NETWORK, TIMEOUT, HTTP, MALFORMED, BLOCKED, EMPTY
+    }
+
+    private final int statusCode;
+    private final Kind kind;
+
+    public AiException(String message) {
+        this(message, -1, null);
+    }
+
+    public AiException(String message, int statusCode, Throwable cause) {
+        this(message, statusCode, kindOf(statusCode, cause), cause);
+    }
+
+    public AiException(String message, int statusCode, Kind kind, Throwable cause) {
+        super(message, cause);
+        this.statusCode = statusCode;
+        this.kind = kind;
+    }
+
+    // No response at all is a network problem (or no request was sent); a 200 that fails is unreadable
+    private static Kind kindOf(int statusCode, Throwable cause) {
+        if (statusCode == -1) {
+            if (cause == null) return Kind.NOT_CONFIGURED;
+            return cause instanceof HttpTimeoutException ? Kind.TIMEOUT : Kind.NETWORK;
+        }
+        return statusCode == 200 ? Kind.MALFORMED : Kind.HTTP;
+    }
+
+    /** HTTP status of the last attempt, or -1 if no response was received. */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+}
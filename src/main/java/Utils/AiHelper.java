@@ -5,191 +5,674 @@ import create_quiz.AiQuizQuestion;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
+/**
+ * AI calls for flashcards, quizzes and free-form answers.
+ *
+ * The model is reached through an LlmProvider picked by AI_PROVIDER:
+ * "gemini" (default, with API_KEY and AI_MODEL) or "stub", which starts a
+ * StubLlmServer in-process, or uses the one at AI_STUB_URL if set.
+ *
+ * All requests share one HttpClient, so TLS sessions and HTTP/2 connections
+ * are reused between calls and many requests can be in flight at once.
+ * Timeouts come from config.properties: AI_CONNECT_TIMEOUT_SECONDS (10) and
+ * AI_REQUEST_TIMEOUT_SECONDS (60). The *Async methods never block; the
+ * plain ones wait for the async result. The async methods return an
+ * AiCall; cancelling it (or a stage derived from it) aborts the HTTP
+ * requests behind it, unless another caller still shares them. The stream* methods use the
+ * server-sent-events endpoint and hand each item to a listener as soon as
+ * it is complete, on an HTTP client thread. Flashcards and quizzes are
+ * requested in JSON mode with a response schema, and every reply is read
+ * by GeminiEnvelopeParser in a single pass.
+ *
+ * Results are cached (see AiResponseCache) under ~/.thinkdeck/ai-cache;
+ * config.properties keys AI_CACHE_ENABLED, AI_CACHE_DIR,
+ * AI_CACHE_MEMORY_ENTRIES, AI_CACHE_DISK_MB and AI_CACHE_TTL_HOURS tune it.
+ *
+ * Requests go through AiRequestExecutor: AI_RATE_PER_SECOND (2) and
+ * AI_BURST (10) set the rate limit, AI_INITIAL_CONCURRENCY (8) and
+ * AI_MAX_CONCURRENCY (16) the adaptive concurrency limit, and AI_MAX_RETRIES
+ * (4), AI_RETRY_BASE_MILLIS (500) and AI_RETRY_MAX_MILLIS (30000) the
+ * backoff. Failures complete the futures with an AiException.
+ *
+ * Quizzes have AI_QUIZ_SIZE questions and decks AI_DECK_SIZE cards (5 each)
+ * unless a count is passed. Larger requests are split into AI_CHUNK_SIZE
+ * prompts that run in parallel; their results are merged and near-duplicate
+ * questions (AI_DUPLICATE_THRESHOLD, see NearDuplicateFilter) dropped; cards
+ * are compared by question and answer together.
+ *
+ * Every model call is measured by AiTelemetry (see getTelemetry()); with
+ * AI_TELEMETRY_FILE set, a JSON snapshot is written there on exit.
+ */
 public class AiHelper {
 
-    private static final String API_KEY = loadApiKey();
-    private static final String API_URL_BASE = "https://generativelanguage.googleapis.com/v1beta/models/gemini-1.5-flash-latest:generateContent?key=";
+    private static final Properties CONFIG = loadConfig();
+    private static final LlmProvider PROVIDER = createProvider();
+    // Bump whenever a prompt below changes so cached results from the old wording are not reused
+    private static final int PROMPT_TEMPLATE_VERSION = 3;
 
-    private static String loadApiKey() {
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(configLong("AI_CONNECT_TIMEOUT_SECONDS", 10));
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(configLong("AI_REQUEST_TIMEOUT_SECONDS", 60));
+
+    // JSON mode schemas: the model must answer with exactly these shapes, no prose or fences
+    private static final JSONObject FLASHCARDS_SCHEMA = arraySchema(new JSONObject()
+            .put("question", new JSONObject().put("type", "STRING"))
+            .put("answer", new JSONObject().put("type", "STRING")));
+    private static final JSONObject QUIZ_SCHEMA = arraySchema(new JSONObject()
+            .put("question", new JSONObject().put("type", "STRING"))
+            .put("options", new JSONObject().put("type", "ARRAY").put("items", new JSONObject().put("type", "STRING")))
+            .put("correctOptionIndex", new JSONObject().put("type", "INTEGER")));
+
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .build();
+
+    private static final AiRequestExecutor EXECUTOR = new AiRequestExecutor(CLIENT,
+            new TokenBucket(configDouble("AI_RATE_PER_SECOND", 2), (int) configLong("AI_BURST", 10)),
+            new AdaptiveLimiter((int) configLong("AI_INITIAL_CONCURRENCY", 8), 1,
+                    (int) configLong("AI_MAX_CONCURRENCY", 16)),
+            (int) configLong("AI_MAX_RETRIES", 4),
+            configLong("AI_RETRY_BASE_MILLIS", 500),
+            configLong("AI_RETRY_MAX_MILLIS", 30000));
+
+    private static final int QUIZ_SIZE = sizeSetting("AI_QUIZ_SIZE");
+    private static final int DECK_SIZE = sizeSetting("AI_DECK_SIZE");
+    private static final int CHUNK_SIZE = sizeSetting("AI_CHUNK_SIZE");
+    private static final int MAX_ITEMS = 100;
+    private static final double DUPLICATE_THRESHOLD = configDouble("AI_DUPLICATE_THRESHOLD", 0.6);
+
+    // Null when AI_CACHE_ENABLED=false
+    private static final AiResponseCache CACHE = createCache();
+
+    // Identical requests already on their way to the model are shared rather than sent again
+    private static final SingleFlight<String> FLIGHTS = new SingleFlight<>();
+
+    private static final AiTelemetry TELEMETRY = createTelemetry();
+
+    private static Properties loadConfig() {
         Properties prop = new Properties();
         try (InputStream input = new FileInputStream("config.properties")) {
             prop.load(input);
-            return prop.getProperty("API_KEY");
         } catch (Exception ex) {
-            ex.printStackTrace();
-            // Handle error: maybe return a default key or throw an exception
-            return null;
+            System.err.println("Could not read config.properties, using defaults: " + ex.getMessage());
         }
+        return prop;
     }
 
-    private static String callGeminiApi(String prompt) {
-        if (API_KEY == null || API_KEY.isEmpty() || API_KEY.equals("your_secret_api_key_goes_here")) {
-            System.err.println("API Key not found or not set in config.properties. Please add it to run AI features.");
-            return "{\"error\": {\"message\": \"API Key not configured.\"}}";
+    private static AiTelemetry createTelemetry() {
+        AiTelemetry telemetry = new AiTelemetry();
+        String file = CONFIG.getProperty("AI_TELEMETRY_FILE");
+        if (file != null && !file.trim().isEmpty()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    telemetry.writeJson(Paths.get(file.trim()));
+                } catch (IOException e) {
+                    System.err.println("Could not write AI telemetry to " + file + ": " + e.getMessage());
+                }
+            }, "ai-telemetry-export"));
         }
+        return telemetry;
+    }
 
-        try {
-            URL url = new URL(API_URL_BASE + API_KEY);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("POST");
-            connection.setRequestProperty("Content-Type", "application/json");
-            connection.setDoOutput(true);
+    private static AiResponseCache createCache() {
+        if (!configFlag("AI_CACHE_ENABLED", true)) return null;
+        String dir = CONFIG.getProperty("AI_CACHE_DIR",
+                Paths.get(System.getProperty("user.home"), ".thinkdeck", "ai-cache").toString());
+        return new AiResponseCache(Paths.get(dir),
+                (int) configLong("AI_CACHE_MEMORY_ENTRIES", 128),
+                configLong("AI_CACHE_DISK_MB", 50) * 1024 * 1024,
+                configLong("AI_CACHE_TTL_HOURS", 24) * 3600 * 1000);
+    }
 
-            // Create the JSON payload using JSONObject and JSONArray
-            JSONObject textPart = new JSONObject();
-            textPart.put("text", prompt);
+    /** Number of AI calls that joined an identical request already in flight instead of sending their own. */
+    public static long getDeduplicatedCalls() {
+        return FLIGHTS.getDeduplicated();
+    }
 
-            JSONArray partsArray = new JSONArray();
-            partsArray.put(textPart);
+    /** Hit/miss counters of the AI result cache, or null if it is disabled. */
+    public static AiResponseCache.Stats getCacheStats() {
+        return CACHE != null ? CACHE.getStats() : null;
+    }
 
-            JSONObject content = new JSONObject();
-            content.put("parts", partsArray);
+    /** Latency, token and failure numbers per operation ("flashcards", "quiz-stream", "answer", ...). */
+    public static AiTelemetry getTelemetry() {
+        return TELEMETRY;
+    }
 
-            JSONArray contentsArray = new JSONArray();
-            contentsArray.put(content);
+    /** Retry, throttling and concurrency-limit counters of the AI client. */
+    public static AiRequestExecutor.Stats getClientStats() {
+        return EXECUTOR.getStats();
+    }
 
-            JSONObject requestBodyJson = new JSONObject();
-            requestBodyJson.put("contents", contentsArray);
+    static long configLong(String key, long defaultValue) {
+        String value = CONFIG.getProperty(key);
+        if (value == null || value.trim().isEmpty()) return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring invalid " + key + " in config.properties: " + value);
+            return defaultValue;
+        }
+    }
 
-            String requestBody = requestBodyJson.toString();
+    private static int sizeSetting(String key) {
+        return (int) Math.max(1, Math.min(MAX_ITEMS, configLong(key, 5)));
+    }
 
-            try (OutputStream os = connection.getOutputStream()) {
-                byte[] input = requestBody.getBytes("utf-8");
-                os.write(input, 0, input.length);
-            }
+    static boolean configFlag(String key, boolean defaultValue) {
+        String value = CONFIG.getProperty(key);
+        if (value == null || value.trim().isEmpty()) return defaultValue;
+        return !"false".equalsIgnoreCase(value.trim());
+    }
 
-            int responseCode = connection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                try (BufferedReader br = new BufferedReader(
-                        new InputStreamReader(connection.getInputStream(), "utf-8"))) {
-                    StringBuilder response = new StringBuilder();
-                    String responseLine;
-                    while ((responseLine = br.readLine()) != null) {
-                        response.append(responseLine.trim());
-                    }
-                    return response.toString();
-                }
-            } else {
-                try (BufferedReader br = new BufferedReader(
-                        new InputStreamReader(connection.getErrorStream(), "utf-8"))) {
-                    StringBuilder errorResponse = new StringBuilder();
-                    String responseLine;
-                    while ((responseLine = br.readLine()) != null) {
-                        errorResponse.append(responseLine.trim());
-                    }
-                    System.err.println("Error response from API: " + errorResponse.toString());
-                }
-                return "Error: " + responseCode + " " + connection.getResponseMessage();
+    static double configDouble(String key, double defaultValue) {
+        String value = CONFIG.getProperty(key);
+        if (value == null || value.trim().isEmpty()) return defaultValue;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring invalid " + key + " in config.properties: " + value);
+            return defaultValue;
+        }
+    }
+
+    private static LlmProvider createProvider() {
+        String name = CONFIG.getProperty("AI_PROVIDER", "gemini").trim().toLowerCase(Locale.ROOT);
+        if (name.equals("stub")) {
+            String url = CONFIG.getProperty("AI_STUB_URL");
+            if (url != null && !url.trim().isEmpty()) return StubLlmServer.providerFor(url.trim());
+            try {
+                return StubLlmServer.start(CONFIG).provider();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not start the stub AI server, falling back to Gemini: " + e.getMessage());
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "Error: " + e.getMessage();
+        } else if (!name.equals("gemini")) {
+            System.err.println("Unknown AI_PROVIDER " + name + ", using gemini");
+        }
+        return new GeminiProvider(CONFIG.getProperty("API_KEY"),
+                CONFIG.getProperty("AI_MODEL", GeminiProvider.DEFAULT_MODEL).trim());
+    }
+
+    /** Fails fast, without a request, when the provider is not usable (e.g. no API key). */
+    private static <T> CompletableFuture<T> unconfigured() {
+        String problem = PROVIDER.configurationProblem();
+        if (problem == null) return null;
+        System.err.println(problem + " Please fix it to run AI features.");
+        CompletableFuture<T> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new AiException(problem));
+        return failed;
+    }
+
+    // The blocking variants rethrow the AiException itself rather than a CompletionException around it
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof AiException) throw (AiException) e.getCause();
+            throw e;
+        }
+    }
+
+    private static JSONObject arraySchema(JSONObject itemProperties) {
+        return new JSONObject()
+                .put("type", "ARRAY")
+                .put("items", new JSONObject()
+                        .put("type", "OBJECT")
+                        .put("properties", itemProperties)
+                        .put("required", new JSONArray(itemProperties.keySet())));
+    }
+
+    private static <T> CompletableFuture<T> callModelAsync(String operation, String prompt, JSONObject responseSchema,
+                                                           BiFunction<String, AiTelemetry.Call, T> parse) {
+        AiTelemetry.Call call = TELEMETRY.start(operation);
+        CompletableFuture<T> result = unconfigured();
+        if (result == null) {
+            HttpRequest request = PROVIDER.generateRequest(prompt, responseSchema, REQUEST_TIMEOUT);
+            result = AiCall.of(EXECUTOR.send(request, () -> info -> {
+                call.responseStarted(info.statusCode());
+                return HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+            }, () -> true)).thenApply(response -> parse.apply(response.body(), call));
         }
+        // A side branch, so it still runs when the caller cancels the returned stage
+        result.whenComplete((value, error) -> call.finish(error));
+        return result;
+    }
+
+    private static String flashcardPrompt(String topic, int size, int part, int parts) {
+        return "Generate " + size + " flashcards for the topic '" + topic + "'" + partHint(part, parts)
+                + ". Each flashcard should have a question and a short answer. Format the output as a JSON array where each object has 'question' and 'answer' keys.";
+    }
+
+    private static String partHint(int part, int parts) {
+        if (parts == 1) return "";
+        return " (part " + part + " of " + parts + " of a larger set; each part covers a different aspect of the topic, so do not repeat the obvious basics)";
+    }
+
+    public static AiCall<List<Flashcard>> generateFlashcardsAsync(String topic) {
+        return generateFlashcardsAsync(topic, true);
+    }
+
+    /** With useCache=false the model is always asked; the fresh result still replaces the cached one. */
+    public static AiCall<List<Flashcard>> generateFlashcardsAsync(String topic, boolean useCache) {
+        return generateFlashcardsAsync(topic, DECK_SIZE, useCache);
+    }
+
+    public static AiCall<List<Flashcard>> generateFlashcardsAsync(String topic, int count, boolean useCache) {
+        int size = clampCount(count);
+        return cachedList("flashcards", topic, size, useCache, AiHelper::toFlashcard, AiHelper::toJson, null,
+                progress -> fanOut(size, AiHelper::cardText, progress, (chunk, part, parts, sink) ->
+                        callModelAsync("flashcards", flashcardPrompt(topic, chunk, part, parts), FLASHCARDS_SCHEMA,
+                                (response, call) -> parseArray(response, call, AiHelper::toFlashcard, "flashcards"))
+                                .thenApply(items -> offerAll(items, sink))));
     }
 
     public static List<Flashcard> generateFlashcards(String topic) {
-        List<Flashcard> flashcards = new ArrayList<>();
-        String prompt = "Generate 5 flashcards for the topic '" + topic
-                + "'. Each flashcard should have a question and a short answer. Format the output as a JSON array where each object has 'question' and 'answer' keys.";
+        return await(generateFlashcardsAsync(topic));
+    }
 
-        String jsonResponse = callGeminiApi(prompt);
+    private static String cardText(Flashcard card) {
+        return MinHash.cardText(card.getQuestion(), card.getAnswer());
+    }
 
-        try {
-            JSONObject responseJson = new JSONObject(jsonResponse);
-            JSONArray candidates = responseJson.getJSONArray("candidates");
-            if (candidates.length() > 0) {
-                JSONObject firstCandidate = candidates.getJSONObject(0);
-                JSONObject content = firstCandidate.getJSONObject("content");
-                JSONArray parts = content.getJSONArray("parts");
-                if (parts.length() > 0) {
-                    String text = parts.getJSONObject(0).getString("text");
-                    // Clean the text to be valid JSON
-                    text = text.replaceAll("```json", "").replaceAll("```", "").trim();
-                    JSONArray generatedCards = new JSONArray(text);
-                    for (int i = 0; i < generatedCards.length(); i++) {
-                        JSONObject cardJson = generatedCards.getJSONObject(i);
-                        String question = cardJson.getString("question");
-                        String answer = cardJson.getString("answer");
-                        flashcards.add(new Flashcard(question, answer));
-                    }
+    private static Flashcard toFlashcard(JSONObject cardJson) {
+        return new Flashcard(cardJson.getString("question"), cardJson.getString("answer"));
+    }
+
+    /** Streams the cards; each one goes to onCard as soon as it is complete. The future holds them all. */
+    public static AiCall<List<Flashcard>> streamFlashcards(String topic, Consumer<Flashcard> onCard) {
+        return streamFlashcards(topic, onCard, true);
+    }
+
+    public static AiCall<List<Flashcard>> streamFlashcards(String topic, Consumer<Flashcard> onCard,
+                                                                     boolean useCache) {
+        return streamFlashcards(topic, DECK_SIZE, onCard, useCache);
+    }
+
+    public static AiCall<List<Flashcard>> streamFlashcards(String topic, int count, Consumer<Flashcard> onCard,
+                                                                     boolean useCache) {
+        int size = clampCount(count);
+        return cachedList("flashcards-stream", topic, size, useCache, AiHelper::toFlashcard, AiHelper::toJson, onCard,
+                progress -> fanOut(size, AiHelper::cardText, progress, (chunk, part, parts, sink) ->
+                        streamModelArray("flashcards-stream", flashcardPrompt(topic, chunk, part, parts), FLASHCARDS_SCHEMA,
+                                AiHelper::toFlashcard, sink)));
+    }
+
+    private static JSONObject toJson(Flashcard card) {
+        return new JSONObject().put("question", card.getQuestion()).put("answer", card.getAnswer());
+    }
+
+    public static AiCall<String> getAnswerAsync(String question) {
+        return getAnswerAsync(question, true);
+    }
+
+    public static AiCall<String> getAnswerAsync(String question, boolean useCache) {
+        String key = cacheKey("answer", question);
+        if (useCache && CACHE != null) {
+            String cached = CACHE.get(key);
+            if (cached != null) return AiCall.of(CompletableFuture.completedFuture(cached));
+        }
+        String prompt = "Answer the following question concisely: " + question;
+        return AiCall.of(FLIGHTS.execute("answer:" + key, progress ->
+                callModelAsync("answer", prompt, null, AiHelper::parseAnswer).thenApply(answer -> {
+                    if (CACHE != null) CACHE.put(key, answer);
+                    return answer;
+                }), null));
+    }
+
+    public static String getAnswer(String question) {
+        return await(getAnswerAsync(question));
+    }
+
+    private static String parseAnswer(String response, AiTelemetry.Call call) {
+        StringBuilder answer = new StringBuilder();
+        GeminiEnvelopeParser.Envelope envelope = GeminiEnvelopeParser.parse(response, answer::append);
+        call.usage(envelope);
+        checkEnvelope(envelope, "answer");
+        return answer.toString();
+    }
+
+    private static String quizPrompt(String topic, int size, int part, int parts) {
+        return "Generate a " + size + "-question multiple-choice quiz on the topic '" + topic + "'" + partHint(part, parts) + ". " +
+                "For each question, provide a question, 4 options, and the index of the correct option. " +
+                "Format the output as a JSON array where each object has 'question' (string), 'options' (array of 4 strings), and 'correctOptionIndex' (integer 0-3) keys.";
+    }
+
+    public static AiCall<List<AiQuizQuestion>> generateQuizAsync(String topic) {
+        return generateQuizAsync(topic, true);
+    }
+
+    public static AiCall<List<AiQuizQuestion>> generateQuizAsync(String topic, boolean useCache) {
+        return generateQuizAsync(topic, QUIZ_SIZE, useCache);
+    }
+
+    public static AiCall<List<AiQuizQuestion>> generateQuizAsync(String topic, int count, boolean useCache) {
+        int size = clampCount(count);
+        return cachedList("quiz", topic, size, useCache, AiHelper::toQuizQuestion, AiHelper::toJson, null,
+                progress -> fanOut(size, AiQuizQuestion::getQuestion, progress, (chunk, part, parts, sink) ->
+                        callModelAsync("quiz", quizPrompt(topic, chunk, part, parts), QUIZ_SCHEMA,
+                                (response, call) -> parseArray(response, call, AiHelper::toQuizQuestion, "quiz"))
+                                .thenApply(items -> offerAll(items, sink))));
+    }
+
+    public static List<AiQuizQuestion> generateQuiz(String topic) {
+        return await(generateQuizAsync(topic));
+    }
+
+    private static AiQuizQuestion toQuizQuestion(JSONObject qJson) {
+        String question = qJson.getString("question");
+        JSONArray optionsJson = qJson.getJSONArray("options");
+        List<String> options = new ArrayList<>();
+        for (int j = 0; j < optionsJson.length(); j++) {
+            options.add(optionsJson.getString(j));
+        }
+        int correctOptionIndex = qJson.getInt("correctOptionIndex");
+        return new AiQuizQuestion(question, options, correctOptionIndex);
+    }
+
+    /** Streams the quiz; each question goes to onQuestion as soon as it is complete. The future holds them all. */
+    public static AiCall<List<AiQuizQuestion>> streamQuiz(String topic, Consumer<AiQuizQuestion> onQuestion) {
+        return streamQuiz(topic, onQuestion, true);
+    }
+
+    public static AiCall<List<AiQuizQuestion>> streamQuiz(String topic, Consumer<AiQuizQuestion> onQuestion,
+                                                                     boolean useCache) {
+        return streamQuiz(topic, QUIZ_SIZE, onQuestion, useCache);
+    }
+
+    public static AiCall<List<AiQuizQuestion>> streamQuiz(String topic, int count,
+                                                                     Consumer<AiQuizQuestion> onQuestion,
+                                                                     boolean useCache) {
+        int size = clampCount(count);
+        return cachedList("quiz-stream", topic, size, useCache, AiHelper::toQuizQuestion, AiHelper::toJson, onQuestion,
+                progress -> fanOut(size, AiQuizQuestion::getQuestion, progress, (chunk, part, parts, sink) ->
+                        streamModelArray("quiz-stream", quizPrompt(topic, chunk, part, parts), QUIZ_SCHEMA,
+                                AiHelper::toQuizQuestion, sink)));
+    }
+
+    private static JSONObject toJson(AiQuizQuestion question) {
+        return new JSONObject()
+                .put("question", question.getQuestion())
+                .put("options", new JSONArray(question.getOptions()))
+                .put("correctOptionIndex", question.getCorrectOptionIndex());
+    }
+
+    // --- Response parsing ---
+
+    /**
+     * Reads the envelope in one pass, feeding its text straight into a
+     * JsonArrayStreamParser, and maps each array element. Text around the
+     * array (a ```json fence from a model that ignored JSON mode) is skipped.
+     */
+    private static <T> List<T> parseArray(String response, AiTelemetry.Call call, Function<JSONObject, T> mapper,
+                                          String what) {
+        List<T> items = new ArrayList<>();
+        JsonArrayStreamParser parser = new JsonArrayStreamParser(json -> {
+            try {
+                items.add(mapper.apply(new JSONObject(json)));
+            } catch (Exception e) {
+                call.malformedItem();
+                System.err.println("Skipping malformed item from AI: " + json);
+            }
+        });
+        GeminiEnvelopeParser.Envelope envelope = GeminiEnvelopeParser.parse(response, parser::feed);
+        call.usage(envelope);
+        checkEnvelope(envelope, what);
+        if (items.isEmpty()) throw new AiException("Unreadable " + what + " from AI (" + envelope + ")", 200, null);
+        return items;
+    }
+
+    private static void checkEnvelope(GeminiEnvelopeParser.Envelope envelope, String what) {
+        if (envelope.getErrorMessage() != null) {
+            throw new AiException("AI service error: " + envelope.getErrorMessage(), 200, null);
+        }
+        if (envelope.getBlockReason() != null) {
+            throw new AiException("The AI refused the request (" + envelope.getBlockReason() + ").", 200,
+                    AiException.Kind.BLOCKED, null);
+        }
+        if (envelope.getTextLength() == 0) {
+            throw new AiException("The AI returned no " + what + " (finish reason "
+                    + envelope.getFinishReason() + ").", 200, AiException.Kind.EMPTY, null);
+        }
+    }
+
+    // --- Cache ---
+
+    // Streamed and plain variants of an operation share cached results but not in-flight calls
+    private static String cacheKey(String operation, String topic) {
+        return AiResponseCache.key(PROVIDER.name() + '/' + PROVIDER.model(), PROMPT_TEMPLATE_VERSION, operation.replace("-stream", ""), topic);
+    }
+
+    private static String cacheKey(String operation, String topic, int count) {
+        return cacheKey(operation + '/' + count, topic);
+    }
+
+    /**
+     * Serves a list result from the cache when allowed (replaying it to the listener, if any),
+     * otherwise runs the call, shared with any identical call already in flight, and caches a
+     * non-empty result as a JSON array. The call gets the sink its streamed items should go to.
+     */
+    private static <T> AiCall<List<T>> cachedList(String operation, String topic, int count,
+                                                             boolean useCache, Function<JSONObject, T> fromJson,
+                                                             Function<T, JSONObject> toJson, Consumer<T> listener,
+                                                             Function<Consumer<T>, CompletableFuture<List<T>>> call) {
+        String key = cacheKey(operation, topic, count);
+        String flightKey = operation + ':' + key;
+        if (CACHE == null) return AiCall.of(FLIGHTS.execute(flightKey, call, listener));
+        if (useCache) {
+            String cached = CACHE.get(key);
+            if (cached != null) {
+                try {
+                    JSONArray array = new JSONArray(cached);
+                    List<T> items = new ArrayList<>(array.length());
+                    for (int i = 0; i < array.length(); i++) items.add(fromJson.apply(array.getJSONObject(i)));
+                    if (listener != null) items.forEach(listener);
+                    return AiCall.of(CompletableFuture.completedFuture(items));
+                } catch (Exception e) {
+                    System.err.println("Ignoring unreadable cached AI " + operation + ": " + e.getMessage());
                 }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
+        return AiCall.of(FLIGHTS.execute(flightKey, progress -> AiCall.of(call.apply(progress)).thenApply(items -> {
+            if (!items.isEmpty()) {
+                JSONArray array = new JSONArray();
+                for (T item : items) array.put(toJson.apply(item));
+                CACHE.put(key, array.toString());
+            }
+            return items;
+        }), listener));
+    }
+
+    // --- Fan-out ---
 
-        return flashcards;
+    private static int clampCount(int count) {
+        return Math.max(1, Math.min(MAX_ITEMS, count));
     }
 
-    public static String getAnswer(String question) {
-        String prompt = "Answer the following question concisely: " + question;
-        String jsonResponse = callGeminiApi(prompt);
+    /** Sends one prompt for size items; every item it produces goes to sink. */
+    private interface ChunkCall<T> {
+        CompletableFuture<List<T>> start(int size, int part, int parts, Consumer<T> sink);
+    }
 
-        try {
-            JSONObject responseJson = new JSONObject(jsonResponse);
-            JSONArray candidates = responseJson.getJSONArray("candidates");
-            if (candidates.length() > 0) {
-                JSONObject firstCandidate = candidates.getJSONObject(0);
-                JSONObject content = firstCandidate.getJSONObject("content");
-                JSONArray parts = content.getJSONArray("parts");
-                if (parts.length() > 0) {
-                    return parts.getJSONObject(0).getString("text");
+    private static <T> List<T> offerAll(List<T> items, Consumer<T> sink) {
+        items.forEach(sink);
+        return items;
+    }
+
+    /**
+     * Splits a request for count items into CHUNK_SIZE prompts sent at once, so a
+     * large quiz takes about as long as a small one. Items go to the listener as
+     * they arrive unless they nearly duplicate an earlier one or the count is
+     * reached. Chunks that fail are left out; the result only fails if all of them do.
+     */
+    private static <T> CompletableFuture<List<T>> fanOut(int count, Function<T, String> questionOf,
+                                                         Consumer<T> listener, ChunkCall<T> call) {
+        int parts = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        NearDuplicateFilter<T> merged = new NearDuplicateFilter<>(questionOf, DUPLICATE_THRESHOLD);
+        Consumer<T> sink = item -> {
+            synchronized (merged) {
+                if (merged.size() >= count || !merged.offer(item)) return;
+            }
+            if (listener != null) listener.accept(item);
+        };
+
+        List<CompletableFuture<List<T>>> chunks = new ArrayList<>(parts);
+        for (int part = 0; part < parts; part++) {
+            chunks.add(call.start(Math.min(CHUNK_SIZE, count - part * CHUNK_SIZE), part + 1, parts, sink));
+        }
+        // Cancelling the merged result cancels every chunk still running
+        AiCall<Void> all = AiCall.of(CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])));
+        chunks.forEach(all::dependsOn);
+        return all.handle((done, error) -> {
+            if (error == null) {
+                if (merged.getRejected() > 0) {
+                    System.out.println("Dropped " + merged.getRejected() + " near-duplicate AI items");
                 }
+                return merged.accepted();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            long failed = chunks.stream().filter(CompletableFuture::isCompletedExceptionally).count();
+            if (failed == parts) {
+                throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+            }
+            System.err.println(failed + " of " + parts + " AI chunks failed: " + error.getMessage());
+            return merged.accepted();
+        });
+    }
+
+    // --- Streaming ---
+
+    private static <T> CompletableFuture<List<T>> streamModelArray(String operation, String prompt,
+                                                                    JSONObject responseSchema,
+                                                                    Function<JSONObject, T> mapper,
+                                                                    Consumer<T> listener) {
+        AiTelemetry.Call call = TELEMETRY.start(operation);
+        CompletableFuture<List<T>> failed = unconfigured();
+        if (failed != null) {
+            failed.whenComplete((value, error) -> call.finish(error));
+            return failed;
         }
+        HttpRequest request = PROVIDER.streamRequest(prompt, responseSchema, REQUEST_TIMEOUT);
+        // One subscriber per attempt; a retry is only allowed while nothing has reached the listener
+        AtomicReference<SseArraySubscriber<T>> current = new AtomicReference<>();
 
-        return "I'm sorry, I could not get an answer from the AI.";
+        CompletableFuture<List<T>> result = AiCall.of(EXECUTOR.send(request, () -> {
+            SseArraySubscriber<T> subscriber = new SseArraySubscriber<>(mapper, listener, call);
+            current.set(subscriber);
+            return info -> {
+                call.responseStarted(info.statusCode());
+                subscriber.ok = info.statusCode() == 200;
+                return HttpResponse.BodySubscribers.fromLineSubscriber(subscriber);
+            };
+        }, () -> current.get() == null || current.get().items().isEmpty())).handle((response, error) -> {
+            SseArraySubscriber<T> subscriber = current.get();
+            List<T> items = subscriber != null ? subscriber.items() : new ArrayList<>();
+            if (error == null) return items;
+            // Whatever arrived before a failure mid-stream is still usable
+            if (!items.isEmpty()) {
+                System.err.println("AI stream broke off after " + items.size() + " items: " + error.getMessage());
+                return items;
+            }
+            if (subscriber != null && subscriber.errorBody.length() > 0) {
+                System.err.println("Error response from API: " + subscriber.errorBody);
+            }
+            throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+        });
+        result.whenComplete((value, error) -> call.finish(error));
+        return result;
     }
 
-    public static List<AiQuizQuestion> generateQuiz(String topic) {
-        List<AiQuizQuestion> quizQuestions = new ArrayList<>();
-        String prompt = "Generate a 5-question multiple-choice quiz on the topic '" + topic + "'. " +
-                "For each question, provide a question, 4 options, and the index of the correct option. " +
-                "Format the output as a JSON array where each object has 'question' (string), 'options' (array of 4 strings), and 'correctOptionIndex' (integer 0-3) keys.";
+    /**
+     * Reads "data: {...}" server-sent events with GeminiEnvelopeParser, which
+     * hands each chunk's text to a JsonArrayStreamParser, and maps every
+     * completed element.
+     */
+    private static class SseArraySubscriber<T> implements Flow.Subscriber<String> {
+        private final Function<JSONObject, T> mapper;
+        private final Consumer<T> listener;
+        private final AiTelemetry.Call call;
+        private final JsonArrayStreamParser parser = new JsonArrayStreamParser(this::onElement);
+        private final List<T> items = new ArrayList<>();
+        private final StringBuilder errorBody = new StringBuilder();
+        private volatile boolean ok;
 
-        String jsonResponse = callGeminiApi(prompt);
+        SseArraySubscriber(Function<JSONObject, T> mapper, Consumer<T> listener, AiTelemetry.Call call) {
+            this.mapper = mapper;
+            this.listener = listener;
+            this.call = call;
+        }
 
-        try {
-            JSONObject responseJson = new JSONObject(jsonResponse);
-            JSONArray candidates = responseJson.getJSONArray("candidates");
-            if (candidates.length() > 0) {
-                JSONObject firstCandidate = candidates.getJSONObject(0);
-                JSONObject content = firstCandidate.getJSONObject("content");
-                JSONArray parts = content.getJSONArray("parts");
-                if (parts.length() > 0) {
-                    String text = parts.getJSONObject(0).getString("text");
-                    text = text.replaceAll("```json", "").replaceAll("```", "").trim();
-                    JSONArray generatedQuestions = new JSONArray(text);
-                    for (int i = 0; i < generatedQuestions.length(); i++) {
-                        JSONObject qJson = generatedQuestions.getJSONObject(i);
-                        String question = qJson.getString("question");
-                        JSONArray optionsJson = qJson.getJSONArray("options");
-                        List<String> options = new ArrayList<>();
-                        for (int j = 0; j < optionsJson.length(); j++) {
-                            options.add(optionsJson.getString(j));
-                        }
-                        int correctOptionIndex = qJson.getInt("correctOptionIndex");
-                        quizQuestions.add(new AiQuizQuestion(question, options, correctOptionIndex));
-                    }
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (!ok) {
+                errorBody.append(line.trim());
+                return;
+            }
+            if (!line.startsWith("data:")) return;
+            try {
+                GeminiEnvelopeParser.Envelope envelope = GeminiEnvelopeParser.parse(line, 5, parser::feed);
+                call.usage(envelope);
+                if (envelope.getBlockReason() != null || envelope.getErrorMessage() != null) {
+                    System.err.println("AI stream stopped: " + envelope);
                 }
+            } catch (AiException e) {
+                call.malformedItem();
+                System.err.println(e.getMessage());
+            }
+        }
+
+        private void onElement(String json) {
+            T item;
+            try {
+                item = mapper.apply(new JSONObject(json));
+            } catch (Exception e) {
+                call.malformedItem();
+                System.err.println("Skipping malformed item from AI: " + json);
+                return;
+            }
+            synchronized (items) {
+                items.add(item);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            listener.accept(item);
         }
 
-        return quizQuestions;
+        List<T> items() {
+            synchronized (items) {
+                return new ArrayList<>(items);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            // Reported through the response future
+        }
+
+        @Override
+        public void onComplete() {
+        }
     }
 }
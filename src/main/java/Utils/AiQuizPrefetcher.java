@@ -0,0 +1,221 @@
+package Utils;
+
+import create_quiz.AiQuizQuestion;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a few AI quizzes ready for the subjects the user studies, so an AI
+ * quiz can start without waiting for the model.
+ *
+ * A daemon thread tops up the pools one quiz at a time, emptiest and most
+ * recently used subject first. It only sends a request when the AI client
+ * has nothing else in flight, the system load is under AI_PREFETCH_MAX_LOAD
+ * per core, and the hourly AI_PREFETCH_PER_HOUR budget allows it. Pools hold
+ * AI_PREFETCH_POOL_SIZE quizzes for at most AI_PREFETCH_MAX_SUBJECTS
+ * subjects and drop quizzes older than AI_PREFETCH_TTL_MINUTES.
+ * AI_PREFETCH_ENABLED=false turns it off.
+ */
+public class AiQuizPrefetcher {
+
+    private static final boolean ENABLED = AiHelper.configFlag("AI_PREFETCH_ENABLED", true);
+    private static final int POOL_SIZE = (int) Math.max(1, AiHelper.configLong("AI_PREFETCH_POOL_SIZE", 2));
+    private static final int MAX_SUBJECTS = (int) Math.max(1, AiHelper.configLong("AI_PREFETCH_MAX_SUBJECTS", 4));
+    private static final long TTL_MILLIS = AiHelper.configLong("AI_PREFETCH_TTL_MINUTES", 60) * 60 * 1000;
+    private static final long INTERVAL_SECONDS = Math.max(1, AiHelper.configLong("AI_PREFETCH_INTERVAL_SECONDS", 10));
+    private static final double MAX_LOAD = AiHelper.configDouble("AI_PREFETCH_MAX_LOAD", 0.75);
+    private static final long FAILURE_PAUSE_MILLIS = 5 * 60 * 1000;
+
+    // Enough burst for one quiz per subject right after login, then a steady trickle
+    private static final TokenBucket BUDGET = new TokenBucket(
+            AiHelper.configDouble("AI_PREFETCH_PER_HOUR", 30) / 3600, MAX_SUBJECTS);
+
+    // Access order, so the least recently used subject is dropped first
+    private static final Map<String, Deque<WarmQuiz>> pools = new LinkedHashMap<String, Deque<WarmQuiz>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Deque<WarmQuiz>> eldest) {
+            return size() > MAX_SUBJECTS;
+        }
+    };
+
+    private static ScheduledExecutorService scheduler;
+    private static boolean prefetching;
+    private static long pausedUntil;
+    private static long prefetched, served, misses, failures;
+
+    /** Starts keeping quizzes warm for these subjects (on top of the ones already watched). */
+    public static synchronized void watch(Collection<String> subjects) {
+        if (!ENABLED) return;
+        for (String subject : subjects) {
+            if (!pools.containsKey(subject)) pools.put(subject, new ArrayDeque<>());
+        }
+        ensureStarted();
+    }
+
+    /**
+     * Hands out a warm quiz for the subject, or null if none is ready. Either
+     * way the subject is watched from now on and its pool refilled.
+     */
+    public static synchronized List<AiQuizQuestion> take(String subject) {
+        if (!ENABLED) return null;
+        Deque<WarmQuiz> pool = pools.computeIfAbsent(subject, s -> new ArrayDeque<>());
+        dropExpired(pool);
+        WarmQuiz warm = pool.poll();
+        if (warm == null) {
+            misses++;
+        } else {
+            served++;
+        }
+        ensureStarted();
+        scheduler.execute(AiQuizPrefetcher::tick);
+        return warm != null ? new ArrayList<>(warm.questions) : null;
+    }
+
+    public static synchronized void shutdown() {
+        if (scheduler != null) scheduler.shutdownNow();
+        scheduler = null;
+        pools.clear();
+    }
+
+    private static void ensureStarted() {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ai-quiz-prefetch");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(AiQuizPrefetcher::tick, 1, INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static void tick() {
+        String subject;
+        synchronized (AiQuizPrefetcher.class) {
+            if (prefetching || System.currentTimeMillis() < pausedUntil) return;
+            subject = neediestSubject();
+            if (subject == null || !budgetAllows()) return;
+            prefetching = true;
+        }
+        // Always fresh: a cached quiz would just be a copy of one the user has already seen
+        AiHelper.generateQuizAsync(subject, false).whenComplete((questions, error) -> {
+            synchronized (AiQuizPrefetcher.class) {
+                prefetching = false;
+                if (error != null || questions.isEmpty()) {
+                    failures++;
+                    pausedUntil = System.currentTimeMillis() + FAILURE_PAUSE_MILLIS;
+                    System.err.println("Quiz prefetch for " + subject + " failed, pausing: "
+                            + (error == null ? "empty quiz"
+                            : (error.getCause() != null ? error.getCause() : error).getMessage()));
+                    return;
+                }
+                Deque<WarmQuiz> pool = pools.get(subject);
+                if (pool == null || pool.size() >= POOL_SIZE) return; // subject dropped or filled meanwhile
+                pool.add(new WarmQuiz(questions));
+                prefetched++;
+                if (scheduler != null) scheduler.execute(AiQuizPrefetcher::tick);
+            }
+        });
+    }
+
+    // Fewest warm quizzes wins; among equals the most recently used
+    private static String neediestSubject() {
+        String best = null;
+        int bestSize = POOL_SIZE;
+        for (Map.Entry<String, Deque<WarmQuiz>> entry : pools.entrySet()) {
+            dropExpired(entry.getValue());
+            if (entry.getValue().size() <= bestSize && entry.getValue().size() < POOL_SIZE) {
+                best = entry.getKey();
+                bestSize = entry.getValue().size();
+            }
+        }
+        return best;
+    }
+
+    // User-facing AI calls come first, then the machine's load, then the hourly request budget
+    private static boolean budgetAllows() {
+        AiRequestExecutor.Stats client = AiHelper.getClientStats();
+        if (client.getInFlight() > 0 || client.getQueued() > 0) return false;
+        double load = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+        if (load >= 0 && load / Runtime.getRuntime().availableProcessors() > MAX_LOAD) return false;
+        return BUDGET.tryAcquire();
+    }
+
+    private static void dropExpired(Deque<WarmQuiz> pool) {
+        long oldest = System.currentTimeMillis() - TTL_MILLIS;
+        pool.removeIf(warm -> warm.createdAt < oldest);
+    }
+
+    public static synchronized Stats getStats() {
+        int warm = 0;
+        for (Deque<WarmQuiz> pool : pools.values()) warm += pool.size();
+        return new Stats(pools.size(), warm, prefetched, served, misses, failures);
+    }
+
+    private static class WarmQuiz {
+        final List<AiQuizQuestion> questions;
+        final long createdAt = System.currentTimeMillis();
+
+        WarmQuiz(List<AiQuizQuestion> questions) {
+            this.questions = questions;
+        }
+    }
+
+    /** Point-in-time view of the prefetch pools. */
+    public static class Stats {
+        private final int subjects;
+        private final int warmQuizzes;
+        private final long prefetched;
+        private final long served;
+        private final long misses;
+        private final long failures;
+
+        Stats(int subjects, int warmQuizzes, long prefetched, long served, long misses, long failures) {
+            this.subjects = subjects;
+            this.warmQuizzes = warmQuizzes;
+            this.prefetched = prefetched;
+            this.served = served;
+            this.misses = misses;
+            this.failures = failures;
+        }
+
+        public int getSubjects() {
+            return subjects;
+        }
+
+        public int getWarmQuizzes() {
+            return warmQuizzes;
+        }
+
+        public long getPrefetched() {
+            return prefetched;
+        }
+
+        public long getServed() {
+            return served;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            return "subjects=" + subjects + " warm=" + warmQuizzes + " prefetched=" + prefetched
+                    + " served=" + served + " misses=" + misses + " failures=" + failures;
+        }
+    }
+}
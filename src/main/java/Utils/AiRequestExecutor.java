@@ -0,0 +1,239 @@
+package Utils;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Sends AI requests through a rate limit, an adaptive concurrency limit and retries.
+ *
+ * Each attempt takes a token from the {@link TokenBucket} and a permit from
+ * the {@link AdaptiveLimiter}. 429, 5xx and network failures are retried up
+ * to maxRetries times, waiting for the server's Retry-After when it sends one
+ * and for a jittered exponential backoff otherwise. Waits are scheduled, never
+ * slept, so no thread is held while a request is queued. The returned future
+ * holds a 200 response or fails with an {@link AiException}; cancelling it
+ * drops a queued request and cancels (on Java 16+, aborts) a running exchange.
+ */
+public class AiRequestExecutor {
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ai-retry-scheduler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final HttpClient client;
+    private final TokenBucket bucket;
+    private final AdaptiveLimiter limiter;
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public AiRequestExecutor(HttpClient client, TokenBucket bucket, AdaptiveLimiter limiter,
+                             int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        this.client = client;
+        this.bucket = bucket;
+        this.limiter = limiter;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.baseDelayMillis = Math.max(1, baseDelayMillis);
+        this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+    }
+
+    public <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        return send(request, () -> handler, () -> true);
+    }
+
+    /**
+     * A fresh handler is taken for every attempt. retrySafe is asked after a
+     * failed attempt; a streaming caller answers false once it has passed
+     * items on, since a retry would deliver them twice.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request,
+                                                       Supplier<HttpResponse.BodyHandler<T>> handler,
+                                                       BooleanSupplier retrySafe) {
+        requests.incrementAndGet();
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        attempt(request, handler, retrySafe, 0, result);
+        return result;
+    }
+
+    private <T> void attempt(HttpRequest request, Supplier<HttpResponse.BodyHandler<T>> handler,
+                             BooleanSupplier retrySafe, int attempt, CompletableFuture<HttpResponse<T>> result) {
+        if (result.isDone()) return; // caller gave up
+        long waitNanos = bucket.reserve();
+        CompletableFuture<Void> permit = waitNanos > 0
+                ? delay(waitNanos, TimeUnit.NANOSECONDS).thenCompose(v -> limiter.acquire())
+                : limiter.acquire();
+
+        permit.thenCompose(v -> {
+            if (result.isDone()) {
+                limiter.release(AdaptiveLimiter.Outcome.IGNORED);
+                return CompletableFuture.<HttpResponse<T>>completedFuture(null);
+            }
+            CompletableFuture<HttpResponse<T>> exchange = client.sendAsync(request, handler.get());
+            result.whenComplete((response, error) -> {
+                if (result.isCancelled()) exchange.cancel(true);
+            });
+            return exchange.whenComplete((response, error) -> limiter.release(outcomeOf(response, error)));
+        }).whenComplete((response, error) -> {
+            if (result.isDone()) return;
+            Throwable cause = unwrap(error);
+            if (cause == null && response.statusCode() == 200) {
+                result.complete(response);
+                return;
+            }
+            int status = cause == null ? response.statusCode() : -1;
+            boolean retryable = cause == null ? isRetryableStatus(status) : cause instanceof IOException;
+            if (status == 429 || status == 503) throttled.incrementAndGet();
+
+            if (retryable && attempt < maxRetries && retrySafe.getAsBoolean()) {
+                long delayMillis = retryDelayMillis(response, attempt);
+                retries.incrementAndGet();
+                System.err.println("AI request failed (" + (cause == null ? "HTTP " + status : cause)
+                        + "), retry " + (attempt + 1) + "/" + maxRetries + " in " + delayMillis + " ms");
+                delay(delayMillis, TimeUnit.MILLISECONDS)
+                        .thenRun(() -> attempt(request, handler, retrySafe, attempt + 1, result));
+                return;
+            }
+            failures.incrementAndGet();
+            if (cause == null) {
+                if (response.body() instanceof String && !((String) response.body()).isEmpty()) System.err.println("Error response from API: " + response.body());
+                result.completeExceptionally(new AiException("AI service returned HTTP " + status, status, null));
+            } else {
+                result.completeExceptionally(new AiException("AI request failed: " + cause.getMessage(), -1, cause));
+            }
+        });
+    }
+
+    private static AdaptiveLimiter.Outcome outcomeOf(HttpResponse<?> response, Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof HttpTimeoutException) return AdaptiveLimiter.Outcome.OVERLOADED;
+        if (cause != null || response == null) return AdaptiveLimiter.Outcome.IGNORED;
+        int status = response.statusCode();
+        if (status == 429 || status == 503) return AdaptiveLimiter.Outcome.OVERLOADED;
+        return status == 200 ? AdaptiveLimiter.Outcome.SUCCESS : AdaptiveLimiter.Outcome.IGNORED;
+    }
+
+    private static boolean isRetryableStatus(int status) {
+        return status == 408 || status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+    }
+
+    private long retryDelayMillis(HttpResponse<?> response, int attempt) {
+        if (response != null) {
+            Long retryAfter = parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null));
+            if (retryAfter != null) return Math.min(maxDelayMillis, retryAfter);
+        }
+        // Jitter spreads the retries of a burst instead of sending them back together
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(baseDelayMillis / 2, ceiling + 1);
+    }
+
+    /** Retry-After as delta-seconds or an HTTP date, in milliseconds from now; null if absent or unreadable. */
+    static Long parseRetryAfter(String value) {
+        if (value == null || value.trim().isEmpty()) return null;
+        value = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(value)) * 1000;
+        } catch (NumberFormatException ignored) {
+            // not seconds, try a date
+        }
+        try {
+            ZonedDateTime when = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(when.getZone()), when).toMillis());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static CompletableFuture<Void> delay(long amount, TimeUnit unit) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        SCHEDULER.schedule(() -> done.complete(null), amount, unit);
+        return done;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+        return error;
+    }
+
+    public Stats getStats() {
+        return new Stats(requests.get(), retries.get(), throttled.get(), failures.get(),
+                limiter.getLimit(), limiter.getInFlight(), limiter.getQueued());
+    }
+
+    /** Point-in-time view of the executor counters and the current concurrency limit. */
+    public static class Stats {
+        private final long requests;
+        private final long retries;
+        private final long throttled;
+        private final long failures;
+        private final int concurrencyLimit;
+        private final int inFlight;
+        private final int queued;
+
+        Stats(long requests, long retries, long throttled, long failures, int concurrencyLimit, int inFlight, int queued) {
+            this.requests = requests;
+            this.retries = retries;
+            this.throttled = throttled;
+            this.failures = failures;
+            this.concurrencyLimit = concurrencyLimit;
+            this.inFlight = inFlight;
+            this.queued = queued;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getRetries() {
+            return retries;
+        }
+
+        public long getThrottled() {
+            return throttled;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public int getConcurrencyLimit() {
+            return concurrencyLimit;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        @Override
+        public String toString() {
+            return "requests=" + requests + " retries=" + retries + " throttled=" + throttled + " failures=" + failures
+                    + " limit=" + concurrencyLimit + " inFlight=" + inFlight + " queued=" + queued;
+        }
+    }
+}
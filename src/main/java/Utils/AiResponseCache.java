@@ -0,0 +1,286 @@
+package Utils;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tier cache of AI results: an in-memory LRU in front of one file per
+ * entry on disk, so results survive restarts.
+ *
+ * Keys are SHA-256 hashes of model, prompt template version, operation and
+ * the normalized topic; bumping the template version orphans old entries,
+ * which then age out. Entries expire after the TTL and the oldest files are
+ * deleted once the directory grows past its size limit.
+ */
+public class AiResponseCache {
+
+    private final Path dir;
+    private final int maxMemoryEntries;
+    private final long maxDiskBytes;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> memory;
+    private long diskBytes = -1; // computed on first disk write
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    public AiResponseCache(Path dir, int maxMemoryEntries, long maxDiskBytes, long ttlMillis) {
+        this.dir = dir;
+        this.maxMemoryEntries = maxMemoryEntries;
+        this.maxDiskBytes = maxDiskBytes;
+        this.ttlMillis = ttlMillis;
+        this.memory = new LinkedHashMap<String, AiResponseCache.Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AiResponseCache.Entry> eldest) {
+                if (size() > AiResponseCache.this.maxMemoryEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static String key(String model, int templateVersion, String operation, String topic) {
+        String normalized = topic == null ? "" : topic.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        String material = model + '\n' + templateVersion + '\n' + operation + '\n' + normalized;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(material.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /** The cached value, or null on a miss. Disk hits are promoted to memory. */
+    public String get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (entry.createdAt + ttlMillis > now) {
+                    memoryHits.incrementAndGet();
+                    return entry.value;
+                }
+                memory.remove(key);
+            }
+        }
+
+        Entry entry = readFile(key);
+        if (entry != null && entry.createdAt + ttlMillis > now) {
+            diskHits.incrementAndGet();
+            synchronized (this) {
+                memory.put(key, entry);
+            }
+            return entry.value;
+        }
+        if (entry != null) {
+            expirations.incrementAndGet();
+            deleteFile(key);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String key, String value) {
+        Entry entry = new Entry(value, System.currentTimeMillis());
+        synchronized (this) {
+            memory.put(key, entry);
+        }
+        writeFile(key, entry);
+    }
+
+    public synchronized void clearMemory() {
+        memory.clear();
+    }
+
+    private Path file(String key) {
+        return dir.resolve(key + ".json");
+    }
+
+    private Entry readFile(String key) {
+        Path file = file(key);
+        if (!Files.isRegularFile(file)) return null;
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            // Touch it so size-based cleanup removes the least recently used files first
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(json.getString("value"), json.getLong("createdAt"));
+        } catch (Exception e) {
+            System.err.println("Dropping unreadable AI cache file " + file.getFileName() + ": " + e.getMessage());
+            deleteFile(key);
+            return null;
+        }
+    }
+
+    private void writeFile(String key, Entry entry) {
+        byte[] bytes = new JSONObject().put("createdAt", entry.createdAt).put("value", entry.value)
+                .toString().getBytes(StandardCharsets.UTF_8);
+        Path tmp = null;
+        try {
+            Files.createDirectories(dir);
+            tmp = Files.createTempFile(dir, key, ".tmp");
+            Files.write(tmp, bytes);
+            Path target = file(key);
+            long previous = Files.isRegularFile(target) ? Files.size(target) : 0;
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+            synchronized (this) {
+                if (diskBytes < 0) {
+                    diskBytes = scanDiskBytes();
+                } else {
+                    diskBytes += bytes.length - previous;
+                }
+                if (diskBytes > maxDiskBytes) trimDisk();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write AI cache entry: " + e.getMessage());
+        } finally {
+            // Left over only if the write or move failed
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void deleteFile(String key) {
+        try {
+            Files.deleteIfExists(file(key));
+        } catch (IOException e) {
+            System.err.println("Could not delete AI cache entry: " + e.getMessage());
+        }
+    }
+
+    private long scanDiskBytes() throws IOException {
+        long total = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.json")) {
+            for (Path file : files) total += Files.size(file);
+        }
+        return total;
+    }
+
+    // Deletes least recently used files until the directory is back under 90% of the limit
+    private void trimDisk() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.json")) {
+            for (Path file : stream) files.add(file);
+        }
+        files.sort(Comparator.comparingLong(f -> f.toFile().lastModified()));
+        long target = maxDiskBytes * 9 / 10;
+        for (Path file : files) {
+            if (diskBytes <= target) break;
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                diskBytes -= size;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public Stats getStats() {
+        int size;
+        long bytes;
+        synchronized (this) {
+            size = memory.size();
+            bytes = diskBytes;
+        }
+        return new Stats(size, bytes, memoryHits.get(), diskHits.get(), misses.get(), evictions.get(), expirations.get());
+    }
+
+    private static class Entry {
+        final String value;
+        final long createdAt;
+
+        Entry(String value, long createdAt) {
+            this.value = value;
+            this.createdAt = createdAt;
+        }
+    }
+
+    public static class Stats {
+        private final int memoryEntries;
+        private final long diskBytes;
+        private final long memoryHits;
+        private final long diskHits;
+        private final long misses;
+        private final long evictions;
+        private final long expirations;
+
+        Stats(int memoryEntries, long diskBytes, long memoryHits, long diskHits, long misses, long evictions,
+              long expirations) {
+            this.memoryEntries = memoryEntries;
+            this.diskBytes = diskBytes;
+            this.memoryHits = memoryHits;
+            this.diskHits = diskHits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+        }
+
+        public int getMemoryEntries() {
+            return memoryEntries;
+        }
+
+        /** Bytes on disk, or -1 if nothing has been written this session. */
+        public long getDiskBytes() {
+            return diskBytes;
+        }
+
+        public long getMemoryHits() {
+            return memoryHits;
+        }
+
+        public long getDiskHits() {
+            return diskHits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getExpirations() {
+            return expirations;
+        }
+
+        public double getHitRatio() {
+            long hits = memoryHits + diskHits;
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return "memory=" + memoryEntries + " diskBytes=" + diskBytes + " memoryHits=" + memoryHits
+                    + " diskHits=" + diskHits + " misses=" + misses + " evictions=" + evictions
+                    + " expirations=" + expirations;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package Utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-operation numbers for calls to the model: latency and time-to-first-byte
+ * histograms, token usage from the responses' usageMetadata, HTTP status
+ * counts (every attempt, so retried 429s show up), failures by
+ * {@link AiException.Kind}, and calls cancelled by the caller, which are
+ * counted apart from failures.
+ *
+ * Each model call is wrapped in a {@link Call}; latency runs from the call
+ * to its last byte, including rate-limit waits and retries, and time to
+ * first byte to the response headers of the attempt that answered. Read it
+ * in-process with {@link #getStats} or export everything with {@link #toJson}.
+ * Thread-safe.
+ */
+public class AiTelemetry {
+
+    private static final String CANCELLED = "CANCELLED";
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    public Call start(String operation) {
+        return new Call(operations.computeIfAbsent(operation, name -> new Operation()));
+    }
+
+    /** Stats for one operation, or null if it has not run yet. */
+    public Stats getStats(String operation) {
+        Operation op = operations.get(operation);
+        return op != null ? op.stats() : null;
+    }
+
+    public Map<String, Stats> getAllStats() {
+        Map<String, Stats> all = new TreeMap<>();
+        operations.forEach((name, op) -> all.put(name, op.stats()));
+        return all;
+    }
+
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        new TreeMap<>(operations).forEach((name, op) -> json.put(name, op.toJson()));
+        return json;
+    }
+
+    public void writeJson(Path file) throws IOException {
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        Files.write(file, toJson().toString(2).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** One call to the model. Finish it exactly once. */
+    public static class Call {
+        private final Operation op;
+        private final long startNanos = System.nanoTime();
+        private volatile long firstByteNanos;
+        private volatile GeminiEnvelopeParser.Envelope usage;
+
+        private Call(Operation op) {
+            this.op = op;
+            op.calls.incrementAndGet();
+        }
+
+        /** Response headers of an attempt arrived. */
+        public void responseStarted(int statusCode) {
+            firstByteNanos = System.nanoTime();
+            op.statuses.computeIfAbsent(statusCode, s -> new AtomicLong()).incrementAndGet();
+        }
+
+        /** Token counts; for a stream, pass every event's envelope and the last one that has counts wins. */
+        public void usage(GeminiEnvelopeParser.Envelope envelope) {
+            if (envelope.getTotalTokens() > 0) usage = envelope;
+        }
+
+        /** An item in an otherwise good reply could not be read. */
+        public void malformedItem() {
+            op.malformedItems.incrementAndGet();
+        }
+
+        public void finish(Throwable error) {
+            long now = System.nanoTime();
+            op.latency.record((now - startNanos) / 1_000_000);
+            if (firstByteNanos != 0) op.firstByte.record((firstByteNanos - startNanos) / 1_000_000);
+            GeminiEnvelopeParser.Envelope envelope = usage;
+            if (envelope != null) {
+                op.promptTokens.addAndGet(envelope.getPromptTokens());
+                op.candidateTokens.addAndGet(envelope.getCandidateTokens());
+                op.totalTokens.addAndGet(envelope.getTotalTokens());
+            }
+            String kind = error != null ? failureKind(error) : null;
+            if (kind == null) {
+                op.succeeded.incrementAndGet();
+            } else if (kind.equals(CANCELLED)) {
+                op.cancelled.incrementAndGet();
+            } else {
+                op.failures.computeIfAbsent(kind, k -> new AtomicLong()).incrementAndGet();
+            }
+        }
+    }
+
+    private static String failureKind(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+        if (error instanceof AiException) return ((AiException) error).getKind().name();
+        if (error instanceof CancellationException) return CANCELLED;
+        return "OTHER";
+    }
+
+    private static class Operation {
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong succeeded = new AtomicLong();
+        final AtomicLong cancelled = new AtomicLong();
+        final Histogram latency = new Histogram();
+        final Histogram firstByte = new Histogram();
+        final AtomicLong promptTokens = new AtomicLong();
+        final AtomicLong candidateTokens = new AtomicLong();
+        final AtomicLong totalTokens = new AtomicLong();
+        final AtomicLong malformedItems = new AtomicLong();
+        final Map<Integer, AtomicLong> statuses = new ConcurrentHashMap<>();
+        final Map<String, AtomicLong> failures = new ConcurrentHashMap<>();
+
+        Stats stats() {
+            return new Stats(calls.get(), succeeded.get(), cancelled.get(), counts(failures),
+                    latency.percentile(0.5), latency.percentile(0.95), latency.percentile(0.99),
+                    firstByte.percentile(0.5), firstByte.percentile(0.95),
+                    promptTokens.get(), candidateTokens.get(), totalTokens.get(), malformedItems.get(),
+                    counts(statuses));
+        }
+
+        JSONObject toJson() {
+            return new JSONObject()
+                    .put("calls", calls.get())
+                    .put("succeeded", succeeded.get())
+                    .put("cancelled", cancelled.get())
+                    .put("latencyMillis", latency.toJson())
+                    .put("firstByteMillis", firstByte.toJson())
+                    .put("tokens", new JSONObject()
+                            .put("prompt", promptTokens.get())
+                            .put("candidates", candidateTokens.get())
+                            .put("total", totalTokens.get()))
+                    .put("malformedItems", malformedItems.get())
+                    .put("httpStatuses", new JSONObject(counts(statuses)))
+                    .put("failures", new JSONObject(counts(failures)));
+        }
+
+        private static <K> Map<K, Long> counts(Map<K, AtomicLong> counters) {
+            Map<K, Long> counts = new TreeMap<>();
+            counters.forEach((key, count) -> counts.put(key, count.get()));
+            return counts;
+        }
+    }
+
+    /**
+     * Millisecond histogram with fixed, roughly logarithmic buckets. Percentiles
+     * are reported as the upper bound of the bucket they fall in.
+     */
+    public static class Histogram {
+        private static final long[] BOUNDS = {25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 120000};
+
+        private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long millis) {
+            int bucket = 0;
+            while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) bucket++;
+            counts.incrementAndGet(bucket);
+            count.incrementAndGet();
+            sum.addAndGet(millis);
+            max.accumulateAndGet(millis, Math::max);
+        }
+
+        /** 0 when empty; the largest value seen for the overflow bucket. */
+        public long percentile(double q) {
+            long total = count.get();
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= rank) return i < BOUNDS.length ? Math.min(BOUNDS[i], max.get()) : max.get();
+            }
+            return max.get();
+        }
+
+        JSONObject toJson() {
+            JSONArray buckets = new JSONArray();
+            for (int i = 0; i < counts.length(); i++) {
+                buckets.put(new JSONObject()
+                        .put("le", i < BOUNDS.length ? String.valueOf(BOUNDS[i]) : "+Inf")
+                        .put("count", counts.get(i)));
+            }
+            long total = count.get();
+            return new JSONObject()
+                    .put("count", total)
+                    .put("mean", total == 0 ? 0 : sum.get() / total)
+                    .put("max", max.get())
+                    .put("p50", percentile(0.5))
+                    .put("p95", percentile(0.95))
+                    .put("p99", percentile(0.99))
+                    .put("buckets", buckets);
+        }
+    }
+
+    /** Point-in-time view of one operation. Latencies are in milliseconds. */
+    public static class Stats {
+        private final long calls;
+        private final long succeeded;
+        private final long cancelled;
+        private final Map<String, Long> failures;
+        private final long latencyP50;
+        private final long latencyP95;
+        private final long latencyP99;
+        private final long firstByteP50;
+        private final long firstByteP95;
+        private final long promptTokens;
+        private final long candidateTokens;
+        private final long totalTokens;
+        private final long malformedItems;
+        private final Map<Integer, Long> statuses;
+
+        Stats(long calls, long succeeded, long cancelled, Map<String, Long> failures,
+              long latencyP50, long latencyP95, long latencyP99,
+              long firstByteP50, long firstByteP95, long promptTokens, long candidateTokens, long totalTokens,
+              long malformedItems, Map<Integer, Long> statuses) {
+            this.calls = calls;
+            this.succeeded = succeeded;
+            this.cancelled = cancelled;
+            this.failures = failures;
+            this.latencyP50 = latencyP50;
+            this.latencyP95 = latencyP95;
+            this.latencyP99 = latencyP99;
+            this.firstByteP50 = firstByteP50;
+            this.firstByteP95 = firstByteP95;
+            this.promptTokens = promptTokens;
+            this.candidateTokens = candidateTokens;
+            this.totalTokens = totalTokens;
+            this.malformedItems = malformedItems;
+            this.statuses = statuses;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getSucceeded() {
+            return succeeded;
+        }
+
+        /** Calls given up by the caller, typically because its window closed. Not failures. */
+        public long getCancelled() {
+            return cancelled;
+        }
+
+        public long getFailures() {
+            long total = 0;
+            for (long count : failures.values()) total += count;
+            return total;
+        }
+
+        /** Failed calls by AiException.Kind name, plus OTHER. */
+        public Map<String, Long> getFailuresByKind() {
+            return failures;
+        }
+
+        public long getLatencyP50() {
+            return latencyP50;
+        }
+
+        public long getLatencyP95() {
+            return latencyP95;
+        }
+
+        public long getLatencyP99() {
+            return latencyP99;
+        }
+
+        public long getFirstByteP50() {
+            return firstByteP50;
+        }
+
+        public long getFirstByteP95() {
+            return firstByteP95;
+        }
+
+        public long getPromptTokens() {
+            return promptTokens;
+        }
+
+        public long getCandidateTokens() {
+            return candidateTokens;
+        }
+
+        public long getTotalTokens() {
+            return totalTokens;
+        }
+
+        public long getMalformedItems() {
+            return malformedItems;
+        }
+
+        /** Responses by HTTP status, one per attempt. */
+        public Map<Integer, Long> getStatuses() {
+            return statuses;
+        }
+
+        @Override
+        public String toString() {
+            return "calls=" + calls + " succeeded=" + succeeded + " cancelled=" + cancelled + " failures=" + failures
+                    + " latency p50/p95/p99=" + latencyP50 + "/" + latencyP95 + "/" + latencyP99
+                    + " ttfb p50/p95=" + firstByteP50 + "/" + firstByteP95
+                    + " tokens=" + promptTokens + "+" + candidateTokens + " malformed=" + malformedItems
+                    + " statuses=" + statuses;
+        }
+    }
+}
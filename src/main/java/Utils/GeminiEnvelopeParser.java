@@ -0,0 +1,264 @@
+package Utils;
+
+import java.util.function.Consumer;
+
+/**
+ * Reads a Gemini generateContent response envelope in one forward pass.
+ *
+ * Only the parts that matter are decoded: the text parts of the first
+ * candidate go to a sink as they are read, and the finish reason, token
+ * usage, block reason and error message are kept in the returned
+ * {@link Envelope}. Everything else is skipped without building objects.
+ * Works on a whole response or on one "data:" event of a stream.
+ */
+public class GeminiEnvelopeParser {
+
+    private final CharSequence json;
+    private final Consumer<CharSequence> textSink;
+    private final StringBuilder buffer = new StringBuilder();
+    private final Envelope envelope = new Envelope();
+    private int pos;
+
+    private GeminiEnvelopeParser(CharSequence json, int start, Consumer<CharSequence> textSink) {
+        this.json = json;
+        this.pos = start;
+        this.textSink = textSink;
+    }
+
+    /** Parses the envelope starting at start; throws AiException if it is not valid JSON. */
+    public static Envelope parse(CharSequence json, int start, Consumer<CharSequence> textSink) {
+        GeminiEnvelopeParser parser = new GeminiEnvelopeParser(json, start, textSink);
+        try {
+            parser.readObject(parser::topLevelField);
+        } catch (IndexOutOfBoundsException e) {
+            throw new AiException("Malformed AI response envelope: it ends too early", 200, e);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new AiException("Malformed AI response envelope: " + e.getMessage(), 200, e);
+        }
+        return parser.envelope;
+    }
+
+    public static Envelope parse(CharSequence json, Consumer<CharSequence> textSink) {
+        return parse(json, 0, textSink);
+    }
+
+    private interface FieldHandler {
+        void field(String name);
+    }
+
+    private void topLevelField(String name) {
+        switch (name) {
+            case "candidates":
+                int[] index = {0};
+                readArray(() -> {
+                    if (index[0]++ == 0) readObject(this::candidateField);
+                    else skipValue();
+                });
+                break;
+            case "usageMetadata":
+                readObject(field -> {
+                    if (field.equals("promptTokenCount")) envelope.promptTokens = readInt();
+                    else if (field.equals("candidatesTokenCount")) envelope.candidateTokens = readInt();
+                    else if (field.equals("totalTokenCount")) envelope.totalTokens = readInt();
+                    else skipValue();
+                });
+                break;
+            case "promptFeedback":
+                readObject(field -> {
+                    if (field.equals("blockReason")) envelope.blockReason = readString();
+                    else skipValue();
+                });
+                break;
+            case "error":
+                readObject(field -> {
+                    if (field.equals("message")) envelope.errorMessage = readString();
+                    else skipValue();
+                });
+                break;
+            default:
+                skipValue();
+        }
+    }
+
+    private void candidateField(String name) {
+        if (name.equals("finishReason")) {
+            envelope.finishReason = readString();
+        } else if (name.equals("content")) {
+            readObject(field -> {
+                if (field.equals("parts")) {
+                    readArray(() -> readObject(part -> {
+                        if (part.equals("text")) {
+                            readStringInto(buffer);
+                            envelope.textLength += buffer.length();
+                            textSink.accept(buffer);
+                        } else {
+                            skipValue();
+                        }
+                    }));
+                } else {
+                    skipValue();
+                }
+            });
+        } else {
+            skipValue();
+        }
+    }
+
+    // --- Tokenizer ---
+
+    private void readObject(FieldHandler handler) {
+        expect('{');
+        if (peek() == '}') {
+            pos++;
+            return;
+        }
+        while (true) {
+            String name = readString();
+            expect(':');
+            handler.field(name);
+            char c = next();
+            if (c == '}') return;
+            if (c != ',') throw error("expected , or }");
+        }
+    }
+
+    private void readArray(Runnable element) {
+        expect('[');
+        if (peek() == ']') {
+            pos++;
+            return;
+        }
+        while (true) {
+            element.run();
+            char c = next();
+            if (c == ']') return;
+            if (c != ',') throw error("expected , or ]");
+        }
+    }
+
+    private String readString() {
+        StringBuilder sb = new StringBuilder();
+        readStringInto(sb);
+        return sb.toString();
+    }
+
+    private void readStringInto(StringBuilder sb) {
+        sb.setLength(0);
+        expect('"');
+        while (true) {
+            char c = json.charAt(pos++);
+            if (c == '"') return;
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char e = json.charAt(pos++);
+            switch (e) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                case 'r': sb.append('\r'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    sb.append((char) Integer.parseInt(json.subSequence(pos, pos + 4).toString(), 16));
+                    pos += 4;
+                    break;
+                default: sb.append(e); // " \ /
+            }
+        }
+    }
+
+    private int readInt() {
+        skipWhitespace();
+        int start = pos;
+        while (pos < json.length() && "+-0123456789.eE".indexOf(json.charAt(pos)) >= 0) pos++;
+        if (start == pos) throw error("expected a number");
+        return (int) Double.parseDouble(json.subSequence(start, pos).toString());
+    }
+
+    private void skipValue() {
+        char c = peek();
+        if (c == '{') {
+            readObject(field -> skipValue());
+        } else if (c == '[') {
+            readArray(this::skipValue);
+        } else if (c == '"') {
+            expect('"');
+            while (true) {
+                char s = json.charAt(pos++);
+                if (s == '\\') pos++;
+                else if (s == '"') return;
+            }
+        } else {
+            // number, true, false or null
+            while (pos < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos)) < 0) pos++;
+        }
+    }
+
+    private void expect(char expected) {
+        if (next() != expected) throw error("expected " + expected);
+    }
+
+    private char next() {
+        skipWhitespace();
+        return json.charAt(pos++);
+    }
+
+    private char peek() {
+        skipWhitespace();
+        return json.charAt(pos);
+    }
+
+    private void skipWhitespace() {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) pos++;
+    }
+
+    private IllegalStateException error(String message) {
+        return new IllegalStateException(message + " at offset " + (pos - 1));
+    }
+
+    /** What the envelope said besides the text. Token counts are 0 when not reported. */
+    public static class Envelope {
+        private String finishReason;
+        private String blockReason;
+        private String errorMessage;
+        private int promptTokens;
+        private int candidateTokens;
+        private int totalTokens;
+        private int textLength;
+
+        public String getFinishReason() {
+            return finishReason;
+        }
+
+        public String getBlockReason() {
+            return blockReason;
+        }
+
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+
+        public int getPromptTokens() {
+            return promptTokens;
+        }
+
+        public int getCandidateTokens() {
+            return candidateTokens;
+        }
+
+        public int getTotalTokens() {
+            return totalTokens;
+        }
+
+        public int getTextLength() {
+            return textLength;
+        }
+
+        @Override
+        public String toString() {
+            return "finishReason=" + finishReason + " blockReason=" + blockReason + " error=" + errorMessage
+                    + " tokens=" + promptTokens + "+" + candidateTokens + " text=" + textLength;
+        }
+    }
+}
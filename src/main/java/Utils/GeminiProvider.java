@@ -0,0 +1,97 @@
+package Utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/** Google's Gemini REST API, authenticated with an API key query parameter. */
+public class GeminiProvider implements LlmProvider {
+
+    public static final String DEFAULT_BASE_URL = "https://generativelanguage.googleapis.com/v1beta/models/";
+    public static final String DEFAULT_MODEL = "gemini-1.5-flash-latest";
+
+    private final String baseUrl;
+    private final String model;
+    private final String apiKey;
+
+    public GeminiProvider(String apiKey, String model) {
+        this(DEFAULT_BASE_URL, model, apiKey);
+    }
+
+    /** baseUrl ends in "/models/"; a null apiKey sends no key at all. */
+    public GeminiProvider(String baseUrl, String model, String apiKey) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.model = model;
+        this.apiKey = apiKey;
+    }
+
+    @Override
+    public String name() {
+        return "gemini";
+    }
+
+    @Override
+    public String model() {
+        return model;
+    }
+
+    @Override
+    public String configurationProblem() {
+        if (apiKey == null || apiKey.isEmpty() || apiKey.equals("your_secret_api_key_goes_here")) {
+            return "API key not configured in config.properties.";
+        }
+        return null;
+    }
+
+    @Override
+    public HttpRequest generateRequest(String prompt, JSONObject responseSchema, Duration timeout) {
+        return request(baseUrl + model + ":generateContent", prompt, responseSchema, timeout);
+    }
+
+    @Override
+    public HttpRequest streamRequest(String prompt, JSONObject responseSchema, Duration timeout) {
+        return request(baseUrl + model + ":streamGenerateContent?alt=sse", prompt, responseSchema, timeout);
+    }
+
+    private HttpRequest request(String url, String prompt, JSONObject responseSchema, Duration timeout) {
+        if (apiKey != null) {
+            url += (url.contains("?") ? "&" : "?") + "key=" + URLEncoder.encode(apiKey, StandardCharsets.UTF_8);
+        }
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(requestBody(prompt, responseSchema).toString(), StandardCharsets.UTF_8))
+                .build();
+    }
+
+    // {"contents": [{"parts": [{"text": prompt}]}], "generationConfig": {...}}
+    static JSONObject requestBody(String prompt, JSONObject responseSchema) {
+        JSONObject textPart = new JSONObject();
+        textPart.put("text", prompt);
+
+        JSONArray partsArray = new JSONArray();
+        partsArray.put(textPart);
+
+        JSONObject content = new JSONObject();
+        content.put("parts", partsArray);
+
+        JSONArray contentsArray = new JSONArray();
+        contentsArray.put(content);
+
+        JSONObject requestBodyJson = new JSONObject();
+        requestBodyJson.put("contents", contentsArray);
+
+        if (responseSchema != null) {
+            // JSON mode: the reply is bare JSON matching the schema, no prose or ``` fences
+            requestBodyJson.put("generationConfig", new JSONObject()
+                    .put("responseMimeType", "application/json")
+                    .put("responseSchema", responseSchema));
+        }
+        return requestBodyJson;
+    }
+}
@@ -0,0 +1,74 @@
+package Utils;
+
+import java.util.function.Consumer;
+
+/**
+ * Pulls the objects out of a JSON array whose text arrives in pieces.
+ *
+ * Feed it fragments as they come in; each top-level {...} element of the
+ * first array is handed to the consumer as soon as its closing brace is
+ * seen. Anything before the opening '[' (for example a ```json fence) and
+ * after the closing ']' is ignored. Strings and escapes are tracked so
+ * braces inside values do not confuse it. Not thread-safe.
+ */
+public class JsonArrayStreamParser {
+
+    private final Consumer<String> onElement;
+    private final StringBuilder current = new StringBuilder();
+    private boolean started;
+    private boolean finished;
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+
+    public JsonArrayStreamParser(Consumer<String> onElement) {
+        this.onElement = onElement;
+    }
+
+    public void feed(CharSequence fragment) {
+        for (int i = 0; i < fragment.length() && !finished; i++) {
+            accept(fragment.charAt(i));
+        }
+    }
+
+    private void accept(char c) {
+        if (!started) {
+            if (c == '[') started = true;
+            return;
+        }
+        if (depth == 0) {
+            // Between elements: only the start of the next object or the end of the array matter
+            if (c == '{') {
+                depth = 1;
+                current.setLength(0);
+                current.append(c);
+            } else if (c == ']') {
+                finished = true;
+            }
+            return;
+        }
+
+        current.append(c);
+        if (inString) {
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '"') {
+                inString = false;
+            }
+        } else if (c == '"') {
+            inString = true;
+        } else if (c == '{' || c == '[') {
+            depth++;
+        } else if (c == '}' || c == ']') {
+            depth--;
+            if (depth == 0) onElement.accept(current.toString());
+        }
+    }
+
+    /** True once the closing ']' of the array has been read. */
+    public boolean isFinished() {
+        return finished;
+    }
+}
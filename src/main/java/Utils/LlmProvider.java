@@ -0,0 +1,32 @@
+package Utils;
+
+import org.json.JSONObject;
+
+import java.net.http.HttpRequest;
+import java.time.Duration;
+
+/**
+ * Where AI requests go and how they are addressed.
+ *
+ * Providers build the HTTP requests; AiHelper sends them and parses the
+ * replies, which must use the Gemini generateContent envelope (plain JSON
+ * for generate, "data: {...}" server-sent events for stream).
+ */
+public interface LlmProvider {
+
+    /** Short name for logs and cache keys, e.g. "gemini" or "stub". */
+    String name();
+
+    String model();
+
+    /** Null when requests can be sent, otherwise what is missing (e.g. the API key). */
+    String configurationProblem();
+
+    /**
+     * With a responseSchema (an OpenAPI-style schema object) the model is asked
+     * for JSON matching it; with null, for free text.
+     */
+    HttpRequest generateRequest(String prompt, JSONObject responseSchema, Duration timeout);
+
+    HttpRequest streamRequest(String prompt, JSONObject responseSchema, Duration timeout);
+}
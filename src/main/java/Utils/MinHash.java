@@ -0,0 +1,89 @@
+package Utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * MinHash signatures of card text, for near-duplicate checks that do not
+ * compare every pair of texts.
+ *
+ * A signature is HASHES ints: for each of HASHES hash functions, the
+ * smallest hash over the text's word shingles (the same shingles as
+ * {@link NearDuplicateFilter}). The share of positions where two signatures
+ * agree estimates the Jaccard similarity of the texts. Signatures are
+ * stored with the cards, so the seeds and shingling must never change.
+ */
+public class MinHash {
+
+    public static final int HASHES = 32;
+
+    private static final int[] SEEDS = new int[HASHES];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x7D3C_9A51_64E2_B08FL);
+        for (int i = 0; i < HASHES; i++) SEEDS[i] = random.nextInt();
+    }
+
+    public static int[] signature(String text) {
+        int[] signature = new int[HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        Set<String> shingles = NearDuplicateFilter.shingles(text);
+        for (String shingle : shingles) {
+            int base = shingle.hashCode();
+            for (int i = 0; i < HASHES; i++) {
+                int h = mix(base ^ SEEDS[i]);
+                if (h < signature[i]) signature[i] = h;
+            }
+        }
+        return signature;
+    }
+
+    /** Signature of a card's question and answer together, see {@link #cardText}. */
+    public static int[] signature(String question, String answer) {
+        return signature(cardText(question, answer));
+    }
+
+    /**
+     * The text a card is compared by. The answer is part of it so templated
+     * questions ("capital of France?" / "capital of Germany?") stay apart.
+     */
+    public static String cardText(String question, String answer) {
+        return (question != null ? question : "") + " " + (answer != null ? answer : "");
+    }
+
+    /** Estimated Jaccard similarity, 0..1. */
+    public static double similarity(int[] a, int[] b) {
+        int same = 0;
+        for (int i = 0; i < HASHES; i++) if (a[i] == b[i]) same++;
+        return (double) same / HASHES;
+    }
+
+    public static boolean isValid(int[] signature) {
+        return signature != null && signature.length == HASHES;
+    }
+
+    public static byte[] toBytes(int[] signature) {
+        ByteBuffer buffer = ByteBuffer.allocate(signature.length * 4);
+        for (int h : signature) buffer.putInt(h);
+        return buffer.array();
+    }
+
+    public static int[] fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int[] signature = new int[bytes.length / 4];
+        for (int i = 0; i < signature.length; i++) signature[i] = buffer.getInt();
+        return signature;
+    }
+
+    // Murmur3 finalizer: spreads String.hashCode's weak low bits over the whole int
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,83 @@
+package Utils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Accepts items one at a time and rejects those whose text is nearly the
+ * same as an item already accepted.
+ *
+ * Texts are compared as sets of word shingles (lower-cased, punctuation
+ * dropped); two items are duplicates when the Jaccard similarity of their
+ * sets reaches the threshold. Safe to feed from several threads.
+ */
+public class NearDuplicateFilter<T> {
+
+    private static final int SHINGLE_WORDS = 2;
+
+    private final Function<T, String> textOf;
+    private final double threshold;
+    private final List<T> accepted = new ArrayList<>();
+    private final List<Set<String>> acceptedShingles = new ArrayList<>();
+    private int rejected;
+
+    public NearDuplicateFilter(Function<T, String> textOf, double threshold) {
+        this.textOf = textOf;
+        this.threshold = threshold;
+    }
+
+    /** Keeps the item and returns true unless it nearly duplicates one already kept. */
+    public synchronized boolean offer(T item) {
+        Set<String> shingles = shingles(textOf.apply(item));
+        for (Set<String> other : acceptedShingles) {
+            if (jaccard(shingles, other) >= threshold) {
+                rejected++;
+                return false;
+            }
+        }
+        accepted.add(item);
+        acceptedShingles.add(shingles);
+        return true;
+    }
+
+    public synchronized List<T> accepted() {
+        return new ArrayList<>(accepted);
+    }
+
+    public synchronized int size() {
+        return accepted.size();
+    }
+
+    public synchronized int getRejected() {
+        return rejected;
+    }
+
+    static Set<String> shingles(String text) {
+        String[] words = text == null ? new String[0]
+                : text.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", " ").trim().split(" ");
+        Set<String> shingles = new HashSet<>();
+        if (words.length < SHINGLE_WORDS) {
+            for (String word : words) if (!word.isEmpty()) shingles.add(word);
+            return shingles;
+        }
+        for (int i = 0; i + SHINGLE_WORDS <= words.length; i++) {
+            StringBuilder shingle = new StringBuilder(words[i]);
+            for (int j = 1; j < SHINGLE_WORDS; j++) shingle.append(' ').append(words[i + j]);
+            shingles.add(shingle.toString());
+        }
+        return shingles;
+    }
+
+    static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty()) return 1;
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        int common = 0;
+        for (String s : smaller) if (larger.contains(s)) common++;
+        return (double) common / (a.size() + b.size() - common);
+    }
+}
@@ -0,0 +1,100 @@
+package Utils;
+
+import db.Page;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Loads a keyset-paginated list one page at a time as the user scrolls.
+ *
+ * The next page is requested when the scrollbar gets within half a screen of
+ * the end it is attached to (or when the content does not fill the view yet).
+ * Only one page is in flight at a time, and {@link #reset()} discards any page
+ * still loading for the previous listing. EDT only.
+ */
+public class ScrollPaging<T> {
+
+    private final Window owner;
+    private final Function<String, CompletableFuture<Page<T>>> source;
+    private final BiConsumer<List<T>, Boolean> onPage;
+    private final Consumer<Throwable> onError;
+
+    private String nextToken;
+    private boolean loading;
+    private boolean exhausted = true;
+    private int generation;
+
+    /**
+     * @param source loads the page after the given token (null = first page)
+     * @param onPage receives each page's items and whether it is the first page of a fresh listing
+     */
+    public ScrollPaging(Window owner, Function<String, CompletableFuture<Page<T>>> source,
+                        BiConsumer<List<T>, Boolean> onPage, Consumer<Throwable> onError) {
+        this.owner = owner;
+        this.source = source;
+        this.onPage = onPage;
+        this.onError = onError;
+    }
+
+    /** Starts the listing over from the first page. */
+    public void reset() {
+        generation++;
+        nextToken = null;
+        exhausted = false;
+        loading = false;
+        load(true);
+    }
+
+    public void loadMore() {
+        if (!exhausted && !loading) load(false);
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    private void load(boolean first) {
+        int requested = generation;
+        loading = true;
+        SwingAsync.onEdt(owner, source.apply(nextToken), page -> {
+            if (requested != generation) return;
+            loading = false;
+            nextToken = page.getNextToken();
+            exhausted = !page.hasMore();
+            onPage.accept(page.getItems(), first);
+        }, error -> {
+            if (requested != generation) return;
+            loading = false;
+            onError.accept(error);
+        });
+    }
+
+    /** Loads more when scrolled close to the bottom/right end of the bar. */
+    public void attachToEnd(JScrollBar bar) {
+        bar.addAdjustmentListener(e -> {
+            int remaining = bar.getMaximum() - (bar.getValue() + bar.getVisibleAmount());
+            if (remaining <= bar.getVisibleAmount() / 2) loadMore();
+        });
+    }
+
+    /**
+     * Loads more when scrolled up close to the top, for lists like chats that open at the
+     * bottom. Only upward movement counts, so the initial jump to the bottom does not fire it.
+     */
+    public void attachToStart(JScrollBar bar) {
+        int[] lastValue = { bar.getValue() };
+        bar.addAdjustmentListener(e -> {
+            int value = bar.getValue();
+            boolean movedUp = value < lastValue[0];
+            lastValue[0] = value;
+            boolean fits = bar.getMaximum() - bar.getMinimum() <= bar.getVisibleAmount();
+            if (fits || (movedUp && value - bar.getMinimum() <= bar.getVisibleAmount() / 2)) loadMore();
+        });
+    }
+}
@@ -0,0 +1,142 @@
+package Utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Collapses concurrent calls with the same key into one execution.
+ *
+ * The first caller for a key starts the work; callers arriving while it is
+ * still running join it and get the same result. Each caller gets its own
+ * future, so cancelling it only detaches that caller; the shared work is
+ * cancelled once every caller has gone. Progress items (for streamed
+ * results) are delivered to every caller, replaying earlier ones to callers
+ * that join late.
+ */
+public class SingleFlight<K> {
+
+    private final Map<K, Flight> inFlight = new HashMap<>();
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+
+    /**
+     * @param call     starts the work; it is given a sink for progress items
+     * @param listener receives progress items for this caller, may be null
+     */
+    @SuppressWarnings("unchecked")
+    public <V, P> CompletableFuture<V> execute(K key, Function<Consumer<P>, CompletableFuture<V>> call,
+                                               Consumer<P> listener) {
+        Flight flight;
+        boolean leader = false;
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        synchronized (this) {
+            flight = inFlight.get(key);
+            if (flight == null) {
+                flight = new Flight();
+                inFlight.put(key, flight);
+                leader = true;
+                executed.incrementAndGet();
+            } else {
+                deduplicated.incrementAndGet();
+            }
+            flight.callers++;
+        }
+        if (listener != null) flight.subscribe(mine, (Consumer<Object>) listener);
+
+        Flight joined = flight;
+        mine.whenComplete((value, error) -> {
+            if (mine.isCancelled()) leave(key, joined, mine);
+        });
+        joined.result.whenComplete((value, error) -> {
+            if (error != null) {
+                mine.completeExceptionally(error);
+            } else {
+                mine.complete((V) value);
+            }
+        });
+
+        if (leader) start(key, joined, (Function<Consumer<Object>, CompletableFuture<Object>>) (Function<?, ?>) call);
+        return mine;
+    }
+
+    private void start(K key, Flight flight, Function<Consumer<Object>, CompletableFuture<Object>> call) {
+        CompletableFuture<Object> source;
+        try {
+            source = call.apply(flight::publish);
+        } catch (RuntimeException e) {
+            source = new CompletableFuture<>();
+            source.completeExceptionally(e);
+        }
+        boolean abandoned;
+        synchronized (this) {
+            flight.source = source;
+            abandoned = flight.callers == 0;
+        }
+        // Everyone may have cancelled before the work even started
+        if (abandoned) source.cancel(true);
+        source.whenComplete((value, error) -> {
+            synchronized (this) {
+                inFlight.remove(key, flight);
+            }
+            if (error != null) {
+                flight.result.completeExceptionally(error);
+            } else {
+                flight.result.complete(value);
+            }
+        });
+    }
+
+    private void leave(K key, Flight flight, CompletableFuture<?> caller) {
+        flight.unsubscribe(caller);
+        CompletableFuture<Object> source;
+        synchronized (this) {
+            if (--flight.callers > 0 || flight.result.isDone()) return;
+            inFlight.remove(key, flight);
+            source = flight.source;
+        }
+        if (source != null) source.cancel(true);
+    }
+
+    /** Number of calls that actually ran. */
+    public long getExecuted() {
+        return executed.get();
+    }
+
+    /** Number of calls that were served by joining one already in flight. */
+    public long getDeduplicated() {
+        return deduplicated.get();
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight.size();
+    }
+
+    private static class Flight {
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        final List<Object> progress = new ArrayList<>();
+        final Map<CompletableFuture<?>, Consumer<Object>> listeners = new HashMap<>();
+        CompletableFuture<Object> source;
+        int callers;
+
+        // Listeners are called under the lock so replayed and live items cannot interleave out of order
+        synchronized void subscribe(CompletableFuture<?> caller, Consumer<Object> listener) {
+            for (Object item : progress) listener.accept(item);
+            listeners.put(caller, listener);
+        }
+
+        synchronized void unsubscribe(CompletableFuture<?> caller) {
+            listeners.remove(caller);
+        }
+
+        synchronized void publish(Object item) {
+            progress.add(item);
+            for (Consumer<Object> listener : listeners.values()) listener.accept(item);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package Utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A local stand-in for the Gemini API, for offline runs and load tests.
+ *
+ * Speaks the generateContent and streamGenerateContent (SSE) wire format
+ * on loopback. Replies come from canned files in the responses directory
+ * (flashcards.json, quiz.json, answer.txt, with {topic} and {n} filled in)
+ * or else are generated from the prompt: the right number of numbered
+ * flashcards or questions about the prompt's topic, fenced like a chatty
+ * model's reply unless the request asks for JSON mode. Latency, jitter, error
+ * rate and stream chunking are configurable, so our own overhead can be
+ * measured apart from the model's. Run main() for a standalone server.
+ */
+public class StubLlmServer {
+
+    private static final Pattern FLASHCARDS = Pattern.compile("^Generate (\\d+) flashcards");
+    private static final Pattern QUIZ = Pattern.compile("^Generate a (\\d+)-question");
+    private static final Pattern TOPIC = Pattern.compile("topic '(.+?)'(?: \\(part (\\d+) of \\d+|\\.)");
+    private static final String ANSWER_PREFIX = "Answer the following question concisely: ";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double errorRate;
+    private final int chunkChars;
+    private final long chunkDelayMillis;
+    private final Path responsesDir;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * @param port             0 picks a free port
+     * @param latencyMillis    wait before the reply (the first chunk when streaming)
+     * @param jitterMillis     random extra wait, up to this much
+     * @param errorRate        share of requests answered with 429 or 503, 0..1
+     * @param chunkChars       text per streamed event
+     * @param chunkDelayMillis wait between streamed events
+     * @param responsesDir     directory of canned replies, may be null
+     */
+    public StubLlmServer(int port, long latencyMillis, long jitterMillis, double errorRate,
+                         int chunkChars, long chunkDelayMillis, Path responsesDir) throws IOException {
+        this.latencyMillis = Math.max(0, latencyMillis);
+        this.jitterMillis = Math.max(0, jitterMillis);
+        this.errorRate = Math.max(0, Math.min(1, errorRate));
+        this.chunkChars = Math.max(1, chunkChars);
+        this.chunkDelayMillis = Math.max(0, chunkDelayMillis);
+        this.responsesDir = responsesDir;
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "stub-llm");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/v1beta/models/", this::handle);
+        server.start();
+        System.out.println("Stub LLM listening on " + getBaseUrl());
+    }
+
+    /**
+     * Settings from AI_STUB_PORT (0), AI_STUB_LATENCY_MS (300), AI_STUB_JITTER_MS (200),
+     * AI_STUB_ERROR_RATE (0), AI_STUB_CHUNK_CHARS (40), AI_STUB_CHUNK_DELAY_MS (30)
+     * and AI_STUB_RESPONSES (no canned replies).
+     */
+    public static StubLlmServer start(Properties config) throws IOException {
+        String dir = config.getProperty("AI_STUB_RESPONSES");
+        return new StubLlmServer(
+                Integer.parseInt(config.getProperty("AI_STUB_PORT", "0").trim()),
+                Long.parseLong(config.getProperty("AI_STUB_LATENCY_MS", "300").trim()),
+                Long.parseLong(config.getProperty("AI_STUB_JITTER_MS", "200").trim()),
+                Double.parseDouble(config.getProperty("AI_STUB_ERROR_RATE", "0").trim()),
+                Integer.parseInt(config.getProperty("AI_STUB_CHUNK_CHARS", "40").trim()),
+                Long.parseLong(config.getProperty("AI_STUB_CHUNK_DELAY_MS", "30").trim()),
+                dir == null || dir.trim().isEmpty() ? null : Paths.get(dir.trim()));
+    }
+
+    /** Standalone server, configured with -DAI_STUB_... system properties. */
+    public static void main(String[] args) throws Exception {
+        Properties config = new Properties();
+        config.putAll(System.getProperties());
+        if (args.length > 0) config.setProperty("AI_STUB_PORT", args[0]);
+        start(config);
+        Thread.currentThread().join();
+    }
+
+    /** Points a provider at a stub server, this one or one in another process. */
+    public static LlmProvider providerFor(String baseUrl) {
+        String models = baseUrl.endsWith("/") ? baseUrl + "v1beta/models/" : baseUrl + "/v1beta/models/";
+        return new GeminiProvider(models, "stub", null) {
+            @Override
+            public String name() {
+                return "stub";
+            }
+
+            @Override
+            public String configurationProblem() {
+                return null;
+            }
+        };
+    }
+
+    public LlmProvider provider() {
+        return providerFor(getBaseUrl());
+    }
+
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            String prompt;
+            boolean jsonMode;
+            try (InputStream in = exchange.getRequestBody()) {
+                JSONObject body = new JSONObject(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                prompt = body.getJSONArray("contents").getJSONObject(0)
+                        .getJSONArray("parts").getJSONObject(0).getString("text");
+                JSONObject generationConfig = body.optJSONObject("generationConfig");
+                jsonMode = generationConfig != null
+                        && "application/json".equals(generationConfig.optString("responseMimeType"));
+            } catch (Exception e) {
+                send(exchange, 400, "{\"error\": {\"message\": \"Malformed request\"}}");
+                return;
+            }
+            sleep(latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0));
+
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                errors.incrementAndGet();
+                boolean throttled = ThreadLocalRandom.current().nextBoolean();
+                if (throttled) exchange.getResponseHeaders().add("Retry-After", "1");
+                send(exchange, throttled ? 429 : 503,
+                        "{\"error\": {\"message\": \"Stub " + (throttled ? "rate limit" : "overload") + "\"}}");
+                return;
+            }
+
+            String text = reply(prompt, jsonMode);
+            if (exchange.getRequestURI().getPath().endsWith(":streamGenerateContent")) {
+                stream(exchange, text, prompt);
+            } else {
+                send(exchange, 200, envelope(text, prompt, text).toString());
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void stream(HttpExchange exchange, String text, String prompt) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        for (int start = 0; start < text.length(); start += chunkChars) {
+            if (start > 0) sleep(chunkDelayMillis);
+            boolean last = start + chunkChars >= text.length();
+            String chunk = text.substring(start, Math.min(text.length(), start + chunkChars));
+            out.write(("data: " + envelope(chunk, prompt, last ? text : null) + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+
+    // Usage covers the whole reply, so a stream reports it on its last event only
+    private static JSONObject envelope(String text, String prompt, String usageText) {
+        JSONObject content = new JSONObject()
+                .put("role", "model")
+                .put("parts", new JSONArray().put(new JSONObject().put("text", text)));
+        JSONObject reply = new JSONObject()
+                .put("candidates", new JSONArray().put(new JSONObject().put("content", content).put("finishReason", "STOP")));
+        if (usageText != null) {
+            // Rough token counts, about four characters per token
+            int promptTokens = prompt.length() / 4 + 1;
+            int replyTokens = usageText.length() / 4 + 1;
+            reply.put("usageMetadata", new JSONObject()
+                    .put("promptTokenCount", promptTokens)
+                    .put("candidatesTokenCount", replyTokens)
+                    .put("totalTokenCount", promptTokens + replyTokens));
+        }
+        return reply;
+    }
+
+    private String reply(String prompt, boolean jsonMode) {
+        Matcher topicMatch = TOPIC.matcher(prompt);
+        String topic = "the topic";
+        int part = 1;
+        if (topicMatch.find()) {
+            topic = topicMatch.group(1);
+            if (topicMatch.group(2) != null) part = Integer.parseInt(topicMatch.group(2));
+        }
+
+        Matcher flashcards = FLASHCARDS.matcher(prompt);
+        if (flashcards.find()) {
+            int n = Integer.parseInt(flashcards.group(1));
+            String canned = canned("flashcards.json", topic, n);
+            if (canned != null) return canned;
+            JSONArray cards = new JSONArray();
+            for (int i = 1; i <= n; i++) {
+                String number = part + "." + i;
+                cards.put(new JSONObject()
+                        .put("question", "Stub question " + number + " about " + topic + "?")
+                        .put("answer", "Stub answer " + number + " for " + topic + "."));
+            }
+            return jsonMode ? cards.toString() : "```json\n" + cards.toString(2) + "\n```";
+        }
+
+        Matcher quiz = QUIZ.matcher(prompt);
+        if (quiz.find()) {
+            int n = Integer.parseInt(quiz.group(1));
+            String canned = canned("quiz.json", topic, n);
+            if (canned != null) return canned;
+            JSONArray questions = new JSONArray();
+            for (int i = 1; i <= n; i++) {
+                String number = part + "." + i;
+                JSONArray options = new JSONArray();
+                for (int o = 1; o <= 4; o++) options.put("Option " + o + " of question " + number);
+                questions.put(new JSONObject()
+                        .put("question", "Stub quiz question " + number + " on " + topic + "?")
+                        .put("options", options)
+                        .put("correctOptionIndex", i % 4));
+            }
+            return jsonMode ? questions.toString() : "```json\n" + questions.toString(2) + "\n```";
+        }
+
+        String question = prompt.startsWith(ANSWER_PREFIX) ? prompt.substring(ANSWER_PREFIX.length()) : prompt;
+        String canned = canned("answer.txt", question, 1);
+        return canned != null ? canned : "Stub answer to: " + question;
+    }
+
+    private String canned(String file, String topic, int n) {
+        if (responsesDir == null) return null;
+        Path path = responsesDir.resolve(file);
+        if (!Files.isRegularFile(path)) return null;
+        try {
+            return new String(Files.readAllBytes(path), StandardCharsets.UTF_8)
+                    .replace("{topic}", topic)
+                    .replace("{n}", Integer.toString(n));
+        } catch (IOException e) {
+            System.err.println("Could not read canned reply " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package Utils;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Delivers background results to the EDT on behalf of a window.
+ *
+ * Futures handed to {@link #onEdt} are tied to their window: when the window
+ * is disposed they are cancelled and their callbacks never run, so a slow
+ * query cannot touch components that are gone.
+ */
+public class SwingAsync {
+
+    private static final Map<Window, Set<CompletableFuture<?>>> pending = new WeakHashMap<>();
+
+    public static <T> CompletableFuture<T> onEdt(Window owner, CompletableFuture<T> future, Consumer<T> onSuccess) {
+        return onEdt(owner, future, onSuccess, error -> error.printStackTrace());
+    }
+
+    public static <T> CompletableFuture<T> onEdt(Window owner, CompletableFuture<T> future, Consumer<T> onSuccess,
+                                                 Consumer<Throwable> onError) {
+        Set<CompletableFuture<?>> tracked = track(owner);
+        tracked.add(future);
+        future.whenComplete((value, error) -> SwingUtilities.invokeLater(() -> {
+            tracked.remove(future);
+            if (future.isCancelled()) return;
+            if (error != null) {
+                onError.accept(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            } else {
+                onSuccess.accept(value);
+            }
+        }));
+        return future;
+    }
+
+    public static void cancelAll(Window owner) {
+        Set<CompletableFuture<?>> tracked;
+        synchronized (pending) {
+            tracked = pending.get(owner);
+        }
+        if (tracked == null) return;
+        for (CompletableFuture<?> future : tracked) {
+            future.cancel(true);
+        }
+        tracked.clear();
+    }
+
+    private static Set<CompletableFuture<?>> track(Window owner) {
+        synchronized (pending) {
+            Set<CompletableFuture<?>> tracked = pending.get(owner);
+            if (tracked == null) {
+                tracked = ConcurrentHashMap.newKeySet();
+                pending.put(owner, tracked);
+                owner.addWindowListener(new WindowAdapter() {
+                    @Override
+                    public void windowClosed(WindowEvent e) {
+                        cancelAll(owner);
+                    }
+                });
+            }
+            return tracked;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package Utils;
+
+/**
+ * Token bucket that hands out reservations instead of blocking.
+ *
+ * Up to burst tokens can be taken at once; after that tokens come back at
+ * ratePerSecond. A caller that finds the bucket empty still gets a token,
+ * along with how long to wait before using it, so waiting callers are
+ * served in order without a queue.
+ */
+public class TokenBucket {
+    private final double ratePerNano;
+    private final double burst;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double ratePerSecond, int burst) {
+        this.ratePerNano = ratePerSecond / 1_000_000_000d;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /** Takes one token; returns the nanoseconds to wait before it may be used (0 = now). */
+    public synchronized long reserve() {
+        refill();
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / ratePerNano);
+    }
+
+    /** Takes a token only if one is available right now. */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1) return false;
+        tokens -= 1;
+        return true;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * ratePerNano);
+        lastRefill = now;
+    }
+}
@@ -1,16 +1,55 @@
 package create_flashcard;
 
-
+import org.bson.types.ObjectId;
 
 public class Flashcard {
-    private String question;
-    private String answer;
+    private final ObjectId id;
+    private final ObjectId userId;
+    private final String subject;
+    private final String question;
+    private final String answer;
+    // MinHash signature of question and answer (see Utils.MinHash); null on cards saved before it existed
+    private final int[] minHash;
+    // Spaced-repetition schedule; null on cards saved before scheduling existed
+    private final ReviewState review;
 
     public Flashcard(String question, String answer) {
+        this(null, null, null, question, answer);
+    }
+
+    public Flashcard(ObjectId id, ObjectId userId, String subject, String question, String answer) {
+        this(id, userId, subject, question, answer, null);
+    }
+
+    public Flashcard(ObjectId id, ObjectId userId, String subject, String question, String answer, int[] minHash) {
+        this(id, userId, subject, question, answer, minHash, null);
+    }
 
+    public Flashcard(ObjectId id, ObjectId userId, String subject, String question, String answer, int[] minHash,
+                     ReviewState review) {
+        this.id = id;
+        this.userId = userId;
+        this.subject = subject;
         this.question = question;
         this.answer = answer;
-        
+        this.minHash = minHash;
+        this.review = review;
+    }
+
+    public Flashcard withReview(ReviewState review) {
+        return new Flashcard(id, userId, subject, question, answer, minHash, review);
+    }
+
+    public ObjectId getId() {
+        return id;
+    }
+
+    public ObjectId getUserId() {
+        return userId;
+    }
+
+    public String getSubject() {
+        return subject;
     }
 
     public String getQuestion() {
@@ -20,4 +59,18 @@ public class Flashcard {
     public String getAnswer() {
         return answer;
     }
+
+    public int[] getMinHash() {
+        return minHash;
+    }
+
+    public ReviewState getReview() {
+        return review;
+    }
+
+    /** When the card is next due: its schedule, or for unscheduled cards the time it was created. */
+    public long getDue() {
+        if (review != null) return review.getDue();
+        return id != null ? id.getDate().getTime() : 0;
+    }
 }
@@ -1,10 +1,14 @@
 package create_flashcard;
 
+import Utils.AiException;
 import Utils.AiHelper;
+import Utils.ScrollPaging;
+import Utils.SwingAsync;
 import Utils.UIUtils;
 import component.Toaster;
+import db.AsyncDb;
+import db.BulkInsertResult;
 import db.FlashcardManager;
-import org.bson.Document;
 import org.bson.types.ObjectId;
 
 import javax.swing.*;
@@ -12,14 +16,18 @@ import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class FlashcardPage extends JFrame {
+    private static final int PAGE_SIZE = 30;
+
     // private final Map<String, List<Flashcard>> flashcardStore = new HashMap<>();
     private final JPanel displayPanel;
     private final Toaster toaster;
     private final String subject;
     private final String userId;
     private final ObjectId userObjectId;
+    private final ScrollPaging<Flashcard> paging;
 
     public FlashcardPage(String subject, String userId) {
         this.subject = subject;
@@ -89,9 +97,17 @@ public class FlashcardPage extends JFrame {
         scrollPane.setBorder(BorderFactory.createEmptyBorder());
         panel.add(scrollPane);
 
+        // Cards sit in one row; the next page is fetched when scrolling near its right end
+        paging = new ScrollPaging<>(this,
+                token -> AsyncDb.getQuestionsPage(userObjectId, subject, token, PAGE_SIZE),
+                this::showCards,
+                error -> toaster.error("Could not load flashcards."));
+        paging.attachToEnd(scrollPane.getHorizontalScrollBar());
+
         addRefreshButton(panel);
         addCloseButton(panel);
         setVisible(true);
+        renderCards();
     }
 
     private void addRefreshButton(JPanel panel) {
@@ -106,6 +122,7 @@ public class FlashcardPage extends JFrame {
 
         refreshBtn.addActionListener(e -> {
             toaster.info("Refreshing flashcards...");
+            FlashcardManager.invalidateCache(userObjectId, subject);
             renderCards();
         });
 
@@ -235,19 +252,28 @@ public class FlashcardPage extends JFrame {
     }
 
     private void renderCards() {
-        displayPanel.removeAll();
-        // Load flashcards from MongoDB for this user and subject
-        List<Document> docs = FlashcardManager.getFlashcards(userObjectId, subject);
-        for (Document doc : docs) {
-            String question = doc.getString("question");
-            String answer = doc.getString("answer");
-            JPanel cardPanel = createFlashcardUI(new Flashcard(question, answer));
+        // Only the questions are loaded for browsing; see createFlashcardUI for answers
+        paging.reset();
+    }
+
+    private void showCards(List<Flashcard> cards, boolean firstPage) {
+        if (firstPage) displayPanel.removeAll();
+        for (Flashcard card : cards) {
+            JPanel cardPanel = createFlashcardUI(card);
             displayPanel.add(cardPanel);
         }
         displayPanel.revalidate();
         displayPanel.repaint();
     }
 
+    // Generated card shown before it is saved; replaced when the list is reloaded
+    private void previewCard(Flashcard card) {
+        if (!isDisplayable()) return;
+        displayPanel.add(createFlashcardUI(card));
+        displayPanel.revalidate();
+        displayPanel.repaint();
+    }
+
     private JPanel createFlashcardUI(Flashcard card) {
 
         // this is flashcard view box ;
@@ -281,6 +307,7 @@ public class FlashcardPage extends JFrame {
         cardPanel.add(content, BorderLayout.CENTER);
 
         final boolean[] showingQuestion = { true };
+        final String[] answer = { card.getAnswer() };
 
         cardPanel.addMouseListener(new MouseAdapter() {
             @Override
@@ -288,8 +315,17 @@ public class FlashcardPage extends JFrame {
                 showingQuestion[0] = !showingQuestion[0];
                 if (showingQuestion[0]) {
                     content.setText("<html><div style='text-align:center;'>" + card.getQuestion() + "</div></html>");
+                } else if (answer[0] != null) {
+                    content.setText("<html><div style='text-align:center;'>" + answer[0] + "</div></html>");
                 } else {
-                    content.setText("<html><div style='text-align:center;'>" + card.getAnswer() + "</div></html>");
+                    // First flip of a browse-only card: fetch just this answer
+                    content.setText("<html><div style='text-align:center;'>...</div></html>");
+                    SwingAsync.onEdt(FlashcardPage.this, AsyncDb.getAnswer(card.getId()), loaded -> {
+                        answer[0] = loaded != null ? loaded : "";
+                        if (!showingQuestion[0]) {
+                            content.setText("<html><div style='text-align:center;'>" + answer[0] + "</div></html>");
+                        }
+                    });
                 }
             }
         });
@@ -351,32 +387,34 @@ public class FlashcardPage extends JFrame {
 
     private void generateFlashcardsWithAi() {
         toaster.info("AI is generating flashcards for " + subject + "...");
-        SwingWorker<List<Flashcard>, Void> worker = new SwingWorker<List<Flashcard>, Void>() {
-            @Override
-            protected List<Flashcard> doInBackground() {
-                return AiHelper.generateFlashcards(subject);
+        // Cards are previewed as they stream in, then saved with one insertMany for the whole batch.
+        // Always fresh: reusing a cached batch would add the same cards to the deck again.
+        // Closing the page cancels the chain, which aborts the AI request and skips the insert.
+        CompletableFuture<BulkInsertResult> saved = AiHelper.streamFlashcards(subject,
+                card -> SwingUtilities.invokeLater(() -> previewCard(card)), false)
+                .thenCompose(generatedCards -> generatedCards.isEmpty()
+                        ? CompletableFuture.completedFuture(null)
+                        : AsyncDb.supply(() -> FlashcardManager.addFlashcards(userObjectId, subject, generatedCards)));
+        SwingAsync.onEdt(this, saved, result -> {
+            if (result == null) {
+                toaster.warn("AI couldn't generate cards for this subject.");
+                return;
             }
-
-            @Override
-            protected void done() {
-                try {
-                    List<Flashcard> generatedCards = get();
-                    if (generatedCards.isEmpty()) {
-                        toaster.warn("AI couldn't generate cards for this subject.");
-                        return;
-                    }
-                    for (Flashcard card : generatedCards) {
-                        FlashcardManager.addFlashcard(userObjectId, subject, card.getQuestion(), card.getAnswer());
-                    }
-                    toaster.success("AI added " + generatedCards.size() + " new flashcards!");
-                    renderCards();
-                } catch (Exception e) {
-                    toaster.error("Error getting AI response.");
-                    e.printStackTrace();
-                }
+            String skipped = result.getDuplicates() > 0
+                    ? " Skipped " + result.getDuplicates() + " already in the deck." : "";
+            if (result.isComplete() && result.getInserted() == 0) {
+                toaster.warn("AI only came up with cards already in the deck.");
+            } else if (result.isComplete()) {
+                toaster.success("AI added " + result.getInserted() + " new flashcards!" + skipped);
+            } else {
+                toaster.warn("AI added " + result.getInserted() + " of " + result.getRequested()
+                        + " flashcards (" + result.getFailures().size() + " failed)." + skipped);
             }
-        };
-        worker.execute();
+            renderCards();
+        }, error -> {
+            toaster.error(error instanceof AiException ? error.getMessage() : "Error getting AI response.");
+            if (!(error instanceof AiException)) error.printStackTrace();
+        });
     }
 
     private void askAiQuestion() {
@@ -384,32 +422,20 @@ public class FlashcardPage extends JFrame {
                 JOptionPane.QUESTION_MESSAGE);
         if (question != null && !question.trim().isEmpty()) {
             toaster.info("AI is thinking...");
-            SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
-                @Override
-                protected String doInBackground() {
-                    return AiHelper.getAnswer(question.trim());
-                }
-
-                @Override
-                protected void done() {
-                    try {
-                        String answer = get();
-                        JTextArea textArea = new JTextArea(answer);
-                        textArea.setWrapStyleWord(true);
-                        textArea.setLineWrap(true);
-                        textArea.setEditable(false);
-                        textArea.setFont(UIUtils.FONT_GENERAL_UI);
-                        JScrollPane scrollPane = new JScrollPane(textArea);
-                        scrollPane.setPreferredSize(new Dimension(400, 200));
-                        JOptionPane.showMessageDialog(FlashcardPage.this, scrollPane, "AI's Answer",
-                                JOptionPane.INFORMATION_MESSAGE);
-                    } catch (Exception e) {
-                        toaster.error("Error getting AI response.");
-                        e.printStackTrace();
-                    }
-                }
-            };
-            worker.execute();
+            SwingAsync.onEdt(this, AiHelper.getAnswerAsync(question.trim()), answer -> {
+                JTextArea textArea = new JTextArea(answer);
+                textArea.setWrapStyleWord(true);
+                textArea.setLineWrap(true);
+                textArea.setEditable(false);
+                textArea.setFont(UIUtils.FONT_GENERAL_UI);
+                JScrollPane scrollPane = new JScrollPane(textArea);
+                scrollPane.setPreferredSize(new Dimension(400, 200));
+                JOptionPane.showMessageDialog(FlashcardPage.this, scrollPane, "AI's Answer",
+                        JOptionPane.INFORMATION_MESSAGE);
+            }, error -> {
+                toaster.error(error instanceof AiException ? error.getMessage() : "Error getting AI response.");
+                if (!(error instanceof AiException)) error.printStackTrace();
+            });
         }
     }
 }
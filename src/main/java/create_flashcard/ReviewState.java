@@ -0,0 +1,82 @@
+package create_flashcard;
+
+/**
+ * Spaced-repetition state of one card, scheduled with SM-2.
+ *
+ * A card is due once now reaches {@link #getDue()}. Each answer is graded
+ * 0..5; a pass (3 or more) grows the interval (1 day, 6 days, then times
+ * the ease factor), a fail sends the card back to relearning a few minutes
+ * later. The ease factor moves with the grade and never drops below 1.3.
+ * Immutable; {@link #next} returns the new state.
+ */
+public class ReviewState {
+
+    public static final double DEFAULT_EASE = 2.5;
+    public static final double MIN_EASE = 1.3;
+    public static final int PASS_GRADE = 3;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final long RELEARN_MILLIS = 10L * 60 * 1000;
+
+    private final long due;
+    private final int intervalDays;
+    private final double ease;
+    private final int reps;
+    private final int lapses;
+
+    public ReviewState(long due, int intervalDays, double ease, int reps, int lapses) {
+        this.due = due;
+        this.intervalDays = intervalDays;
+        this.ease = ease;
+        this.reps = reps;
+        this.lapses = lapses;
+    }
+
+    /** A new card, due right away. */
+    public static ReviewState initial(long now) {
+        return new ReviewState(now, 0, DEFAULT_EASE, 0, 0);
+    }
+
+    public ReviewState next(int grade, long now) {
+        int q = Math.max(0, Math.min(5, grade));
+        double newEase = Math.max(MIN_EASE, ease + 0.1 - (5 - q) * (0.08 + (5 - q) * 0.02));
+        if (q < PASS_GRADE) {
+            return new ReviewState(now + RELEARN_MILLIS, 0, newEase, 0, lapses + 1);
+        }
+        int newInterval;
+        if (reps == 0) {
+            newInterval = 1;
+        } else if (reps == 1) {
+            newInterval = 6;
+        } else {
+            newInterval = (int) Math.round(Math.max(1, intervalDays) * ease);
+        }
+        return new ReviewState(now + newInterval * DAY_MILLIS, newInterval, newEase, reps + 1, lapses);
+    }
+
+    /** Epoch millis when the card is next due. */
+    public long getDue() {
+        return due;
+    }
+
+    public int getIntervalDays() {
+        return intervalDays;
+    }
+
+    public double getEase() {
+        return ease;
+    }
+
+    /** Passes in a row since the last fail. */
+    public int getReps() {
+        return reps;
+    }
+
+    public int getLapses() {
+        return lapses;
+    }
+
+    @Override
+    public String toString() {
+        return "due=" + due + " interval=" + intervalDays + "d ease=" + ease + " reps=" + reps + " lapses=" + lapses;
+    }
+}
@@ -1,21 +1,21 @@
 package create_quiz;
 
+import Utils.AiException;
 import Utils.AiHelper;
+import Utils.AiQuizPrefetcher;
+import Utils.SwingAsync;
 import Utils.UIUtils;
 import dashboard.Dashboard;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.ArrayList;
 import java.util.List;
 
 public class AiQuizPage extends JFrame {
     private final String userId;
     private final String subject;
-    private List<AiQuizQuestion> questions;
-    private int currentQuestionIndex = 0;
-    private int score = 0;
-    private final List<Integer> userAnswers = new ArrayList<>();
+    // Grows while the quiz is streaming in; only touched on the EDT
+    private QuizSession session;
 
     private JLabel questionLabel;
     private JRadioButton[] optionButtons;
@@ -35,7 +35,7 @@ public class AiQuizPage extends JFrame {
         setLayout(new BorderLayout(20, 20));
 
         initUI();
-        generateQuestions();
+        resumeOrGenerate();
     }
 
     private void initUI() {
@@ -97,36 +97,65 @@ public class AiQuizPage extends JFrame {
         add(controlsPanel, BorderLayout.SOUTH);
     }
 
-    private void generateQuestions() {
-        SwingWorker<List<AiQuizQuestion>, Void> worker = new SwingWorker<List<AiQuizQuestion>, Void>() {
-            @Override
-            protected List<AiQuizQuestion> doInBackground() {
-                return AiHelper.generateQuiz(subject);
+    // A quiz left unfinished is offered back as it was, so no new questions have to be generated
+    private void resumeOrGenerate() {
+        SwingAsync.onEdt(this, QuizSessionStore.load(userId, subject, QuizSession.Mode.AI), saved -> {
+            // A stream cut off by closing the window cannot be picked up again; keep what had arrived
+            if (saved != null) saved.finishGeneration();
+            if (saved != null && saved.current() != null
+                    && JOptionPane.showConfirmDialog(this, "You have an unfinished AI quiz on " + subject + " ("
+                            + saved.getScore() + "/" + saved.getAnswered() + " so far). Resume it?",
+                    "Resume Quiz", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+                session = saved;
+                displayQuestion();
+                return;
             }
+            if (saved != null) QuizSessionStore.delete(userId, subject, QuizSession.Mode.AI);
+            generateQuestions();
+        }, error -> {
+            error.printStackTrace();
+            generateQuestions();
+        });
+    }
 
-            @Override
-            protected void done() {
-                try {
-                    questions = get();
-                    if (questions != null && !questions.isEmpty()) {
-                        displayQuestion();
-                        nextButton.setEnabled(true);
-                    } else {
-                        questionLabel.setText("Failed to generate quiz. Please try again.");
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    questionLabel.setText("An error occurred while generating the quiz.");
-                }
+    private void generateQuestions() {
+        session = QuizSession.forAi(userId, subject);
+        List<AiQuizQuestion> warm = AiQuizPrefetcher.take(subject);
+        if (warm != null) {
+            for (AiQuizQuestion question : warm) session.addQuestion(question);
+            session.finishGeneration();
+            displayQuestion();
+            return;
+        }
+        // Questions are shown as they stream in, the first one as soon as it is complete.
+        // Always fresh: a cached quiz would be the one the user just took.
+        SwingAsync.onEdt(this, AiHelper.streamQuiz(subject, question -> SwingUtilities.invokeLater(() -> {
+            if (!isDisplayable()) return;
+            session.addQuestion(question);
+            if (session.current() == question) {
+                displayQuestion();
             }
-        };
-        worker.execute();
+        }), false), all -> {
+            session.finishGeneration();
+            if (session.getQuestions().isEmpty()) {
+                questionLabel.setText("Failed to generate quiz. Please try again.");
+            } else if (session.current() == null) {
+                displayQuestion();
+            }
+        }, error -> {
+            session.finishGeneration();
+            // AiExceptions are already counted by AiTelemetry; anything else is a bug worth a trace
+            if (!(error instanceof AiException)) error.printStackTrace();
+            questionLabel.setText(error instanceof AiException
+                    ? "<html><body style='width: 500px;'>Could not generate the quiz: " + error.getMessage() + "</body></html>"
+                    : "An error occurred while generating the quiz.");
+        });
     }
 
     private void displayQuestion() {
-        if (currentQuestionIndex < questions.size()) {
-            AiQuizQuestion q = questions.get(currentQuestionIndex);
-            questionLabel.setText("<html><body style='width: 500px;'>" + (currentQuestionIndex + 1) + ". "
+        AiQuizQuestion q = session.current();
+        if (q != null) {
+            questionLabel.setText("<html><body style='width: 500px;'>" + (session.getAnswered() + 1) + ". "
                     + q.getQuestion() + "</body></html>");
             List<String> options = q.getOptions();
             for (int i = 0; i < options.size(); i++) {
@@ -137,6 +166,14 @@ public class AiQuizPage extends JFrame {
                 optionButtons[i].setVisible(false);
             }
             buttonGroup.clearSelection();
+            nextButton.setEnabled(true);
+        } else if (!session.isGenerationDone()) {
+            // Answered faster than the AI writes; the next question shows up when it arrives
+            questionLabel.setText("Generating question " + (session.getAnswered() + 1) + "...");
+            for (JRadioButton button : optionButtons) {
+                button.setVisible(false);
+            }
+            nextButton.setEnabled(false);
         } else {
             showFinalScore();
         }
@@ -157,18 +194,16 @@ public class AiQuizPage extends JFrame {
             return;
         }
 
-        if (selectedOption == questions.get(currentQuestionIndex).getCorrectOptionIndex()) {
-            score++;
-        }
-        userAnswers.add(selectedOption);
-
-        currentQuestionIndex++;
+        session.answer(selectedOption);
+        QuizSessionStore.save(session);
         displayQuestion();
     }
 
     private void showFinalScore() {
+        QuizSessionStore.delete(userId, subject, QuizSession.Mode.AI);
         this.dispose();
-        new QuizResultPage(userId, subject, questions, userAnswers, score).setVisible(true);
+        new QuizResultPage(userId, subject, session.getQuestions(), session.getAnswers(), session.getScore())
+                .setVisible(true);
     }
 
     private void backToDashboard() {
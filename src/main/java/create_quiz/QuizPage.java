@@ -1,8 +1,7 @@
 package create_quiz;
 
-import db.FlashcardManager;
-import db.QuizManager;
-import org.bson.Document;
+import db.AsyncDb;
+import db.DistractorIndex;
 import org.bson.types.ObjectId;
 import create_flashcard.Flashcard;
 import component.Toaster;
@@ -10,38 +9,33 @@ import Utils.*;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.text.DateFormat;
 import java.util.*;
 import java.util.List;
 import javax.swing.Timer;
 
 public class QuizPage extends JFrame {
 
+    // Cards fetched per session; reviews of wrong answers come back on top of these
+    private static final int SESSION_SIZE = Integer.getInteger("thinkdeck.quiz.sessionSize", 20);
+    private static final int GRADE_CORRECT = 4;
+    private static final int GRADE_WRONG = 1;
+
     private final String subject;
     private final String userId;
     private final ObjectId userObjectId;
-    private final List<Flashcard> questions;
+    private final Random random = new Random();
+    // Fetched with the first question, then shared by every question of every round in this window
+    private DistractorIndex distractors;
     private final JPanel panel;
     private final Toaster toaster;
-    private Flashcard currentQuestion;
-    private int currentIndex = 0;
-    private int score = 0;
+    // The round being played; null while loading and once it is over
+    private QuizSession session;
 
     public QuizPage(String subject, String userId) {
         this.subject = subject;
         this.userId = userId;
         this.userObjectId = new ObjectId(userId);
-        this.questions = new ArrayList<>();
-
-        // Load flashcards for this user and subject from MongoDB
-        List<Document> loadedDocs = FlashcardManager.getFlashcards(userObjectId, subject);
-        if (loadedDocs != null) {
-            for (Document doc : loadedDocs) {
-                String question = doc.getString("question");
-                String answer = doc.getString("answer");
-                questions.add(new Flashcard(question, answer));
-            }
-        }
-        Collections.shuffle(questions);
 
         setTitle("Quiz - " + subject);
         setSize(800, 500);
@@ -59,13 +53,75 @@ public class QuizPage extends JFrame {
 
         toaster = new Toaster(panel);
         addWindowControls();
+        showLoadingMessage();
+        resumeOrLoad();
+    }
+
+    // An interrupted round picks up where it stopped, options included, without touching the database
+    private void resumeOrLoad() {
+        SwingAsync.onEdt(this, QuizSessionStore.load(userId, subject, QuizSession.Mode.FLASHCARD), saved -> {
+            if (saved != null && saved.hasRemaining(System.currentTimeMillis())
+                    && JOptionPane.showConfirmDialog(this, "You have an unfinished " + subject + " quiz ("
+                            + saved.getScore() + "/" + saved.getAnswered() + " so far). Resume it?",
+                    "Resume Quiz", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+                session = saved;
+                loadNextQuestion();
+                return;
+            }
+            if (saved != null) QuizSessionStore.delete(userId, subject, QuizSession.Mode.FLASHCARD);
+            loadDueCards();
+        }, error -> {
+            error.printStackTrace();
+            loadDueCards();
+        });
+    }
 
-        if (questions.isEmpty()) {
+    // Only the cards due today are asked, most overdue first
+    private void loadDueCards() {
+        session = null;
+        SwingAsync.onEdt(this, AsyncDb.getDueCards(userObjectId, subject, SESSION_SIZE), cards -> {
+            if (cards.isEmpty()) {
+                SwingAsync.onEdt(this, AsyncDb.getNextDue(userObjectId, subject), next -> {
+                    if (next == null) {
+                        showNoCardsMessage();
+                    } else {
+                        showNothingDue(next);
+                    }
+                }, error -> {
+                    error.printStackTrace();
+                    showNoCardsMessage();
+                });
+                return;
+            }
+            session = QuizSession.forCards(QuizSession.Mode.FLASHCARD, userId, subject, cards);
+            loadNextQuestion();
+        }, error -> {
+            error.printStackTrace();
             showNoCardsMessage();
-            return;
-        }
+        });
+    }
+
+    // Cards closest to falling due first, without touching their schedule
+    private void loadPracticeCards() {
+        session = null;
+        SwingAsync.onEdt(this, AsyncDb.getFlashcards(userObjectId, subject), cards -> {
+            List<Flashcard> deck = new ArrayList<>(cards);
+            deck.sort(Comparator.comparingLong(Flashcard::getDue));
+            session = QuizSession.forCards(QuizSession.Mode.PRACTICE, userId, subject,
+                    deck.subList(0, Math.min(SESSION_SIZE, deck.size())));
+            loadNextQuestion();
+        }, error -> {
+            error.printStackTrace();
+            showNoCardsMessage();
+        });
+    }
 
-        loadNextQuestion();
+    private void showLoadingMessage() {
+        JLabel message = new JLabel("Loading " + subject + " flashcards...", SwingConstants.CENTER);
+        message.setFont(UIUtils.FONT_GENERAL_UI);
+        message.setForeground(Color.WHITE);
+        message.setBounds(0, 150, 800, 40);
+        panel.add(message);
     }
 
     private void addWindowControls() {
@@ -156,46 +212,88 @@ public class QuizPage extends JFrame {
         panel.repaint();
     }
 
+    private void showNothingDue(long nextDue) {
+        panel.removeAll();
+        addWindowControls();
+
+        JLabel message = new JLabel("<html><div style='text-align:center;'>No " + subject
+                + " cards are due.<br>Next review: "
+                + DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT).format(new Date(nextDue))
+                + "</div></html>", SwingConstants.CENTER);
+        message.setFont(UIUtils.FONT_GENERAL_UI);
+        message.setForeground(Color.WHITE);
+        message.setBounds(0, 130, 800, 80);
+        panel.add(message);
+
+        panel.add(createActionButton("Practice anyway", 250, this::loadPracticeCards));
+
+        panel.add(createActionButton("Back to Dashboard", 350, () -> {
+            dispose();
+            new dashboard.Dashboard(userId); // Pass userId to Dashboard
+        }));
+
+        panel.repaint();
+    }
+
     private void loadNextQuestion() {
         panel.removeAll();
         addWindowControls();
 
-        if (currentIndex >= questions.size()) {
-            showQuizCompleted();
-            return;
+        if (session.current() == null) {
+            if (distractors == null) {
+                // The deck's distractor index is built off the EDT once, then questions need no database trip
+                showLoadingMessage();
+                SwingAsync.onEdt(this, AsyncDb.getDistractorIndex(userObjectId, subject), index -> {
+                    distractors = index;
+                    loadNextQuestion();
+                }, error -> {
+                    error.printStackTrace();
+                    showNoCardsMessage();
+                });
+                panel.repaint();
+                return;
+            }
+            Flashcard card = session.draw(System.currentTimeMillis());
+            if (card == null) {
+                showQuizCompleted();
+                return;
+            }
+            List<String> options = generateOptions(card.getAnswer());
+            session.ask(new AiQuizQuestion(card.getQuestion(), options, options.indexOf(card.getAnswer())), card);
         }
 
-        currentQuestion = questions.get(currentIndex);
-        createQuestionUI();
+        createQuestionUI(session.current());
         panel.repaint();
     }
 
-    private void createQuestionUI() {
+    private void createQuestionUI(AiQuizQuestion question) {
         // Question label
-        JLabel qLabel = new JLabel("<html><div style='text-align:center;'>Q" + (currentIndex + 1) + ": "
-                + currentQuestion.getQuestion() + "</div></html>", SwingConstants.CENTER);
+        JLabel qLabel = new JLabel("<html><div style='text-align:center;'>Q" + (session.getAnswered() + 1) + ": "
+                + question.getQuestion() + "</div></html>", SwingConstants.CENTER);
         qLabel.setFont(UIUtils.FONT_GENERAL_UI);
         qLabel.setForeground(Color.WHITE);
         qLabel.setBounds(50, 80, 700, 60);
         panel.add(qLabel);
 
         // Score display
-        JLabel scoreLabel = new JLabel("Score: " + score + "/" + questions.size(), SwingConstants.RIGHT);
+        JLabel scoreLabel = new JLabel("Score: " + session.getScore() + "/" + session.getAnswered(),
+                SwingConstants.RIGHT);
         scoreLabel.setFont(UIUtils.FONT_GENERAL_UI);
         scoreLabel.setForeground(Color.WHITE);
         scoreLabel.setBounds(600, 20, 150, 30);
         panel.add(scoreLabel);
 
-        // Generate and display options
-        List<String> options = generateOptions(currentQuestion.getAnswer());
+        List<String> options = question.getOptions();
         int y = 160;
-        for (String opt : options) {
-            panel.add(createOptionButton(opt, y));
+        for (int i = 0; i < options.size(); i++) {
+            panel.add(createOptionButton(question, i, y));
             y += 60;
         }
+        panel.revalidate();
     }
 
-    private JLabel createOptionButton(String optionText, int yPos) {
+    private JLabel createOptionButton(AiQuizQuestion question, int index, int yPos) {
+        String optionText = question.getOptions().get(index);
         JLabel option = new JLabel("<html><div style='text-align:center;padding:10px;'>" + optionText + "</div></html>",
                 SwingConstants.CENTER);
         option.setFont(UIUtils.FONT_GENERAL_UI);
@@ -209,7 +307,7 @@ public class QuizPage extends JFrame {
         option.addMouseListener(new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent unused) {
-                handleAnswerSelection(optionText);
+                handleAnswerSelection(question, index);
             }
 
             @Override
@@ -226,14 +324,26 @@ public class QuizPage extends JFrame {
         return option;
     }
 
-    private void handleAnswerSelection(String selectedAnswer) {
-        if (selectedAnswer.equals(currentQuestion.getAnswer())) {
-            score++;
+    private void handleAnswerSelection(AiQuizQuestion question, int selected) {
+        if (session == null || session.current() != question) return; // already answered
+        Flashcard card = session.currentCard();
+        boolean correct = session.answer(selected);
+        if (correct) {
             toaster.success("Correct!");
         } else {
-            toaster.error("Wrong! Correct: " + currentQuestion.getAnswer());
+            toaster.error("Wrong! Correct: " + question.getOptions().get(question.getCorrectOptionIndex()));
+        }
+        QuizSessionStore.save(session);
+
+        // Reschedule the card; a missed one is due again in minutes and rejoins this session
+        if (session.getMode() == QuizSession.Mode.FLASHCARD) {
+            QuizSession answeredIn = session;
+            SwingAsync.onEdt(this, AsyncDb.recordReview(card, correct ? GRADE_CORRECT : GRADE_WRONG), updated -> {
+                if (answeredIn != session) return; // that round is over
+                session.requeue(updated);
+                QuizSessionStore.save(session);
+            });
         }
-        currentIndex++;
 
         Timer timer = new Timer(1000, unused -> loadNextQuestion());
         timer.setRepeats(false);
@@ -241,19 +351,7 @@ public class QuizPage extends JFrame {
     }
 
     private List<String> generateOptions(String correct) {
-        Set<String> allAnswers = new HashSet<>();
-        // Get all flashcards for this user and subject from DB
-        List<Document> allDocs = FlashcardManager.getFlashcards(userObjectId, subject);
-        if (allDocs != null) {
-            for (Document doc : allDocs) {
-                String ans = doc.getString("answer");
-                if (!ans.equals(correct) && allAnswers.size() < 3) {
-                    allAnswers.add(ans);
-                }
-            }
-        }
-
-        List<String> options = new ArrayList<>(allAnswers);
+        List<String> options = new ArrayList<>(distractors.pick(correct, 3, random));
         options.add(correct);
 
         while (options.size() < 4) {
@@ -265,15 +363,25 @@ public class QuizPage extends JFrame {
     }
 
     private void showQuizCompleted() {
+        QuizSession finished = session;
+        session = null;
+        int score = finished.getScore();
+        int answered = finished.getAnswered();
+        QuizSessionStore.delete(userId, subject, finished.getMode());
+
         // Save the result before showing completion
-        QuizManager.saveQuizResult(userObjectId, subject, score, questions.size(), "Flashcard Quiz");
+        AsyncDb.saveQuizResult(userObjectId, subject, score, answered, "Flashcard Quiz")
+                .exceptionally(error -> {
+                    error.printStackTrace();
+                    return null;
+                });
 
         panel.removeAll();
         addWindowControls();
 
         JLabel done = new JLabel(
                 "<html><div style='text-align:center;'>Quiz Completed!<br>Final Score: " + score + "/"
-                        + questions.size() + "</div></html>",
+                        + answered + "</div></html>",
                 SwingConstants.CENTER);
         done.setFont(new Font("Segoe UI", Font.BOLD, 24));
         done.setForeground(Color.WHITE);
@@ -281,10 +389,11 @@ public class QuizPage extends JFrame {
         panel.add(done);
 
         panel.add(createActionButton("Restart Quiz", 250, () -> {
-            currentIndex = 0;
-            score = 0;
-            Collections.shuffle(questions);
-            loadNextQuestion();
+            panel.removeAll();
+            addWindowControls();
+            showLoadingMessage();
+            panel.repaint();
+            loadDueCards();
         }));
 
         panel.add(createActionButton("Back to Dashboard", 350, () -> {
@@ -0,0 +1,281 @@
+package create_quiz;
+
+import create_flashcard.Flashcard;
+import create_flashcard.ReviewState;
+import org.bson.types.ObjectId;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * One quiz run, without any Swing: the questions asked so far, the answers
+ * given, the score and, for flashcard quizzes, the cards still to come.
+ * QuizPage and AiQuizPage drive it and only draw what it says.
+ *
+ * Flashcard quizzes draw cards from a {@link ReviewQueue} and turn each
+ * into a multiple-choice question with {@link #ask}; AI quizzes get their
+ * questions appended as they stream in. Either way the question at index
+ * {@link #getAnswered()} is the one waiting for an answer, so a session
+ * restored from {@link #toBytes()} shows exactly what was on screen.
+ * Not thread-safe.
+ */
+public class QuizSession {
+
+    public enum Mode {
+        /** Due flashcards; answers reschedule the cards. */
+        FLASHCARD,
+        /** Flashcards that are not due; nothing is rescheduled. */
+        PRACTICE,
+        /** Questions written by the AI. */
+        AI
+    }
+
+    private static final int MAGIC = 0x54445153; // "TDQS"
+    private static final int VERSION = 1;
+
+    private final Mode mode;
+    private final String userId;
+    private final String subject;
+    private final ReviewQueue pending = new ReviewQueue();
+    private final List<AiQuizQuestion> questions = new ArrayList<>();
+    // The card behind each question of a flashcard quiz; null entries for AI questions
+    private final List<Flashcard> cards = new ArrayList<>();
+    private final List<Integer> answers = new ArrayList<>();
+    private int score;
+    private boolean generationDone;
+
+    private QuizSession(Mode mode, String userId, String subject) {
+        this.mode = mode;
+        this.userId = userId;
+        this.subject = subject;
+    }
+
+    public static QuizSession forCards(Mode mode, String userId, String subject, Collection<Flashcard> cards) {
+        if (mode == Mode.AI) throw new IllegalArgumentException("AI quizzes have no cards");
+        QuizSession session = new QuizSession(mode, userId, subject);
+        session.pending.addAll(cards);
+        session.generationDone = true;
+        return session;
+    }
+
+    public static QuizSession forAi(String userId, String subject) {
+        return new QuizSession(Mode.AI, userId, subject);
+    }
+
+    /** Next card to ask, if one is due by now (any card when practicing); null when none is. */
+    public Flashcard draw(long now) {
+        if (current() != null) throw new IllegalStateException("The current question has not been answered");
+        return pending.poll(mode == Mode.PRACTICE ? Long.MAX_VALUE : now);
+    }
+
+    /** Makes question, built from card, the current question. */
+    public void ask(AiQuizQuestion question, Flashcard card) {
+        questions.add(question);
+        cards.add(card);
+    }
+
+    /** Appends a question of an AI quiz. */
+    public void addQuestion(AiQuizQuestion question) {
+        ask(question, null);
+    }
+
+    /** Puts a rescheduled card back; it is drawn again once it is due. */
+    public void requeue(Flashcard card) {
+        pending.offer(card);
+    }
+
+    public void finishGeneration() {
+        generationDone = true;
+    }
+
+    /** The question waiting for an answer, or null if every question so far has been answered. */
+    public AiQuizQuestion current() {
+        return answers.size() < questions.size() ? questions.get(answers.size()) : null;
+    }
+
+    /** The card behind the current question, or null. */
+    public Flashcard currentCard() {
+        return answers.size() < cards.size() ? cards.get(answers.size()) : null;
+    }
+
+    /** Records the chosen option of the current question and returns whether it was right. */
+    public boolean answer(int option) {
+        AiQuizQuestion question = current();
+        if (question == null) throw new IllegalStateException("No question is waiting for an answer");
+        boolean correct = option == question.getCorrectOptionIndex();
+        if (correct) score++;
+        answers.add(option);
+        return correct;
+    }
+
+    /** Whether anything is left to answer now; an AI quiz still streaming always has more. */
+    public boolean hasRemaining(long now) {
+        if (current() != null) return true;
+        if (mode == Mode.AI) return !generationDone;
+        return pending.hasDue(mode == Mode.PRACTICE ? Long.MAX_VALUE : now);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getAnswered() {
+        return answers.size();
+    }
+
+    public boolean isGenerationDone() {
+        return generationDone;
+    }
+
+    public List<AiQuizQuestion> getQuestions() {
+        return new ArrayList<>(questions);
+    }
+
+    /** Chosen option index per answered question. */
+    public List<Integer> getAnswers() {
+        return new ArrayList<>(answers);
+    }
+
+    // --- Snapshots ---
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not thrown by an in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    public static QuizSession fromBytes(byte[] bytes) throws IOException {
+        return readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Layout: magic, version, mode, user id, subject, score, generationDone,
+     * then the questions (each with its card, if any), the answers and the
+     * pending cards, every list prefixed by its length. Strings are UTF-8 with
+     * an int length, so long answers are not limited to writeUTF's 64 KB.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(mode.ordinal());
+        writeString(out, userId);
+        writeString(out, subject);
+        out.writeInt(score);
+        out.writeBoolean(generationDone);
+        out.writeInt(questions.size());
+        for (int i = 0; i < questions.size(); i++) {
+            AiQuizQuestion question = questions.get(i);
+            writeString(out, question.getQuestion());
+            out.writeInt(question.getOptions().size());
+            for (String option : question.getOptions()) writeString(out, option);
+            out.writeInt(question.getCorrectOptionIndex());
+            Flashcard card = cards.get(i);
+            out.writeBoolean(card != null);
+            if (card != null) writeCard(out, card);
+        }
+        out.writeInt(answers.size());
+        for (int answer : answers) out.writeInt(answer);
+        List<Flashcard> queued = pending.toList();
+        out.writeInt(queued.size());
+        for (Flashcard card : queued) writeCard(out, card);
+    }
+
+    public static QuizSession readFrom(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a quiz session snapshot");
+        int version = in.readUnsignedByte();
+        if (version != VERSION) throw new IOException("Unsupported quiz session snapshot version " + version);
+        int modeIndex = in.readUnsignedByte();
+        if (modeIndex >= Mode.values().length) throw new IOException("Unknown quiz mode " + modeIndex);
+        QuizSession session = new QuizSession(Mode.values()[modeIndex], readString(in), readString(in));
+        if (!ObjectId.isValid(session.userId)) throw new IOException("Corrupt user id");
+        ObjectId owner = new ObjectId(session.userId);
+        session.score = in.readInt();
+        session.generationDone = in.readBoolean();
+        int questionCount = readCount(in);
+        for (int i = 0; i < questionCount; i++) {
+            String text = readString(in);
+            int optionCount = readCount(in);
+            List<String> options = new ArrayList<>(optionCount);
+            for (int j = 0; j < optionCount; j++) options.add(readString(in));
+            AiQuizQuestion question = new AiQuizQuestion(text, options, in.readInt());
+            session.ask(question, in.readBoolean() ? readCard(in, owner, session.subject) : null);
+        }
+        int answerCount = readCount(in);
+        if (answerCount > questionCount) throw new IOException("More answers than questions");
+        for (int i = 0; i < answerCount; i++) session.answers.add(in.readInt());
+        int pendingCount = readCount(in);
+        for (int i = 0; i < pendingCount; i++) session.pending.offer(readCard(in, owner, session.subject));
+        return session;
+    }
+
+    // Only what a quiz needs: the MinHash signature is left out, the review state kept for rescheduling
+    private static void writeCard(DataOutput out, Flashcard card) throws IOException {
+        out.write(card.getId().toByteArray());
+        writeString(out, card.getQuestion());
+        writeString(out, card.getAnswer());
+        ReviewState review = card.getReview();
+        out.writeBoolean(review != null);
+        if (review != null) {
+            out.writeLong(review.getDue());
+            out.writeInt(review.getIntervalDays());
+            out.writeDouble(review.getEase());
+            out.writeInt(review.getReps());
+            out.writeInt(review.getLapses());
+        }
+    }
+
+    private static Flashcard readCard(DataInput in, ObjectId userId, String subject) throws IOException {
+        byte[] id = new byte[12];
+        in.readFully(id);
+        String question = readString(in);
+        String answer = readString(in);
+        ReviewState review = in.readBoolean()
+                ? new ReviewState(in.readLong(), in.readInt(), in.readDouble(), in.readInt(), in.readInt())
+                : null;
+        return new Flashcard(new ObjectId(id), userId, subject, question, answer, null, review);
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[readCount(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Guards the allocations above against a corrupt length
+    private static int readCount(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > 16 * 1024 * 1024) throw new IOException("Corrupt length " + count);
+        return count;
+    }
+}
@@ -0,0 +1,136 @@
+package create_quiz;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshots of unfinished quizzes, one file per user, subject and kind of
+ * quiz under thinkdeck.quiz.sessionDir (default ~/.thinkdeck/sessions).
+ *
+ * The pages save after every answer. The snapshot is taken on the caller's
+ * thread and written by one background thread, in order, so a delete
+ * queued after a save always wins. Snapshots older than
+ * thinkdeck.quiz.resumeHours (default 24) are not offered for resuming.
+ */
+public class QuizSessionStore {
+
+    private static final Path DIR = Paths.get(System.getProperty("thinkdeck.quiz.sessionDir",
+            Paths.get(System.getProperty("user.home"), ".thinkdeck", "sessions").toString()));
+    private static final long MAX_AGE_MILLIS = Long.getLong("thinkdeck.quiz.resumeHours", 24L) * 3600 * 1000;
+
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "quiz-session-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        // Frames exit the JVM when closed; let the last snapshot reach the disk first
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            WRITER.shutdown();
+            try {
+                WRITER.awaitTermination(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "quiz-session-flush"));
+    }
+
+    public static void save(QuizSession session) {
+        byte[] bytes = session.toBytes();
+        Path file = file(session.getUserId(), session.getSubject(), session.getMode());
+        submit(() -> {
+            Path tmp = null;
+            try {
+                Files.createDirectories(DIR);
+                tmp = Files.createTempFile(DIR, "session", ".tmp");
+                Files.write(tmp, bytes);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                tmp = null;
+            } catch (IOException e) {
+                System.err.println("Could not save quiz session: " + e.getMessage());
+            } finally {
+                // Left over only if the write or move failed
+                if (tmp != null) {
+                    try {
+                        Files.deleteIfExists(tmp);
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * The unfinished quiz saved for this user and subject, or null. FLASHCARD
+     * and PRACTICE share a slot, since QuizPage runs one or the other.
+     */
+    public static CompletableFuture<QuizSession> load(String userId, String subject, QuizSession.Mode mode) {
+        Path file = file(userId, subject, mode);
+        return submit(() -> {
+            if (!Files.isRegularFile(file)) return null;
+            try {
+                if (System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() > MAX_AGE_MILLIS) {
+                    Files.deleteIfExists(file);
+                    return null;
+                }
+                QuizSession session = QuizSession.fromBytes(Files.readAllBytes(file));
+                if (session.getUserId().equals(userId) && session.getSubject().equals(subject)) return session;
+                return null;
+            } catch (Exception e) {
+                System.err.println("Dropping unreadable quiz session " + file.getFileName() + ": " + e.getMessage());
+                Files.deleteIfExists(file);
+                return null;
+            }
+        });
+    }
+
+    public static void delete(String userId, String subject, QuizSession.Mode mode) {
+        Path file = file(userId, subject, mode);
+        submit(() -> {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.err.println("Could not delete quiz session: " + e.getMessage());
+            }
+            return null;
+        });
+    }
+
+    private static Path file(String userId, String subject, QuizSession.Mode mode) {
+        String slot = mode == QuizSession.Mode.AI ? "ai" : "cards";
+        // Subjects are free text; a name-based UUID keeps the file name safe
+        return DIR.resolve(userId + "-" + slot + "-"
+                + UUID.nameUUIDFromBytes(subject.getBytes(StandardCharsets.UTF_8)) + ".session");
+    }
+
+    private interface Task<T> {
+        T run() throws IOException;
+    }
+
+    private static <T> CompletableFuture<T> submit(Task<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            WRITER.execute(() -> {
+                try {
+                    result.complete(task.run());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e); // shutting down
+        }
+        return result;
+    }
+}
@@ -0,0 +1,54 @@
+package create_quiz;
+
+import create_flashcard.Flashcard;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Cards of a study session ordered by when they fall due, most overdue
+ * first. A card answered wrongly is offered back with its relearning due
+ * time and comes up again once that passes. Not thread-safe; it is only
+ * used through QuizSession, on the EDT.
+ */
+public class ReviewQueue {
+
+    private final PriorityQueue<Flashcard> cards = new PriorityQueue<>(
+            Comparator.comparingLong(Flashcard::getDue).thenComparing(Flashcard::getId));
+
+    public void offer(Flashcard card) {
+        cards.offer(card);
+    }
+
+    public void addAll(Collection<Flashcard> batch) {
+        cards.addAll(batch);
+    }
+
+    /** The most overdue card if it is due by now, else null. */
+    public Flashcard poll(long now) {
+        Flashcard head = cards.peek();
+        if (head == null || head.getDue() > now) return null;
+        return cards.poll();
+    }
+
+    public boolean hasDue(long now) {
+        Flashcard head = cards.peek();
+        return head != null && head.getDue() <= now;
+    }
+
+    /** The queued cards, in no particular order. */
+    public List<Flashcard> toList() {
+        return new ArrayList<>(cards);
+    }
+
+    public int size() {
+        return cards.size();
+    }
+
+    public void clear() {
+        cards.clear();
+    }
+}
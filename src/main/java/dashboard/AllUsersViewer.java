@@ -1,8 +1,6 @@
 package dashboard;
 
-import com.mongodb.client.*;
-import org.bson.Document;
-import db.TestMongo;
+import db.User;
 import db.UserManager;
 import Utils.*;
 import component.Toaster;
@@ -16,7 +14,7 @@ public class AllUsersViewer extends JFrame {
 
     private final String currentUserId;
     private JPanel userListPanel;
-    private final Document currentUser;
+    private final User currentUser;
 
     public AllUsersViewer(String currentUserId) {
         this.currentUserId = currentUserId;
@@ -82,25 +80,14 @@ public class AllUsersViewer extends JFrame {
             }
             try {
                 double radius = Double.parseDouble(radiusField.getText());
-                Object locationObj = currentUser.get("location");
-
-                if (!(locationObj instanceof Document)) {
+                if (!currentUser.hasLocation()) {
                     new Toaster(backgroundPanel).error("Your location is not set. Please update it in your profile.");
                     return;
                 }
-                
-                Document location = (Document) locationObj;
-                @SuppressWarnings("unchecked")
-                List<Double> coordinates = (List<Double>) location.get("coordinates");
-
-                if (coordinates == null || coordinates.size() != 2) {
-                    new Toaster(backgroundPanel).error("Your location data is invalid. Please update it in your profile.");
-                    return;
-                }
 
-                double longitude = coordinates.get(0);
-                double latitude = coordinates.get(1);
-                List<Pair<Document, Double>> users = UserManager.findUsersWithinRadius(latitude, longitude, radius);
+                double longitude = currentUser.getLongitude();
+                double latitude = currentUser.getLatitude();
+                List<Pair<User, Double>> users = UserManager.findUsersWithinRadius(latitude, longitude, radius);
                 updateUsersList(users);
 
             } catch (NumberFormatException ex) {
@@ -126,28 +113,26 @@ public class AllUsersViewer extends JFrame {
     }
 
     private void loadAllUsers() {
-        MongoDatabase db = TestMongo.connect();
-        MongoCollection<Document> users = db.getCollection("users");
-        FindIterable<Document> docs = users.find(com.mongodb.client.model.Filters.ne("isHidden", true));
+        List<User> users = UserManager.getVisibleUsers();
         userListPanel.removeAll();
-        for (Document user : docs) {
-            if (user.getObjectId("_id").toHexString().equals(currentUserId)) continue;
+        for (User user : users) {
+            if (user.getId().toHexString().equals(currentUserId)) continue;
             addUserCard(user, null);
         }
         userListPanel.revalidate();
         userListPanel.repaint();
     }
 
-    private void updateUsersList(List<Pair<Document, Double>> usersWithDistance) {
+    private void updateUsersList(List<Pair<User, Double>> usersWithDistance) {
         userListPanel.removeAll();
         if (usersWithDistance.isEmpty()) {
             JLabel noUsersLabel = new JLabel("No users found within the specified radius.");
             noUsersLabel.setForeground(Color.WHITE);
             userListPanel.add(noUsersLabel);
         } else {
-            for (Pair<Document, Double> userPair : usersWithDistance) {
-                Document user = userPair.getLeft();
-                if (user.getObjectId("_id").toHexString().equals(currentUserId)) continue;
+            for (Pair<User, Double> userPair : usersWithDistance) {
+                User user = userPair.getLeft();
+                if (user.getId().toHexString().equals(currentUserId)) continue;
                 Double distance = userPair.getRight();
                 addUserCard(user, distance);
             }
@@ -156,10 +141,10 @@ public class AllUsersViewer extends JFrame {
         userListPanel.repaint();
     }
 
-    private void addUserCard(Document user, Double distance) {
-        String username = user.getString("username");
-        String email = user.getString("email");
-        boolean canReceiveMessages = user.getBoolean("canReceiveMessages", true);
+    private void addUserCard(User user, Double distance) {
+        String username = user.getUsername();
+        String email = user.getEmail();
+        boolean canReceiveMessages = user.canReceiveMessages();
 
         JPanel userCard = new JPanel();
         userCard.setLayout(new BorderLayout());
@@ -186,19 +171,11 @@ public class AllUsersViewer extends JFrame {
             distanceLabel.setFont(new Font("Segoe UI", Font.PLAIN, 12));
             textPanel.add(distanceLabel);
         } else {
-            Object locationObj = user.get("location");
             String locationString = "Not available";
-            if (locationObj instanceof Document) {
-                Document locationDoc = (Document) locationObj;
-                @SuppressWarnings("unchecked")
-                List<Double> coords = (List<Double>) locationDoc.get("coordinates");
-                if (coords != null && coords.size() == 2) {
-                    locationString = String.format("%.4f, %.4f", coords.get(1), coords.get(0)); // lat, lon
-                }
-            } else if (locationObj instanceof String) {
-                locationString = (String) locationObj;
+            if (user.hasLocation()) {
+                locationString = String.format("%.4f, %.4f", user.getLatitude(), user.getLongitude()); // lat, lon
             }
-            
+
             JLabel locationLabel = new JLabel("Location: " + locationString);
             locationLabel.setForeground(new Color(180, 180, 180));
             locationLabel.setFont(new Font("Segoe UI", Font.PLAIN, 13));
@@ -211,7 +188,7 @@ public class AllUsersViewer extends JFrame {
             JButton messageButton = new JButton("Message");
             messageButton.setFont(new Font("Segoe UI", Font.BOLD, 12));
             messageButton.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
-            String receiverId = user.getObjectId("_id").toHexString();
+            String receiverId = user.getId().toHexString();
             messageButton.addActionListener(e -> {
                 new MessagingUI(currentUserId, receiverId).setVisible(true);
             });
@@ -1,11 +1,11 @@
 package dashboard;
 
 import component.Toaster;
+import Utils.AiQuizPrefetcher;
+import Utils.SwingAsync;
 import Utils.UIUtils;
-import db.FlashcardManager;
+import db.AsyncDb;
 import org.bson.types.ObjectId;
-import db.UserManager;
-import org.bson.Document;
 
 import javax.swing.*;
 import java.awt.*;
@@ -21,12 +21,13 @@ public class Dashboard extends JFrame {
     private final Toaster toaster;
     private static final Color PRIMARY_COLOR = new Color(40, 44, 52);
     private final String userId;
-    private String userName;
     private JPanel subjectCardsPanel;
+    private JLabel userLabel;
+    private JCheckBox hideMeCheckbox;
+    private JCheckBox receiveMessagesCheckbox;
 
     public Dashboard(String userId) {
         this.userId = userId;
-        fetchUserName();
 
         initializeFrame();
         toaster = new Toaster(this.getContentPane());
@@ -52,16 +53,28 @@ public class Dashboard extends JFrame {
         });
 
         setVisible(true);
+        loadUser();
     }
 
-    private void fetchUserName() {
+    // Name and preference checkboxes are filled in once the user document arrives
+    private void loadUser() {
+        ObjectId userObjectId;
         try {
-            Document userDoc = UserManager.getUserById(new ObjectId(userId));
-            this.userName = (userDoc != null && userDoc.containsKey("username")) ? userDoc.getString("username")
-                    : userId;
-        } catch (Exception e) {
-            this.userName = userId; // Fallback
+            userObjectId = new ObjectId(userId);
+        } catch (IllegalArgumentException e) {
+            userLabel.setText("User: " + userId); // Fallback
+            return;
         }
+        SwingAsync.onEdt(this, AsyncDb.getUserById(userObjectId), user -> {
+            String userName = (user != null && user.getUsername() != null) ? user.getUsername() : userId;
+            userLabel.setText("User: " + userName);
+            if (user != null) {
+                hideMeCheckbox.setSelected(user.isHidden());
+                receiveMessagesCheckbox.setSelected(user.canReceiveMessages());
+            }
+        }, error -> userLabel.setText("User: " + userId));
+        // Warm AI quizzes for the subjects this user already has cards in
+        SwingAsync.onEdt(this, AsyncDb.getAllSubjects(userObjectId), AiQuizPrefetcher::watch);
     }
 
     private void initializeFrame() {
@@ -85,7 +98,7 @@ public class Dashboard extends JFrame {
         gbc.gridy = 0;
         gbc.gridheight = 2;
         gbc.weightx = 0.1;
-        JLabel userLabel = new JLabel("User: " + userName);
+        userLabel = new JLabel("User: ...");
         userLabel.setFont(new Font("Segoe UI", Font.BOLD, 24));
         userLabel.setForeground(Color.WHITE);
         headerPanel.add(userLabel, gbc);
@@ -142,36 +155,23 @@ public class Dashboard extends JFrame {
     }
 
     private JCheckBox createHideMeCheckbox() {
-        JCheckBox hideMeCheckbox = new JCheckBox("Hide me from other users");
+        hideMeCheckbox = new JCheckBox("Hide me from other users");
         styleCheckbox(hideMeCheckbox);
-        try {
-            Document userDoc = UserManager.getUserById(new ObjectId(userId));
-            if (userDoc != null) {
-                hideMeCheckbox.setSelected(userDoc.getBoolean("isHidden", false));
-            }
-        } catch (Exception e) {
-            /* ignore */ }
-        hideMeCheckbox.addActionListener(e -> {
-            UserManager.setUserHiddenStatus(new ObjectId(userId), hideMeCheckbox.isSelected());
-            toaster.success("Your visibility has been updated.");
-        });
+        hideMeCheckbox.addActionListener(e -> SwingAsync.onEdt(this,
+                AsyncDb.setUserHiddenStatus(new ObjectId(userId), hideMeCheckbox.isSelected()),
+                done -> toaster.success("Your visibility has been updated."),
+                error -> toaster.error("Could not update your visibility.")));
         return hideMeCheckbox;
     }
 
     private JCheckBox createReceiveMessagesCheckbox() {
-        JCheckBox receiveMessagesCheckbox = new JCheckBox("Allow users to message me");
+        receiveMessagesCheckbox = new JCheckBox("Allow users to message me");
         styleCheckbox(receiveMessagesCheckbox);
-        try {
-            Document userDoc = UserManager.getUserById(new ObjectId(userId));
-            if (userDoc != null) {
-                receiveMessagesCheckbox.setSelected(userDoc.getBoolean("canReceiveMessages", true));
-            }
-        } catch (Exception e) {
-            /* ignore */ }
-        receiveMessagesCheckbox.addActionListener(e -> {
-            UserManager.setUserMessagePreference(new ObjectId(userId), receiveMessagesCheckbox.isSelected());
-            toaster.success("Your messaging preference has been updated.");
-        });
+        receiveMessagesCheckbox.setSelected(true);
+        receiveMessagesCheckbox.addActionListener(e -> SwingAsync.onEdt(this,
+                AsyncDb.setUserMessagePreference(new ObjectId(userId), receiveMessagesCheckbox.isSelected()),
+                done -> toaster.success("Your messaging preference has been updated."),
+                error -> toaster.error("Could not update your messaging preference.")));
         return receiveMessagesCheckbox;
     }
 
@@ -290,14 +290,15 @@ public class Dashboard extends JFrame {
         UIUtils.styleButton(quizButton, subject.color.darker(), Color.BLACK);
         quizButton.addActionListener(e -> {
             ObjectId userObjectId = new ObjectId(userId);
-            int cardCount = FlashcardManager.getFlashcards(userObjectId, subject.name).size();
-            if (cardCount < 4) {
-                toaster.warn("Need at least 4 flashcards to start quiz");
-                return;
-            }
-            toaster.info("Launching " + subject.name + " Quiz...");
-            new create_quiz.Test(userId, subject.name);
-            dispose();
+            SwingAsync.onEdt(this, AsyncDb.hasEnough(userObjectId, subject.name, 4), enough -> {
+                if (!enough) {
+                    toaster.warn("Need at least 4 flashcards to start quiz");
+                    return;
+                }
+                toaster.info("Launching " + subject.name + " Quiz...");
+                new create_quiz.Test(userId, subject.name);
+                dispose();
+            }, error -> toaster.error("Could not load your flashcards."));
         });
         return quizButton;
     }
@@ -318,24 +319,27 @@ public class Dashboard extends JFrame {
         addFlashcardBtn.setFont(new Font("Segoe UI", Font.BOLD, 36));
         UIUtils.styleButton(addFlashcardBtn, new Color(122, 201, 160), Color.BLACK);
         addFlashcardBtn.setToolTipText("Add new flashcard");
-        addFlashcardBtn.addActionListener(e -> {
-            Set<String> subjects = FlashcardManager.getAllSubjects(new ObjectId(userId));
-            if (subjects.isEmpty()) {
-                toaster.error("No subjects available. Create a subject first!");
-                return;
-            }
-            String[] subjectArray = subjects.toArray(new String[0]);
-            String selectedSubject = (String) JOptionPane.showInputDialog(
-                    this, "Select subject for the new flashcard:", "Select Subject",
-                    JOptionPane.QUESTION_MESSAGE, null, subjectArray, subjectArray[0]);
-            if (selectedSubject != null) {
-                new create_flashcard.FlashcardPage(selectedSubject, userId);
-                dispose();
-            }
-        });
+        addFlashcardBtn.addActionListener(e -> SwingAsync.onEdt(this,
+                AsyncDb.getAllSubjects(new ObjectId(userId)), subjects -> chooseSubject(subjects),
+                error -> toaster.error("Could not load your subjects.")));
         return addFlashcardBtn;
     }
 
+    private void chooseSubject(Set<String> subjects) {
+        if (subjects.isEmpty()) {
+            toaster.error("No subjects available. Create a subject first!");
+            return;
+        }
+        String[] subjectArray = subjects.toArray(new String[0]);
+        String selectedSubject = (String) JOptionPane.showInputDialog(
+                this, "Select subject for the new flashcard:", "Select Subject",
+                JOptionPane.QUESTION_MESSAGE, null, subjectArray, subjectArray[0]);
+        if (selectedSubject != null) {
+            new create_flashcard.FlashcardPage(selectedSubject, userId);
+            dispose();
+        }
+    }
+
     private JButton createSettingsButton() {
         JButton settingsBtn = new JButton("Settings");
         UIUtils.styleButton(settingsBtn, new Color(100, 100, 100), Color.BLACK);
@@ -1,10 +1,10 @@
 package dashboard;
 
+import Utils.ScrollPaging;
+import Utils.SwingAsync;
 import Utils.UIUtils;
+import db.AsyncDb;
 import db.Message;
-import db.MessageManager;
-import db.UserManager;
-import org.bson.Document;
 import org.bson.types.ObjectId;
 
 import javax.swing.*;
@@ -16,23 +16,25 @@ import java.text.SimpleDateFormat;
 import java.util.List;
 
 public class MessagingUI extends JFrame {
+    private static final int PAGE_SIZE = 30;
+
     private final ObjectId senderId;
     private final ObjectId receiverId;
-    private final String receiverName;
+    private String receiverName = "...";
 
+    private JLabel titleLabel;
     private JTextPane conversationPane;
     private JTextField messageField;
     private JButton sendButton;
     private JButton refreshButton;
+    private JScrollPane scrollPane;
+    private ScrollPaging<Message> paging;
 
     public MessagingUI(String senderIdStr, String receiverIdStr) {
         this.senderId = new ObjectId(senderIdStr);
         this.receiverId = new ObjectId(receiverIdStr);
 
-        Document receiverDoc = UserManager.getUserById(this.receiverId);
-        this.receiverName = receiverDoc != null ? receiverDoc.getString("username") : "Unknown User";
-
-        setTitle("Chat with " + receiverName);
+        setTitle("Chat");
         setSize(500, 700);
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
@@ -40,12 +42,26 @@ public class MessagingUI extends JFrame {
         getContentPane().setBackground(UIUtils.COLOR_BACKGROUND);
 
         initComponents();
+        // Name first so the conversation is rendered with it
+        SwingAsync.onEdt(this, AsyncDb.getUserById(receiverId),
+                receiver -> showConversation(receiver != null ? receiver.getUsername() : "Unknown User"),
+                error -> {
+                    // Still show the messages, just without the name
+                    error.printStackTrace();
+                    showConversation("Unknown User");
+                });
+    }
+
+    private void showConversation(String name) {
+        receiverName = name;
+        setTitle("Chat with " + receiverName);
+        titleLabel.setText("Chat with " + receiverName);
         loadConversation();
     }
 
     private void initComponents() {
         // Header
-        JLabel titleLabel = new JLabel("Chat with " + receiverName, SwingConstants.CENTER);
+        titleLabel = new JLabel("Chat with " + receiverName, SwingConstants.CENTER);
         titleLabel.setFont(UIUtils.FONT_GENERAL_UI.deriveFont(Font.BOLD, 18f));
         titleLabel.setForeground(Color.WHITE);
         titleLabel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
@@ -57,10 +73,23 @@ public class MessagingUI extends JFrame {
         conversationPane.setBackground(UIUtils.COLOR_BACKGROUND.darker());
         conversationPane.setForeground(Color.WHITE);
         conversationPane.setFont(new Font("Segoe UI", Font.PLAIN, 14));
-        JScrollPane scrollPane = new JScrollPane(conversationPane);
+        scrollPane = new JScrollPane(conversationPane);
         scrollPane.setBorder(BorderFactory.createLineBorder(UIUtils.COLOR_OUTLINE));
         add(scrollPane, BorderLayout.CENTER);
 
+        // Opens on the latest messages; older ones are fetched when scrolling up
+        paging = new ScrollPaging<>(this,
+                token -> AsyncDb.getConversationPage(senderId, receiverId, token, PAGE_SIZE),
+                (messages, first) -> {
+                    if (first) {
+                        showConversation(messages);
+                    } else {
+                        prependMessages(messages);
+                    }
+                },
+                Throwable::printStackTrace);
+        paging.attachToStart(scrollPane.getVerticalScrollBar());
+
         // Input Area
         JPanel inputPanel = new JPanel(new BorderLayout(10, 0));
         inputPanel.setBackground(UIUtils.COLOR_BACKGROUND);
@@ -85,8 +114,25 @@ public class MessagingUI extends JFrame {
     }
 
     private void loadConversation() {
+        paging.reset();
+    }
+
+    private void showConversation(List<Message> messages) {
         conversationPane.setText("");
-        List<Message> messages = MessageManager.getConversation(senderId, receiverId);
+        insertMessages(0, messages);
+        conversationPane.setCaretPosition(conversationPane.getDocument().getLength());
+    }
+
+    // Older messages go above the current ones; the view is shifted so what the user was reading stays put
+    private void prependMessages(List<Message> messages) {
+        JScrollBar bar = scrollPane.getVerticalScrollBar();
+        int oldMax = bar.getMaximum();
+        int oldValue = bar.getValue();
+        insertMessages(0, messages);
+        SwingUtilities.invokeLater(() -> bar.setValue(oldValue + bar.getMaximum() - oldMax));
+    }
+
+    private void insertMessages(int offset, List<Message> messages) {
         StyledDocument doc = conversationPane.getStyledDocument();
         SimpleAttributeSet left = new SimpleAttributeSet();
         StyleConstants.setAlignment(left, StyleConstants.ALIGN_LEFT);
@@ -106,9 +152,9 @@ public class MessagingUI extends JFrame {
                 String formattedMsg = senderName + " (" + sdf.format(msg.getTimestamp()) + "):\n" + msg.getContent()
                         + "\n\n";
 
-                doc.insertString(doc.getLength(), formattedMsg, alignment);
-                doc.setParagraphAttributes(doc.getLength() - formattedMsg.length(), formattedMsg.length(), alignment,
-                        false);
+                doc.insertString(offset, formattedMsg, alignment);
+                doc.setParagraphAttributes(offset, formattedMsg.length(), alignment, false);
+                offset += formattedMsg.length();
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -118,9 +164,14 @@ public class MessagingUI extends JFrame {
     private void sendMessage() {
         String content = messageField.getText().trim();
         if (!content.isEmpty()) {
-            MessageManager.sendMessage(senderId, receiverId, content);
             messageField.setText("");
-            loadConversation(); // Refresh conversation
+            SwingAsync.onEdt(this, AsyncDb.sendMessage(senderId, receiverId, content),
+                    done -> loadConversation(), // Refresh conversation
+                    error -> {
+                        messageField.setText(content);
+                        JOptionPane.showMessageDialog(this, "Message could not be sent.", "Error",
+                                JOptionPane.ERROR_MESSAGE);
+                    });
         }
     }
 }
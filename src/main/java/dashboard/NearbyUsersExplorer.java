@@ -1,12 +1,14 @@
 package dashboard;
 
-import db.UserManager;
-import org.bson.Document;
+import Utils.SwingAsync;
+import db.AsyncDb;
+import db.User;
 import org.apache.commons.lang3.tuple.Pair;
 
 import javax.swing.*;
 import java.awt.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Advanced nearby user search with adjustable radius slider, live updates,
@@ -14,7 +16,7 @@ import java.util.List;
  */
 public class NearbyUsersExplorer extends JDialog {
     private final String currentUserId;
-    private final Document currentUser;
+    private final User currentUser;
     private final DefaultListModel<String> listModel = new DefaultListModel<>();
     private final JSlider radiusSlider;
     private final JCheckBox autoRefresh;
@@ -22,8 +24,9 @@ public class NearbyUsersExplorer extends JDialog {
     private final JTextField minDistanceField;
     private final JTextField maxDistanceField;
     private final Timer refreshTimer;
+    private CompletableFuture<List<Pair<User, Double>>> pendingSearch;
 
-    public NearbyUsersExplorer(JFrame owner, String currentUserId, Document currentUser) {
+    public NearbyUsersExplorer(JFrame owner, String currentUserId, User currentUser) {
         super(owner, "Nearby Users", false);
         this.currentUserId = currentUserId;
         this.currentUser = currentUser;
@@ -71,20 +74,31 @@ public class NearbyUsersExplorer extends JDialog {
 
         refreshTimer = new Timer(3000, e -> { if (autoRefresh.isSelected()) performSearch(status); });
         refreshTimer.start();
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent e) {
+                refreshTimer.stop();
+            }
+        });
 
         performSearch(status);
     }
 
     private void performSearch(JLabel status) {
-        listModel.clear();
         if (currentUser == null) { status.setText("No current user"); return; }
-        Object locObj = currentUser.get("location");
-        if (!(locObj instanceof Document)) { status.setText("Set your location first"); return; }
-        @SuppressWarnings("unchecked") List<Double> coords = (List<Double>) ((Document)locObj).get("coordinates");
-        if (coords == null || coords.size() != 2) { status.setText("Invalid location data"); return; }
-        double lon = coords.get(0); double lat = coords.get(1);
+        if (!currentUser.hasLocation()) { status.setText("Set your location first"); return; }
+        double lon = currentUser.getLongitude(); double lat = currentUser.getLatitude();
         double radius = radiusSlider.getValue();
-        List<Pair<Document, Double>> users = UserManager.findUsersWithinRadius(lat, lon, radius);
+        // Only the latest search matters; an older one still in flight is dropped
+        if (pendingSearch != null) pendingSearch.cancel(true);
+        status.setText("Searching...");
+        pendingSearch = SwingAsync.onEdt(this, AsyncDb.findUsersWithinRadius(lat, lon, radius),
+                users -> showResults(users, status),
+                error -> status.setText("Search failed"));
+    }
+
+    private void showResults(List<Pair<User, Double>> users, JLabel status) {
+        listModel.clear();
         // Filter by min/max if provided
         Double min = parseNullableDouble(minDistanceField.getText());
         Double max = parseNullableDouble(maxDistanceField.getText());
@@ -93,15 +107,15 @@ public class NearbyUsersExplorer extends JDialog {
         users.sort((a,b) -> {
             switch (String.valueOf(sortMode.getSelectedItem())) {
                 case "Distance Desc": return Double.compare(b.getRight(), a.getRight());
-                case "Name A-Z": return a.getLeft().getString("username").compareToIgnoreCase(b.getLeft().getString("username"));
-                case "Name Z-A": return b.getLeft().getString("username").compareToIgnoreCase(a.getLeft().getString("username"));
+                case "Name A-Z": return a.getLeft().getUsername().compareToIgnoreCase(b.getLeft().getUsername());
+                case "Name Z-A": return b.getLeft().getUsername().compareToIgnoreCase(a.getLeft().getUsername());
                 default: return Double.compare(a.getRight(), b.getRight());
             }
         });
-        for (Pair<Document, Double> p : users) {
-            Document u = p.getLeft();
-            if (u.getObjectId("_id").toHexString().equals(currentUserId)) continue;
-            listModel.addElement(String.format("%s  |  %.2f km", u.getString("username"), p.getRight()));
+        for (Pair<User, Double> p : users) {
+            User u = p.getLeft();
+            if (u.getId().toHexString().equals(currentUserId)) continue;
+            listModel.addElement(String.format("%s  |  %.2f km", u.getUsername(), p.getRight()));
         }
         status.setText("Results: " + listModel.size());
     }
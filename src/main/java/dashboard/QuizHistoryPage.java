@@ -1,8 +1,9 @@
 package dashboard;
 
+import Utils.ScrollPaging;
 import Utils.UIUtils;
-import db.QuizManager;
-import org.bson.Document;
+import db.AsyncDb;
+import db.QuizResult;
 import org.bson.types.ObjectId;
 
 import javax.swing.*;
@@ -12,6 +13,8 @@ import java.text.SimpleDateFormat;
 import java.util.List;
 
 public class QuizHistoryPage extends JFrame {
+    private static final int PAGE_SIZE = 50;
+
     private final String userId;
 
     public QuizHistoryPage(String userId) {
@@ -43,10 +46,10 @@ public class QuizHistoryPage extends JFrame {
         scrollPane.getViewport().setBackground(UIUtils.COLOR_BACKGROUND.brighter());
         add(scrollPane, BorderLayout.CENTER);
 
-        loadQuizHistory(historyTable);
+        loadQuizHistory(historyTable, scrollPane);
     }
 
-    private void loadQuizHistory(JTable table) {
+    private void loadQuizHistory(JTable table, JScrollPane scrollPane) {
         String[] columnNames = { "Date", "Subject", "Score", "Quiz Type" };
         DefaultTableModel model = new DefaultTableModel(columnNames, 0) {
             @Override
@@ -55,17 +58,27 @@ public class QuizHistoryPage extends JFrame {
             }
         };
 
-        List<Document> history = QuizManager.getQuizHistory(new ObjectId(userId));
+        table.setModel(model);
+
+        // Newest results first, older pages are fetched as the table is scrolled down
+        ObjectId id = new ObjectId(userId);
+        ScrollPaging<QuizResult> paging = new ScrollPaging<>(this,
+                token -> AsyncDb.getQuizHistoryPage(id, token, PAGE_SIZE),
+                (history, first) -> addRows(model, history),
+                Throwable::printStackTrace);
+        paging.attachToEnd(scrollPane.getVerticalScrollBar());
+        paging.reset();
+    }
+
+    private void addRows(DefaultTableModel model, List<QuizResult> history) {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm");
 
-        for (Document doc : history) {
-            String date = sdf.format(doc.getDate("date"));
-            String subject = doc.getString("subject");
-            String score = doc.getInteger("score") + " / " + doc.getInteger("totalQuestions");
-            String quizType = doc.getString("quizType");
+        for (QuizResult result : history) {
+            String date = sdf.format(result.getDate());
+            String subject = result.getSubject();
+            String score = result.getScore() + " / " + result.getTotalQuestions();
+            String quizType = result.getQuizType();
             model.addRow(new Object[] { date, subject, score, quizType });
         }
-
-        table.setModel(model);
     }
 }
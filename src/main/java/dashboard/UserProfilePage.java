@@ -1,9 +1,8 @@
 package dashboard;
 
+import Utils.SwingAsync;
 import Utils.UIUtils;
-import db.FlashcardManager;
-import db.UserManager;
-import org.bson.Document;
+import db.AsyncDb;
 import org.bson.types.ObjectId;
 
 import javax.swing.*;
@@ -116,16 +115,16 @@ public class UserProfilePage extends JFrame {
 
     private void loadUserData() {
         ObjectId userObjectId = new ObjectId(userId);
-        Document userDoc = UserManager.getUserById(userObjectId);
-
-        if (userDoc != null) {
-            usernameField.setText(userDoc.getString("username"));
-            emailField.setText(userDoc.getString("email"));
-            locationField.setText(userDoc.getString("location"));
-        }
-
-        int count = FlashcardManager.getFlashcards(userObjectId).size();
-        flashcardCountLabel.setText(String.valueOf(count));
+        SwingAsync.onEdt(this, AsyncDb.getUserById(userObjectId), user -> {
+            if (user != null) {
+                usernameField.setText(user.getUsername());
+                emailField.setText(user.getEmail());
+                locationField.setText(user.getLocationText());
+            }
+        });
+
+        SwingAsync.onEdt(this, AsyncDb.countFlashcards(userObjectId),
+                count -> flashcardCountLabel.setText(String.valueOf(count)));
     }
 
     private void saveUserData() {
@@ -140,12 +139,13 @@ public class UserProfilePage extends JFrame {
         }
 
         ObjectId userObjectId = new ObjectId(userId);
-        UserManager.updateUser(userObjectId, newUsername, newEmail, newLocation);
-
-        JOptionPane.showMessageDialog(this, "Profile updated successfully!", "Success",
-                JOptionPane.INFORMATION_MESSAGE);
-        parentDashboard.dispose(); // Close old dashboard
-        new Dashboard(userId).setVisible(true); // Open new one with updated name
-        this.dispose();
+        SwingAsync.onEdt(this, AsyncDb.updateUser(userObjectId, newUsername, newEmail, newLocation), done -> {
+            JOptionPane.showMessageDialog(this, "Profile updated successfully!", "Success",
+                    JOptionPane.INFORMATION_MESSAGE);
+            parentDashboard.dispose(); // Close old dashboard
+            new Dashboard(userId).setVisible(true); // Open new one with updated name
+            this.dispose();
+        }, error -> JOptionPane.showMessageDialog(this, "Profile could not be saved.", "Error",
+                JOptionPane.ERROR_MESSAGE));
     }
 }
@@ -0,0 +1,157 @@
+package db;
+
+import create_flashcard.Flashcard;
+import org.apache.commons.lang3.tuple.Pair;
+import org.bson.types.ObjectId;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking wrappers around the static managers.
+ *
+ * Every call runs on a shared pool of daemon threads and completes a
+ * CompletableFuture, so Swing code can start a query without blocking the
+ * EDT (see Utils.SwingAsync for delivering the result back to it).
+ * Cancelling a returned future drops its result; a query that already
+ * reached the server still finishes there.
+ */
+public class AsyncDb {
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "db-async-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    public static <T> CompletableFuture<T> supply(Supplier<T> query) {
+        return CompletableFuture.supplyAsync(query, EXECUTOR);
+    }
+
+    public static CompletableFuture<Void> run(Runnable write) {
+        return CompletableFuture.runAsync(write, EXECUTOR);
+    }
+
+    // --- Users ---
+
+    public static CompletableFuture<User> getUserById(ObjectId userId) {
+        return supply(() -> UserManager.getUserById(userId));
+    }
+
+    public static CompletableFuture<List<User>> getVisibleUsers() {
+        return supply(UserManager::getVisibleUsers);
+    }
+
+    public static CompletableFuture<List<Pair<User, Double>>> findUsersWithinRadius(double latitude, double longitude,
+                                                                                    double radiusInKm) {
+        return supply(() -> UserManager.findUsersWithinRadius(latitude, longitude, radiusInKm));
+    }
+
+    public static CompletableFuture<Void> setUserHiddenStatus(ObjectId userId, boolean isHidden) {
+        return run(() -> UserManager.setUserHiddenStatus(userId, isHidden));
+    }
+
+    public static CompletableFuture<Void> setUserMessagePreference(ObjectId userId, boolean canReceive) {
+        return run(() -> UserManager.setUserMessagePreference(userId, canReceive));
+    }
+
+    public static CompletableFuture<Void> updateUser(ObjectId userId, String username, String email, String location) {
+        return run(() -> UserManager.updateUser(userId, username, email, location));
+    }
+
+    // --- Flashcards ---
+
+    public static CompletableFuture<List<Flashcard>> getFlashcards(ObjectId userId) {
+        return supply(() -> FlashcardManager.getFlashcards(userId));
+    }
+
+    public static CompletableFuture<List<Flashcard>> getFlashcards(ObjectId userId, String subject) {
+        return supply(() -> FlashcardManager.getFlashcards(userId, subject));
+    }
+
+    public static CompletableFuture<Set<String>> getAllSubjects(ObjectId userId) {
+        return supply(() -> FlashcardManager.getAllSubjects(userId));
+    }
+
+    public static CompletableFuture<Long> countFlashcards(ObjectId userId) {
+        return supply(() -> FlashcardManager.countFlashcards(userId));
+    }
+
+    public static CompletableFuture<List<Flashcard>> getQuestions(ObjectId userId, String subject) {
+        return supply(() -> FlashcardManager.getQuestions(userId, subject));
+    }
+
+    public static CompletableFuture<Page<Flashcard>> getQuestionsPage(ObjectId userId, String subject, String pageToken,
+                                                                     int pageSize) {
+        return supply(() -> FlashcardManager.getQuestionsPage(userId, subject, pageToken, pageSize));
+    }
+
+    public static CompletableFuture<DistractorIndex> getDistractorIndex(ObjectId userId, String subject) {
+        return supply(() -> FlashcardManager.getDistractorIndex(userId, subject));
+    }
+
+    public static CompletableFuture<String> getAnswer(ObjectId cardId) {
+        return supply(() -> FlashcardManager.getAnswer(cardId));
+    }
+
+    public static CompletableFuture<Boolean> hasEnough(ObjectId userId, String subject, int minCount) {
+        return supply(() -> FlashcardManager.hasEnough(userId, subject, minCount));
+    }
+
+    public static CompletableFuture<Void> addFlashcard(ObjectId userId, String subject, String question, String answer) {
+        return run(() -> FlashcardManager.addFlashcard(userId, subject, question, answer));
+    }
+
+    public static CompletableFuture<List<Flashcard>> getDueCards(ObjectId userId, String subject, int limit) {
+        return supply(() -> FlashcardManager.getDueCards(userId, subject, limit));
+    }
+
+    public static CompletableFuture<Long> getNextDue(ObjectId userId, String subject) {
+        return supply(() -> FlashcardManager.getNextDue(userId, subject));
+    }
+
+    public static CompletableFuture<Flashcard> recordReview(Flashcard card, int grade) {
+        return supply(() -> FlashcardManager.recordReview(card, grade));
+    }
+
+    // --- Messages ---
+
+    public static CompletableFuture<List<Message>> getConversation(ObjectId user1Id, ObjectId user2Id) {
+        return supply(() -> MessageManager.getConversation(user1Id, user2Id));
+    }
+
+    public static CompletableFuture<Page<Message>> getConversationPage(ObjectId user1Id, ObjectId user2Id,
+                                                                       String pageToken, int pageSize) {
+        return supply(() -> MessageManager.getConversationPage(user1Id, user2Id, pageToken, pageSize));
+    }
+
+    public static CompletableFuture<Void> sendMessage(ObjectId senderId, ObjectId receiverId, String content) {
+        return run(() -> MessageManager.sendMessage(senderId, receiverId, content));
+    }
+
+    // --- Quiz results ---
+
+    public static CompletableFuture<List<QuizResult>> getQuizHistory(ObjectId userId) {
+        return supply(() -> QuizManager.getQuizHistory(userId));
+    }
+
+    public static CompletableFuture<Page<QuizResult>> getQuizHistoryPage(ObjectId userId, String pageToken, int pageSize) {
+        return supply(() -> QuizManager.getQuizHistoryPage(userId, pageToken, pageSize));
+    }
+
+    public static CompletableFuture<Void> saveQuizResult(ObjectId userId, String subject, int score, int totalQuestions,
+                                                         String quizType) {
+        return run(() -> QuizManager.saveQuizResult(userId, subject, score, totalQuestions, quizType));
+    }
+}
@@ -0,0 +1,66 @@
+package db;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk insert: how many rows made it, how many were left out
+ * as near-duplicates of rows already stored, and which inputs failed.
+ */
+public class BulkInsertResult {
+    private final int requested;
+    private final int inserted;
+    private final int duplicates;
+    private final List<Failure> failures;
+
+    public BulkInsertResult(int requested, int inserted, List<Failure> failures) {
+        this(requested, inserted, 0, failures);
+    }
+
+    public BulkInsertResult(int requested, int inserted, int duplicates, List<Failure> failures) {
+        this.requested = requested;
+        this.inserted = inserted;
+        this.duplicates = duplicates;
+        this.failures = Collections.unmodifiableList(failures);
+    }
+
+    public int getRequested() {
+        return requested;
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    // Rejected on purpose, so not counted as failures
+    public int getDuplicates() {
+        return duplicates;
+    }
+
+    public List<Failure> getFailures() {
+        return failures;
+    }
+
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    public static class Failure {
+        // Position in the list passed to the bulk call
+        private final int index;
+        private final String reason;
+
+        public Failure(int index, String reason) {
+            this.index = index;
+            this.reason = reason;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+}
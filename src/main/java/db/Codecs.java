@@ -0,0 +1,21 @@
+package db;
+
+import com.mongodb.MongoClientSettings;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+
+/**
+ * Codec registry used by the shared client, so collections can be read
+ * straight into Flashcard, Message, QuizResult and User objects.
+ */
+public class Codecs {
+
+    public static final FlashcardCodec FLASHCARD = new FlashcardCodec();
+    public static final MessageCodec MESSAGE = new MessageCodec();
+    public static final QuizResultCodec QUIZ_RESULT = new QuizResultCodec();
+    public static final UserCodec USER = new UserCodec();
+
+    public static final CodecRegistry REGISTRY = CodecRegistries.fromRegistries(
+            CodecRegistries.fromCodecs(FLASHCARD, MESSAGE, QUIZ_RESULT, USER),
+            MongoClientSettings.getDefaultCodecRegistry());
+}
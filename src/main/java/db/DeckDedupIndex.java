@@ -0,0 +1,68 @@
+package db;
+
+import Utils.MinHash;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Locality-sensitive hash index over the MinHash signatures of one deck.
+ *
+ * Each signature is cut into BANDS bands of ROWS hashes and filed under
+ * every band. Only signatures sharing at least one whole band with a new
+ * card are compared with it, so a check costs a few map lookups however
+ * big the deck is. With 8 bands of 4 rows, pairs at 0.7 similarity share
+ * a band about 89% of the time and pairs at 0.8 about 98% of the time.
+ * Thread-safe.
+ */
+public class DeckDedupIndex {
+
+    private static final int BANDS = 8;
+    private static final int ROWS = MinHash.HASHES / BANDS;
+
+    private final double threshold;
+    private final Map<Long, List<int[]>> buckets = new HashMap<>();
+    private int size;
+
+    public DeckDedupIndex(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /** Adds the signature and returns true, unless it nearly duplicates one already in the index. */
+    public synchronized boolean offer(int[] signature) {
+        if (findSimilar(signature) != null) return false;
+        add(signature);
+        return true;
+    }
+
+    public synchronized void add(int[] signature) {
+        for (int band = 0; band < BANDS; band++) {
+            buckets.computeIfAbsent(bandKey(signature, band), k -> new ArrayList<>(1)).add(signature);
+        }
+        size++;
+    }
+
+    /** A signature in the index at least threshold-similar to this one, or null. */
+    public synchronized int[] findSimilar(int[] signature) {
+        for (int band = 0; band < BANDS; band++) {
+            List<int[]> bucket = buckets.get(bandKey(signature, band));
+            if (bucket == null) continue;
+            for (int[] candidate : bucket) {
+                if (MinHash.similarity(signature, candidate) >= threshold) return candidate;
+            }
+        }
+        return null;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private static long bandKey(int[] signature, int band) {
+        int hash = 1;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i++) hash = 31 * hash + signature[i];
+        return ((long) band << 32) | (hash & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,135 @@
+package db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Wrong-answer candidates for the quiz questions of one deck.
+ *
+ * Answers are filed by length; their character trigram counts are worked
+ * out the first time they land in a pool. For a question the index walks
+ * outward from the length of the right answer to gather a pool of at most
+ * POOL neighbours (a TreeMap lookup plus the pool, however big the deck
+ * is), ranks the pool by trigram cosine similarity to the right answer and
+ * draws the distractors at random from the best of it, so options look
+ * alike without repeating every time.
+ * Thread-safe.
+ */
+public class DistractorIndex {
+
+    private static final int NGRAM = 3;
+    private static final int POOL = 24;
+    // Distractors are drawn from the count * SHORTLIST most similar answers in the pool
+    private static final int SHORTLIST = 2;
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private final NavigableMap<Integer, List<Entry>> byLength = new TreeMap<>();
+    private final Set<String> seen = new HashSet<>();
+
+    public DistractorIndex(List<String> answers) {
+        for (String answer : answers) add(answer);
+    }
+
+    /** Adds an answer; blanks and answers already in the index are ignored. */
+    public synchronized void add(String answer) {
+        if (answer == null || answer.trim().isEmpty()) return;
+        String key = normalize(answer);
+        if (!seen.add(key)) return;
+        byLength.computeIfAbsent(key.length(), length -> new ArrayList<>()).add(new Entry(answer, key));
+    }
+
+    /** Up to count answers other than correct, alike in length and spelling; fewer if the deck is small. */
+    public synchronized List<String> pick(String correct, int count, Random random) {
+        String key = normalize(correct);
+        int length = key.length();
+        List<Entry> pool = new ArrayList<>(POOL);
+        Integer lower = byLength.floorKey(length);
+        Integer upper = byLength.higherKey(length);
+        while (pool.size() < POOL && (lower != null || upper != null)) {
+            boolean takeLower = upper == null || (lower != null && length - lower <= upper - length);
+            Integer bucketLength = takeLower ? lower : upper;
+            List<Entry> bucket = byLength.get(bucketLength);
+            // Start a full bucket at a random card so long decks don't always offer the same neighbours
+            int start = random.nextInt(bucket.size());
+            for (int i = 0; i < bucket.size() && pool.size() < POOL; i++) {
+                Entry entry = bucket.get((start + i) % bucket.size());
+                if (!entry.key.equals(key)) pool.add(entry);
+            }
+            if (takeLower) {
+                lower = byLength.lowerKey(lower);
+            } else {
+                upper = byLength.higherKey(upper);
+            }
+        }
+
+        Entry target = new Entry(correct, key);
+        Map<Entry, Double> similarity = new HashMap<>();
+        for (Entry entry : pool) similarity.put(entry, target.cosine(entry));
+        pool.sort(Comparator.comparingDouble(similarity::get).reversed());
+        List<Entry> shortlist = new ArrayList<>(pool.subList(0, Math.min(pool.size(), count * SHORTLIST)));
+        Collections.shuffle(shortlist, random);
+
+        List<String> picked = new ArrayList<>(count);
+        for (Entry entry : shortlist.subList(0, Math.min(count, shortlist.size()))) picked.add(entry.answer);
+        return picked;
+    }
+
+    public synchronized int size() {
+        return seen.size();
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : SPACES.matcher(text.trim().toLowerCase(Locale.ROOT)).replaceAll(" ");
+    }
+
+    // Guarded by the index's lock
+    private static final class Entry {
+        final String answer;
+        final String key;
+        Map<String, Integer> grams;
+        double norm;
+
+        Entry(String answer, String key) {
+            this.answer = answer;
+            this.key = key;
+        }
+
+        private void vectorize() {
+            if (grams != null) return;
+            grams = new HashMap<>();
+            // Padded so that short answers still have a few grams and word edges count
+            String padded = " " + key + " ";
+            for (int i = 0; i + NGRAM <= padded.length(); i++) {
+                grams.merge(padded.substring(i, i + NGRAM), 1, Integer::sum);
+            }
+            long sumSquares = 0;
+            for (int n : grams.values()) sumSquares += (long) n * n;
+            norm = Math.sqrt(sumSquares);
+        }
+
+        double cosine(Entry other) {
+            vectorize();
+            other.vectorize();
+            if (norm == 0 || other.norm == 0) return 0;
+            Map<String, Integer> smaller = grams.size() <= other.grams.size() ? grams : other.grams;
+            Map<String, Integer> larger = smaller == grams ? other.grams : grams;
+            long dot = 0;
+            for (Map.Entry<String, Integer> gram : smaller.entrySet()) {
+                Integer n = larger.get(gram.getKey());
+                if (n != null) dot += (long) gram.getValue() * n;
+            }
+            return dot / (norm * other.norm);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package db;
+
+import create_flashcard.Flashcard;
+import org.bson.types.ObjectId;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of whole decks keyed by (userId, subject).
+ *
+ * Entries expire after a fixed time and the least recently used deck is
+ * evicted once the cache is full. FlashcardManager invalidates a deck on
+ * every write to it; a load that overlaps with an invalidation is returned
+ * to its caller but not stored, so stale decks never get cached.
+ */
+public class FlashcardCache {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> entries;
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public FlashcardCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FlashcardCache.Entry> eldest) {
+                if (size() > FlashcardCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public List<Flashcard> get(ObjectId userId, String subject, Supplier<List<Flashcard>> loader) {
+        String key = key(userId, subject);
+        long loadGeneration;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return entry.cards;
+            }
+            if (entry != null) {
+                entries.remove(key);
+                evictions.incrementAndGet();
+            }
+            loadGeneration = generation;
+        }
+        misses.incrementAndGet();
+
+        // Loaded outside the lock so one slow deck does not block reads of the others
+        List<Flashcard> cards = Collections.unmodifiableList(loader.get());
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                entries.put(key, new Entry(cards, System.currentTimeMillis() + ttlMillis));
+            }
+        }
+        return cards;
+    }
+
+    /** Cached deck if present and fresh, without loading or touching the counters. */
+    public synchronized List<Flashcard> peek(ObjectId userId, String subject) {
+        Entry entry = entries.get(key(userId, subject));
+        return entry != null && entry.expiresAt > System.currentTimeMillis() ? entry.cards : null;
+    }
+
+    public synchronized void invalidate(ObjectId userId, String subject) {
+        generation++;
+        if (entries.remove(key(userId, subject)) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    public synchronized void invalidateUser(ObjectId userId) {
+        generation++;
+        String prefix = userId.toHexString() + '\u0000';
+        Iterator<String> it = entries.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    public Stats getStats() {
+        int size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        return new Stats(size, hits.get(), misses.get(), evictions.get(), invalidations.get());
+    }
+
+    private static String key(ObjectId userId, String subject) {
+        return userId.toHexString() + '\u0000' + subject;
+    }
+
+    private static class Entry {
+        final List<Flashcard> cards;
+        final long expiresAt;
+
+        Entry(List<Flashcard> cards, long expiresAt) {
+            this.cards = cards;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public static class Stats {
+        private final int size;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+
+        Stats(int size, long hits, long misses, long evictions, long invalidations) {
+            this.size = size;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        public double getHitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return "size=" + size + " hits=" + hits + " misses=" + misses + " evictions=" + evictions
+                    + " invalidations=" + invalidations;
+        }
+    }
+}
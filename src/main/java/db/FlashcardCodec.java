@@ -0,0 +1,78 @@
+package db;
+
+import Utils.MinHash;
+import create_flashcard.Flashcard;
+import create_flashcard.ReviewState;
+import org.bson.BsonBinary;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+
+public class FlashcardCodec implements Codec<Flashcard> {
+
+    @Override
+    public void encode(BsonWriter writer, Flashcard card, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        writer.writeObjectId("_id", card.getId() != null ? card.getId() : new ObjectId());
+        if (card.getUserId() != null) writer.writeObjectId("userId", card.getUserId());
+        if (card.getSubject() != null) writer.writeString("subject", card.getSubject());
+        if (card.getQuestion() != null) writer.writeString("question", card.getQuestion());
+        if (card.getAnswer() != null) writer.writeString("answer", card.getAnswer());
+        if (card.getMinHash() != null) writer.writeBinaryData("cardHash", new BsonBinary(MinHash.toBytes(card.getMinHash())));
+        if (card.getReview() != null) {
+            ReviewState review = card.getReview();
+            writer.writeDateTime("due", review.getDue());
+            writer.writeInt32("intervalDays", review.getIntervalDays());
+            writer.writeDouble("ease", review.getEase());
+            writer.writeInt32("reps", review.getReps());
+            writer.writeInt32("lapses", review.getLapses());
+        }
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Flashcard decode(BsonReader reader, DecoderContext decoderContext) {
+        ObjectId id = null, userId = null;
+        String subject = null, question = null, answer = null;
+        int[] minHash = null;
+        Long due = null;
+        int intervalDays = 0, reps = 0, lapses = 0;
+        double ease = ReviewState.DEFAULT_EASE;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String name = reader.readName();
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                continue;
+            }
+            switch (name) {
+                case "_id": id = reader.readObjectId(); break;
+                case "userId": userId = reader.readObjectId(); break;
+                case "subject": subject = reader.readString(); break;
+                case "question": question = reader.readString(); break;
+                case "answer": answer = reader.readString(); break;
+                // "minHash" held question-only signatures; those cards are re-signed when their deck is indexed
+                case "cardHash": minHash = MinHash.fromBytes(reader.readBinaryData().getData()); break;
+                case "due": due = reader.readDateTime(); break;
+                case "intervalDays": intervalDays = reader.readInt32(); break;
+                case "ease": ease = reader.readDouble(); break;
+                case "reps": reps = reader.readInt32(); break;
+                case "lapses": lapses = reader.readInt32(); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        return new Flashcard(id, userId, subject, question, answer, minHash,
+                due != null ? new ReviewState(due, intervalDays, ease, reps, lapses) : null);
+    }
+
+    @Override
+    public Class<Flashcard> getEncoderClass() {
+        return Flashcard.class;
+    }
+}
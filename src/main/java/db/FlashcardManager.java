@@ -1,77 +1,266 @@
 package db;
 
-import com.mongodb.client.*;
-import com.mongodb.client.model.Filters;
-import org.bson.Document;
+import Utils.MinHash;
+import create_flashcard.Flashcard;
+import create_flashcard.ReviewState;
 import org.bson.types.ObjectId;
-import java.util.HashSet;
 import java.util.Set;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class FlashcardManager {
 
+    // Whole decks per (userId, subject); sized with -Dthinkdeck.cache.flashcards.maxEntries / ttlSeconds
+    private static final FlashcardCache CACHE = new FlashcardCache(
+            Integer.getInteger("thinkdeck.cache.flashcards.maxEntries", 64),
+            Long.getLong("thinkdeck.cache.flashcards.ttlSeconds", 300L) * 1000);
+
+    // Cards at least this similar (MinHash estimate of question+answer Jaccard) to one in the deck are not added;
+    // override with -Dthinkdeck.flashcards.duplicateThreshold, 1.1 turns the check off
+    private static final double DUPLICATE_THRESHOLD =
+            Double.parseDouble(System.getProperty("thinkdeck.flashcards.duplicateThreshold", "0.7"));
+
+    // LSH indexes of the decks bulk-inserted into lately, built from the deck on first use
+    private static final Map<String, DeckDedupIndex> DEDUP_INDEXES = new HashMap<>();
+    private static final int MAX_DEDUP_INDEXES = 16;
+
+    // Quiz distractor indexes of the decks quizzed lately, built from the deck's answers on first use
+    private static final Map<String, DistractorIndex> DISTRACTOR_INDEXES = new HashMap<>();
+    private static final int MAX_DISTRACTOR_INDEXES = 16;
+
     public static void addFlashcard(ObjectId userId, String subject, String question, String answer) {
-        MongoDatabase db = TestMongo.connect();
-        MongoCollection<Document> flashcards = db.getCollection("flashcards");
-
-        Document card = new Document("userId", userId)
-                .append("subject", subject)
-                .append("question", question)
-                .append("answer", answer);
-        flashcards.insertOne(card);
+        // A card typed in by hand is always kept, but still signed so later AI batches can skip it
+        int[] minHash = MinHash.signature(question, answer);
+        Storage.flashcards().insert(new Flashcard(new ObjectId(), userId, subject, question, answer, minHash,
+                ReviewState.initial(System.currentTimeMillis())));
+        CACHE.invalidate(userId, subject);
+        synchronized (DEDUP_INDEXES) {
+            DeckDedupIndex index = DEDUP_INDEXES.get(deckKey(userId, subject));
+            if (index != null) index.add(minHash);
+        }
+        synchronized (DISTRACTOR_INDEXES) {
+            DistractorIndex distractors = DISTRACTOR_INDEXES.get(deckKey(userId, subject));
+            if (distractors != null) distractors.add(answer);
+        }
         System.out.println("Flashcard added.");
     }
 
+    // Rows per insertMany call; override with -Dthinkdeck.flashcards.batchSize
+    private static final int DEFAULT_BATCH_SIZE = Integer.getInteger("thinkdeck.flashcards.batchSize", 500);
+
+    public static BulkInsertResult addFlashcards(ObjectId userId, String subject, List<Flashcard> cards) {
+        return addFlashcards(userId, subject, cards, DEFAULT_BATCH_SIZE, false);
+    }
+
+    /**
+     * Inserts the cards in batches. Unordered batches keep going past a bad row;
+     * ordered ones stop at the first error and the rest are reported as skipped.
+     * Cards whose question and answer together nearly repeat a card already in the
+     * deck, or earlier in the list, are left out and counted in
+     * {@link BulkInsertResult#getDuplicates()}; the same question template with a
+     * different answer is kept.
+     */
+    public static BulkInsertResult addFlashcards(ObjectId userId, String subject, List<Flashcard> cards,
+                                                 int batchSize, boolean ordered) {
+        DeckDedupIndex index = dedupIndex(userId, subject);
+        ReviewState initial = ReviewState.initial(System.currentTimeMillis());
+        List<Flashcard> toInsert = new ArrayList<>(cards.size());
+        int[] positions = new int[cards.size()];
+        for (int i = 0; i < cards.size(); i++) {
+            Flashcard card = cards.get(i);
+            int[] minHash = MinHash.signature(card.getQuestion(), card.getAnswer());
+            if (!index.offer(minHash)) continue;
+            positions[toInsert.size()] = i;
+            toInsert.add(new Flashcard(new ObjectId(), userId, subject, card.getQuestion(), card.getAnswer(), minHash,
+                    initial));
+        }
+        int duplicates = cards.size() - toInsert.size();
+
+        BulkInsertResult result = Storage.flashcards().insertMany(toInsert, batchSize, ordered);
+        CACHE.invalidate(userId, subject);
+        List<BulkInsertResult.Failure> failures = new ArrayList<>(result.getFailures().size());
+        for (BulkInsertResult.Failure failure : result.getFailures()) {
+            failures.add(new BulkInsertResult.Failure(positions[failure.getIndex()], failure.getReason()));
+        }
+        if (!failures.isEmpty()) {
+            // The indexes would hold cards that never made it in; rebuild them from the deck next time
+            synchronized (DEDUP_INDEXES) {
+                DEDUP_INDEXES.remove(deckKey(userId, subject));
+            }
+            synchronized (DISTRACTOR_INDEXES) {
+                DISTRACTOR_INDEXES.remove(deckKey(userId, subject));
+            }
+        } else {
+            synchronized (DISTRACTOR_INDEXES) {
+                DistractorIndex distractors = DISTRACTOR_INDEXES.get(deckKey(userId, subject));
+                if (distractors != null) {
+                    for (Flashcard card : toInsert) distractors.add(card.getAnswer());
+                }
+            }
+        }
+        System.out.println("Flashcards added: " + result.getInserted() + "/" + cards.size()
+                + (duplicates > 0 ? " (" + duplicates + " near-duplicates skipped)" : ""));
+        return new BulkInsertResult(cards.size(), result.getInserted(), duplicates, failures);
+    }
+
+    private static DeckDedupIndex dedupIndex(ObjectId userId, String subject) {
+        String key = deckKey(userId, subject);
+        synchronized (DEDUP_INDEXES) {
+            DeckDedupIndex index = DEDUP_INDEXES.get(key);
+            if (index != null) return index;
+        }
+        DeckDedupIndex index = new DeckDedupIndex(DUPLICATE_THRESHOLD);
+        for (Flashcard card : getFlashcards(userId, subject)) {
+            // Cards saved before signatures existed are signed here, not rewritten
+            index.add(MinHash.isValid(card.getMinHash()) ? card.getMinHash()
+                    : MinHash.signature(card.getQuestion(), card.getAnswer()));
+        }
+        synchronized (DEDUP_INDEXES) {
+            if (DEDUP_INDEXES.size() >= MAX_DEDUP_INDEXES) DEDUP_INDEXES.clear();
+            DeckDedupIndex raced = DEDUP_INDEXES.putIfAbsent(key, index);
+            return raced != null ? raced : index;
+        }
+    }
+
+    /** The deck's quiz distractor index, kept up to date as cards are added. */
+    public static DistractorIndex getDistractorIndex(ObjectId userId, String subject) {
+        String key = deckKey(userId, subject);
+        synchronized (DISTRACTOR_INDEXES) {
+            DistractorIndex index = DISTRACTOR_INDEXES.get(key);
+            if (index != null) return index;
+        }
+        DistractorIndex index = new DistractorIndex(getAnswers(userId, subject));
+        synchronized (DISTRACTOR_INDEXES) {
+            if (DISTRACTOR_INDEXES.size() >= MAX_DISTRACTOR_INDEXES) DISTRACTOR_INDEXES.clear();
+            DistractorIndex raced = DISTRACTOR_INDEXES.putIfAbsent(key, index);
+            return raced != null ? raced : index;
+        }
+    }
+
+    private static String deckKey(ObjectId userId, String subject) {
+        return userId.toHexString() + '\u0000' + subject;
+    }
+
     public static boolean hasEnough(ObjectId userId, String subject, int minCount) {
-        List<Document> flashcards = getFlashcards(userId, subject);
-        return flashcards != null && flashcards.size() >= minCount;
+        return countFlashcards(userId, subject, minCount) >= minCount;
     }
 
-    // Helper method to get flashcards by subject is no longer needed,
-    // as getFlashcards(userId, subject) is more specific.
+    /**
+     * Number of cards in a deck, counted on the server and capped at limit (0 = no cap),
+     * so existence checks stop scanning as soon as they have their answer.
+     */
+    public static long countFlashcards(ObjectId userId, String subject, int limit) {
+        List<Flashcard> cached = CACHE.peek(userId, subject);
+        if (cached != null) {
+            return limit > 0 ? Math.min(cached.size(), limit) : cached.size();
+        }
+        return Storage.flashcards().count(userId, subject, limit);
+    }
 
-    public static List<Document> getFlashcards(ObjectId userId) {
-        MongoDatabase db = TestMongo.connect();
-        MongoCollection<Document> flashcards = db.getCollection("flashcards");
+    public static long countFlashcards(ObjectId userId) {
+        return Storage.flashcards().count(userId);
+    }
 
-        FindIterable<Document> docs = flashcards.find(Filters.eq("userId", userId));
-        List<Document> result = new ArrayList<>();
-        for (Document d : docs)
-            result.add(d);
-        return result;
+    // Browse view: _id and question only, answers are fetched one at a time when a card is flipped
+    public static List<Flashcard> getQuestions(ObjectId userId, String subject) {
+        List<Flashcard> cached = CACHE.peek(userId, subject);
+        if (cached != null) return cached;
+        return Storage.flashcards().findQuestions(userId, subject);
     }
 
-    // ...
+    // Distractor pool: answers only
+    public static List<String> getAnswers(ObjectId userId, String subject) {
+        List<Flashcard> cached = CACHE.peek(userId, subject);
+        if (cached != null) {
+            List<String> answers = new ArrayList<>(cached.size());
+            for (Flashcard card : cached) answers.add(card.getAnswer());
+            return answers;
+        }
+        return Storage.flashcards().findAnswers(userId, subject);
+    }
+
+    /** A page of the deck in _id order; pass null for the first page, then the previous page's token. */
+    public static Page<Flashcard> getFlashcardsPage(ObjectId userId, String subject, String pageToken, int pageSize) {
+        return deckPage(userId, subject, pageToken, pageSize, false);
+    }
+
+    // Paged browse view, same shape as getQuestions
+    public static Page<Flashcard> getQuestionsPage(ObjectId userId, String subject, String pageToken, int pageSize) {
+        return deckPage(userId, subject, pageToken, pageSize, true);
+    }
+
+    private static Page<Flashcard> deckPage(ObjectId userId, String subject, String pageToken, int pageSize,
+                                            boolean questionsOnly) {
+        List<Flashcard> fetched = Storage.flashcards().findDeckAfter(userId, subject, Page.idOf(pageToken),
+                pageSize + 1, questionsOnly);
+        return Page.of(fetched, pageSize, card -> Page.token(card.getId()));
+    }
+
+    // --- Spaced repetition ---
+
+    /** Up to limit cards of the deck that are due now, most overdue first. */
+    public static List<Flashcard> getDueCards(ObjectId userId, String subject, int limit) {
+        return Storage.flashcards().findDue(userId, subject, System.currentTimeMillis(), limit);
+    }
+
+    /** When the deck's next card falls due (epoch millis), or null for an empty deck. */
+    public static Long getNextDue(ObjectId userId, String subject) {
+        return Storage.flashcards().findNextDue(userId, subject);
+    }
+
+    /** Schedules the card's next review from an SM-2 grade (0..5) and returns it with the new state. */
+    public static Flashcard recordReview(Flashcard card, int grade) {
+        ReviewState current = card.getReview() != null ? card.getReview() : ReviewState.initial(card.getDue());
+        ReviewState next = current.next(grade, System.currentTimeMillis());
+        Storage.flashcards().updateReview(card.getId(), next);
+        // Only the deck's cached copy is stale; its questions, and so the dedup index, are unchanged
+        CACHE.invalidate(card.getUserId(), card.getSubject());
+        return card.withReview(next);
+    }
+
+    public static String getAnswer(ObjectId cardId) {
+        return Storage.flashcards().findAnswer(cardId);
+    }
+
+    public static List<Flashcard> getFlashcards(ObjectId userId) {
+        return Storage.flashcards().findByUser(userId);
+    }
 
     public static Set<String> getAllSubjects(ObjectId userId) {
-        MongoDatabase db = TestMongo.connect();
-        MongoCollection<Document> flashcards = db.getCollection("flashcards");
-        DistinctIterable<String> subjects = flashcards.distinct("subject", Filters.eq("userId", userId), String.class);
-        Set<String> result = new HashSet<>();
-        for (String s : subjects) {
-            result.add(s);
-        }
-        return result;
+        return Storage.flashcards().findSubjects(userId);
     }
 
-    // New: Get flashcards for a user and subject
-    public static List<Document> getFlashcards(ObjectId userId, String subject) {
-        MongoDatabase db = TestMongo.connect();
-        MongoCollection<Document> flashcards = db.getCollection("flashcards");
-        FindIterable<Document> docs = flashcards.find(Filters.and(
-                Filters.eq("userId", userId),
-                Filters.eq("subject", subject)));
-        List<Document> result = new ArrayList<>();
-        for (Document d : docs)
-            result.add(d);
-        return result;
+    // Served from the deck cache; the returned list is read-only
+    public static List<Flashcard> getFlashcards(ObjectId userId, String subject) {
+        return CACHE.get(userId, subject, () -> Storage.flashcards().findDeck(userId, subject));
     }
 
     public static void deleteAllFlashcardsForUser(ObjectId userId) {
-        MongoDatabase db = TestMongo.connect();
-        MongoCollection<Document> flashcards = db.getCollection("flashcards");
-        flashcards.deleteMany(Filters.eq("userId", userId));
+        Storage.flashcards().deleteByUser(userId);
+        CACHE.invalidateUser(userId);
+        synchronized (DEDUP_INDEXES) {
+            DEDUP_INDEXES.keySet().removeIf(key -> key.startsWith(userId.toHexString()));
+        }
+        synchronized (DISTRACTOR_INDEXES) {
+            DISTRACTOR_INDEXES.keySet().removeIf(key -> key.startsWith(userId.toHexString()));
+        }
+    }
+
+    // Drops the cached deck so the next read sees changes made elsewhere
+    public static void invalidateCache(ObjectId userId, String subject) {
+        CACHE.invalidate(userId, subject);
+        synchronized (DEDUP_INDEXES) {
+            DEDUP_INDEXES.remove(deckKey(userId, subject));
+        }
+        synchronized (DISTRACTOR_INDEXES) {
+            DISTRACTOR_INDEXES.remove(deckKey(userId, subject));
+        }
+    }
+
+    public static FlashcardCache.Stats getCacheStats() {
+        return CACHE.getStats();
     }
 }
@@ -0,0 +1,54 @@
+package db;
+
+import create_flashcard.Flashcard;
+import create_flashcard.ReviewState;
+import org.bson.types.ObjectId;
+
+import java.util.List;
+import java.util.Set;
+
+/** Storage backend for flashcards. Cards passed in already carry their _id, userId and subject. */
+public interface FlashcardStore {
+
+    void insert(Flashcard card);
+
+    BulkInsertResult insertMany(List<Flashcard> cards, int batchSize, boolean ordered);
+
+    List<Flashcard> findByUser(ObjectId userId);
+
+    List<Flashcard> findDeck(ObjectId userId, String subject);
+
+    /** Deck cards with only _id and question set. */
+    List<Flashcard> findQuestions(ObjectId userId, String subject);
+
+    /**
+     * Up to limit deck cards with _id greater than afterId (null = from the start), in _id order.
+     * With questionsOnly only _id and question are filled in.
+     */
+    List<Flashcard> findDeckAfter(ObjectId userId, String subject, ObjectId afterId, int limit, boolean questionsOnly);
+
+    List<String> findAnswers(ObjectId userId, String subject);
+
+    String findAnswer(ObjectId cardId);
+
+    /**
+     * Up to limit deck cards due at or before now (epoch millis), soonest first,
+     * served from the {userId, subject, due} index. Cards not scheduled yet
+     * count as due since they were created (see Flashcard.getDue()).
+     */
+    List<Flashcard> findDue(ObjectId userId, String subject, long now, int limit);
+
+    /** When the deck's next card falls due (epoch millis), or null for an empty deck. */
+    Long findNextDue(ObjectId userId, String subject);
+
+    void updateReview(ObjectId cardId, ReviewState review);
+
+    /** Cards in the deck, capped at limit (0 = no cap). */
+    long count(ObjectId userId, String subject, int limit);
+
+    long count(ObjectId userId);
+
+    Set<String> findSubjects(ObjectId userId);
+
+    void deleteByUser(ObjectId userId);
+}
@@ -11,11 +11,16 @@ public class Message {
     private final Date timestamp;
 
     public Message(ObjectId senderId, ObjectId receiverId, String content) {
-        this.id = new ObjectId();
+        this(new ObjectId(), senderId, receiverId, content, new Date());
+    }
+
+    // Used when reading back a stored message so the original _id and timestamp are kept
+    public Message(ObjectId id, ObjectId senderId, ObjectId receiverId, String content, Date timestamp) {
+        this.id = id;
         this.senderId = senderId;
         this.receiverId = receiverId;
         this.content = content;
-        this.timestamp = new Date();
+        this.timestamp = timestamp;
     }
 
     // Getters
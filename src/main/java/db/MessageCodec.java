@@ -0,0 +1,58 @@
+package db;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+
+import java.util.Date;
+
+public class MessageCodec implements Codec<Message> {
+
+    @Override
+    public void encode(BsonWriter writer, Message message, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        writer.writeObjectId("_id", message.getId() != null ? message.getId() : new ObjectId());
+        writer.writeObjectId("senderId", message.getSenderId());
+        writer.writeObjectId("receiverId", message.getReceiverId());
+        writer.writeString("content", message.getContent());
+        writer.writeDateTime("timestamp", message.getTimestamp().getTime());
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Message decode(BsonReader reader, DecoderContext decoderContext) {
+        ObjectId id = null, senderId = null, receiverId = null;
+        String content = null;
+        Date timestamp = null;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String name = reader.readName();
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                continue;
+            }
+            switch (name) {
+                case "_id": id = reader.readObjectId(); break;
+                case "senderId": senderId = reader.readObjectId(); break;
+                case "receiverId": receiverId = reader.readObjectId(); break;
+                case "content": content = reader.readString(); break;
+                case "timestamp": timestamp = new Date(reader.readDateTime()); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        // Very old messages have no timestamp; the ObjectId still carries the creation time
+        if (timestamp == null && id != null) timestamp = id.getDate();
+        return new Message(id, senderId, receiverId, content, timestamp);
+    }
+
+    @Override
+    public Class<Message> getEncoderClass() {
+        return Message.class;
+    }
+}
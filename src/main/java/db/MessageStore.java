@@ -0,0 +1,26 @@
+package db;
+
+import org.bson.types.ObjectId;
+
+import java.util.Date;
+import java.util.List;
+
+/** Storage backend for direct messages. */
+public interface MessageStore {
+
+    void insert(Message message);
+
+    /** Inserts the batch; messages already stored under the same _id are skipped. */
+    void insertMany(List<Message> messages);
+
+    /** Messages received by the user, newest first. */
+    List<Message> findForReceiver(ObjectId userId);
+
+    /** Messages between the two users in either direction, oldest first. */
+    List<Message> findConversation(ObjectId user1Id, ObjectId user2Id);
+
+    /** Up to limit conversation messages older than (beforeTime, beforeId), newest first; null bounds start at the newest. */
+    List<Message> findConversationBefore(ObjectId user1Id, ObjectId user2Id, Date beforeTime, ObjectId beforeId, int limit);
+
+    void deleteForUser(ObjectId userId);
+}
@@ -0,0 +1,203 @@
+package db;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionClosedEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owns the single MongoClient shared by every manager in the app.
+ *
+ * The client (and its connection pool) is created lazily on first use or
+ * explicitly through {@link #startup()}, and released by {@link #shutdown()}
+ * or the JVM shutdown hook. Pool sizing can be tuned with system properties:
+ * thinkdeck.mongo.uri, thinkdeck.mongo.database, thinkdeck.mongo.pool.min,
+ * thinkdeck.mongo.pool.max, thinkdeck.mongo.pool.maxIdleSeconds and
+ * thinkdeck.mongo.pool.maxWaitMillis.
+ */
+public class MongoConnectionManager {
+
+    private static final String DEFAULT_URI = "mongodb://localhost:27017";
+    private static final String DEFAULT_DATABASE = "test_db";
+
+    private static MongoClient client;
+    private static MongoDatabase database;
+    private static Thread shutdownHook;
+
+    private static final PoolStatsListener poolListener = new PoolStatsListener();
+
+    public static synchronized void startup() {
+        if (client != null) return;
+
+        String uri = System.getProperty("thinkdeck.mongo.uri", DEFAULT_URI);
+        String dbName = System.getProperty("thinkdeck.mongo.database", DEFAULT_DATABASE);
+        int minSize = Integer.getInteger("thinkdeck.mongo.pool.min", 1);
+        int maxSize = Integer.getInteger("thinkdeck.mongo.pool.max", 20);
+        long maxIdleSeconds = Long.getLong("thinkdeck.mongo.pool.maxIdleSeconds", 300L);
+        long maxWaitMillis = Long.getLong("thinkdeck.mongo.pool.maxWaitMillis", 5000L);
+
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(uri))
+                .codecRegistry(Codecs.REGISTRY)
+                .applyToConnectionPoolSettings(pool -> pool
+                        .minSize(minSize)
+                        .maxSize(maxSize)
+                        .maxConnectionIdleTime(maxIdleSeconds, TimeUnit.SECONDS)
+                        .maxWaitTime(maxWaitMillis, TimeUnit.MILLISECONDS)
+                        .addConnectionPoolListener(poolListener))
+                .build();
+
+        client = MongoClients.create(settings);
+        database = client.getDatabase(dbName);
+
+        shutdownHook = new Thread(MongoConnectionManager::closeClient, "mongo-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        System.out.println("Mongo connected: " + dbName + " (pool " + minSize + ".." + maxSize + ")");
+    }
+
+    public static synchronized void shutdown() {
+        removeShutdownHook();
+        closeClient();
+    }
+
+    /** For owners that close the client themselves on exit, after work that still needs it. */
+    static synchronized void removeShutdownHook() {
+        if (shutdownHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ignored) {
+                // JVM is already shutting down, the hook will close the client
+            }
+            shutdownHook = null;
+        }
+    }
+
+    private static synchronized void closeClient() {
+        if (client == null) return;
+        client.close();
+        client = null;
+        database = null;
+        System.out.println("Mongo connection pool closed.");
+    }
+
+    public static synchronized MongoDatabase getDatabase() {
+        if (database == null) {
+            startup();
+        }
+        return database;
+    }
+
+    public static PoolStats getPoolStats() {
+        return poolListener.snapshot();
+    }
+
+    /** Point-in-time view of the connection pool counters. */
+    public static class PoolStats {
+        private final int openConnections;
+        private final int checkedOut;
+        private final int waitQueueSize;
+        private final long totalCheckouts;
+        private final long checkoutFailures;
+        private final long totalCreated;
+
+        PoolStats(int openConnections, int checkedOut, int waitQueueSize,
+                  long totalCheckouts, long checkoutFailures, long totalCreated) {
+            this.openConnections = openConnections;
+            this.checkedOut = checkedOut;
+            this.waitQueueSize = waitQueueSize;
+            this.totalCheckouts = totalCheckouts;
+            this.checkoutFailures = checkoutFailures;
+            this.totalCreated = totalCreated;
+        }
+
+        public int getOpenConnections() {
+            return openConnections;
+        }
+
+        public int getCheckedOut() {
+            return checkedOut;
+        }
+
+        public int getWaitQueueSize() {
+            return waitQueueSize;
+        }
+
+        public long getTotalCheckouts() {
+            return totalCheckouts;
+        }
+
+        public long getCheckoutFailures() {
+            return checkoutFailures;
+        }
+
+        public long getTotalCreated() {
+            return totalCreated;
+        }
+
+        @Override
+        public String toString() {
+            return "open=" + openConnections + " checkedOut=" + checkedOut + " waiting=" + waitQueueSize
+                    + " checkouts=" + totalCheckouts + " failures=" + checkoutFailures + " created=" + totalCreated;
+        }
+    }
+
+    private static class PoolStatsListener implements ConnectionPoolListener {
+        private final AtomicInteger open = new AtomicInteger();
+        private final AtomicInteger checkedOut = new AtomicInteger();
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicLong checkouts = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong created = new AtomicLong();
+
+        @Override
+        public void connectionCreated(ConnectionCreatedEvent event) {
+            open.incrementAndGet();
+            created.incrementAndGet();
+        }
+
+        @Override
+        public void connectionClosed(ConnectionClosedEvent event) {
+            open.decrementAndGet();
+        }
+
+        @Override
+        public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+            waiting.incrementAndGet();
+        }
+
+        @Override
+        public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+            waiting.decrementAndGet();
+            checkedOut.incrementAndGet();
+            checkouts.incrementAndGet();
+        }
+
+        @Override
+        public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+            waiting.decrementAndGet();
+            failures.incrementAndGet();
+        }
+
+        @Override
+        public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+            checkedOut.decrementAndGet();
+        }
+
+        PoolStats snapshot() {
+            return new PoolStats(open.get(), checkedOut.get(), waiting.get(),
+                    checkouts.get(), failures.get(), created.get());
+        }
+    }
+}
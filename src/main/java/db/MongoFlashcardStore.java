@@ -0,0 +1,188 @@
+package db;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.Updates;
+import create_flashcard.Flashcard;
+import create_flashcard.ReviewState;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class MongoFlashcardStore implements FlashcardStore {
+
+    private static MongoCollection<Flashcard> collection() {
+        return MongoConnectionManager.getDatabase().getCollection("flashcards", Flashcard.class);
+    }
+
+    private static Bson deckFilter(ObjectId userId, String subject) {
+        return Filters.and(Filters.eq("userId", userId), Filters.eq("subject", subject));
+    }
+
+    @Override
+    public void insert(Flashcard card) {
+        collection().insertOne(card);
+    }
+
+    /**
+     * One insertMany per batch. Unordered batches keep going past a bad row; ordered
+     * ones stop at the first error and the rest are reported as skipped.
+     */
+    @Override
+    public BulkInsertResult insertMany(List<Flashcard> cards, int batchSize, boolean ordered) {
+        List<BulkInsertResult.Failure> failures = new ArrayList<>();
+        int inserted = 0;
+        int size = Math.max(1, batchSize);
+        MongoCollection<Flashcard> flashcards = collection();
+        InsertManyOptions options = new InsertManyOptions().ordered(ordered);
+
+        for (int start = 0; start < cards.size(); start += size) {
+            int end = Math.min(start + size, cards.size());
+            List<Flashcard> batch = cards.subList(start, end);
+            try {
+                flashcards.insertMany(batch, options);
+                inserted += batch.size();
+            } catch (MongoBulkWriteException ex) {
+                inserted += ex.getWriteResult().getInsertedCount();
+                for (BulkWriteError error : ex.getWriteErrors()) {
+                    failures.add(new BulkInsertResult.Failure(start + error.getIndex(), error.getMessage()));
+                }
+                if (ordered) {
+                    // Only a write-concern error: the whole batch was written, stop after it
+                    int skipFrom = ex.getWriteErrors().isEmpty() ? end
+                            : start + ex.getWriteErrors().get(0).getIndex() + 1;
+                    skipRemaining(failures, skipFrom, cards.size());
+                    break;
+                }
+            } catch (MongoException ex) {
+                // Whole batch rejected (network, auth...): report every card in it
+                for (int i = start; i < end; i++) {
+                    failures.add(new BulkInsertResult.Failure(i, ex.getMessage()));
+                }
+                if (ordered) {
+                    skipRemaining(failures, end, cards.size());
+                    break;
+                }
+            }
+        }
+        return new BulkInsertResult(cards.size(), inserted, failures);
+    }
+
+    private static void skipRemaining(List<BulkInsertResult.Failure> failures, int from, int to) {
+        for (int i = from; i < to; i++) {
+            failures.add(new BulkInsertResult.Failure(i, "Skipped after an earlier error in an ordered insert"));
+        }
+    }
+
+    @Override
+    public List<Flashcard> findByUser(ObjectId userId) {
+        return collection().find(Filters.eq("userId", userId)).into(new ArrayList<>());
+    }
+
+    @Override
+    public List<Flashcard> findDeck(ObjectId userId, String subject) {
+        return collection().find(deckFilter(userId, subject)).into(new ArrayList<>());
+    }
+
+    @Override
+    public List<Flashcard> findQuestions(ObjectId userId, String subject) {
+        return collection().find(deckFilter(userId, subject))
+                .projection(Projections.include("question"))
+                .into(new ArrayList<>());
+    }
+
+    @Override
+    public List<Flashcard> findDeckAfter(ObjectId userId, String subject, ObjectId afterId, int limit,
+                                         boolean questionsOnly) {
+        Bson filter = afterId != null ? Filters.and(deckFilter(userId, subject), Filters.gt("_id", afterId))
+                : deckFilter(userId, subject);
+        FindIterable<Flashcard> find = collection().find(filter).sort(Sorts.ascending("_id")).limit(limit);
+        if (questionsOnly) find = find.projection(Projections.include("question"));
+        return find.into(new ArrayList<>());
+    }
+
+    @Override
+    public List<String> findAnswers(ObjectId userId, String subject) {
+        List<String> answers = new ArrayList<>();
+        for (Flashcard card : collection().find(deckFilter(userId, subject))
+                .projection(Projections.fields(Projections.include("answer"), Projections.excludeId()))) {
+            answers.add(card.getAnswer());
+        }
+        return answers;
+    }
+
+    @Override
+    public String findAnswer(ObjectId cardId) {
+        Flashcard card = collection().find(Filters.eq("_id", cardId))
+                .projection(Projections.include("answer"))
+                .first();
+        return card != null ? card.getAnswer() : null;
+    }
+
+    @Override
+    public List<Flashcard> findDue(ObjectId userId, String subject, long now, int limit) {
+        // Cards the v4 migration has not scheduled yet are due since they were created, as in Flashcard.getDue()
+        return collection().find(Filters.and(deckFilter(userId, subject),
+                        Filters.or(Filters.lte("due", new Date(now)), Filters.exists("due", false))))
+                .sort(Sorts.ascending("due"))
+                .limit(limit)
+                .into(new ArrayList<>());
+    }
+
+    @Override
+    public Long findNextDue(ObjectId userId, String subject) {
+        Flashcard unscheduled = collection().find(Filters.and(deckFilter(userId, subject), Filters.exists("due", false)))
+                .sort(Sorts.ascending("_id"))
+                .projection(Projections.include("_id"))
+                .first();
+        if (unscheduled != null) return unscheduled.getDue();
+        Flashcard next = collection().find(Filters.and(deckFilter(userId, subject), Filters.exists("due", true)))
+                .sort(Sorts.ascending("due"))
+                .projection(Projections.include("due"))
+                .first();
+        return next != null ? next.getDue() : null;
+    }
+
+    @Override
+    public void updateReview(ObjectId cardId, ReviewState review) {
+        collection().updateOne(Filters.eq("_id", cardId), Updates.combine(
+                Updates.set("due", new Date(review.getDue())),
+                Updates.set("intervalDays", review.getIntervalDays()),
+                Updates.set("ease", review.getEase()),
+                Updates.set("reps", review.getReps()),
+                Updates.set("lapses", review.getLapses())));
+    }
+
+    @Override
+    public long count(ObjectId userId, String subject, int limit) {
+        return collection().countDocuments(deckFilter(userId, subject), new CountOptions().limit(limit));
+    }
+
+    @Override
+    public long count(ObjectId userId) {
+        return collection().countDocuments(Filters.eq("userId", userId));
+    }
+
+    @Override
+    public Set<String> findSubjects(ObjectId userId) {
+        return collection().distinct("subject", Filters.eq("userId", userId), String.class).into(new HashSet<>());
+    }
+
+    @Override
+    public void deleteByUser(ObjectId userId) {
+        collection().deleteMany(Filters.eq("userId", userId));
+    }
+}
@@ -0,0 +1,68 @@
+package db;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class MongoMessageStore implements MessageStore {
+
+    private static MongoCollection<Message> collection() {
+        return MongoConnectionManager.getDatabase().getCollection("messages", Message.class);
+    }
+
+    @Override
+    public void insert(Message message) {
+        collection().insertOne(message);
+    }
+
+    @Override
+    public void insertMany(List<Message> messages) {
+        MongoWrites.insertIgnoringDuplicates(collection(), messages);
+    }
+
+    @Override
+    public List<Message> findForReceiver(ObjectId userId) {
+        return collection().find(Filters.eq("receiverId", userId))
+                .sort(Sorts.descending("timestamp"))
+                .into(new ArrayList<>());
+    }
+
+    private static Bson conversationFilter(ObjectId user1Id, ObjectId user2Id) {
+        return Filters.or(
+                Filters.and(Filters.eq("senderId", user1Id), Filters.eq("receiverId", user2Id)),
+                Filters.and(Filters.eq("senderId", user2Id), Filters.eq("receiverId", user1Id)));
+    }
+
+    @Override
+    public List<Message> findConversation(ObjectId user1Id, ObjectId user2Id) {
+        return collection().find(conversationFilter(user1Id, user2Id))
+                .sort(Sorts.ascending("timestamp"))
+                .into(new ArrayList<>());
+    }
+
+    @Override
+    public List<Message> findConversationBefore(ObjectId user1Id, ObjectId user2Id, Date beforeTime, ObjectId beforeId,
+                                                int limit) {
+        Bson filter = conversationFilter(user1Id, user2Id);
+        if (beforeTime != null && beforeId != null) {
+            filter = Filters.and(filter, MongoWrites.before("timestamp", beforeTime, beforeId));
+        }
+        return collection().find(filter)
+                .sort(Sorts.descending("timestamp", "_id"))
+                .limit(limit)
+                .into(new ArrayList<>());
+    }
+
+    @Override
+    public void deleteForUser(ObjectId userId) {
+        collection().deleteMany(Filters.or(
+                Filters.eq("senderId", userId),
+                Filters.eq("receiverId", userId)));
+    }
+}
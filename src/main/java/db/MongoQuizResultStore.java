@@ -0,0 +1,47 @@
+package db;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class MongoQuizResultStore implements QuizResultStore {
+
+    private static MongoCollection<QuizResult> collection() {
+        return MongoConnectionManager.getDatabase().getCollection("quizResults", QuizResult.class);
+    }
+
+    @Override
+    public void insert(QuizResult result) {
+        collection().insertOne(result);
+    }
+
+    @Override
+    public void insertMany(List<QuizResult> results) {
+        MongoWrites.insertIgnoringDuplicates(collection(), results);
+    }
+
+    @Override
+    public List<QuizResult> findByUser(ObjectId userId) {
+        return collection().find(Filters.eq("userId", userId))
+                .sort(Sorts.descending("date"))
+                .into(new ArrayList<>());
+    }
+
+    @Override
+    public List<QuizResult> findByUserBefore(ObjectId userId, Date beforeDate, ObjectId beforeId, int limit) {
+        Bson filter = Filters.eq("userId", userId);
+        if (beforeDate != null && beforeId != null) {
+            filter = Filters.and(filter, MongoWrites.before("date", beforeDate, beforeId));
+        }
+        return collection().find(filter)
+                .sort(Sorts.descending("date", "_id"))
+                .limit(limit)
+                .into(new ArrayList<>());
+    }
+}
@@ -0,0 +1,97 @@
+package db;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import org.apache.commons.lang3.tuple.Pair;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MongoUserStore implements UserStore {
+
+    private static MongoCollection<User> collection() {
+        return MongoConnectionManager.getDatabase().getCollection("users", User.class);
+    }
+
+    @Override
+    public void insert(User user) {
+        collection().insertOne(user);
+    }
+
+    @Override
+    public User findByCredentials(String username, String password) {
+        return collection().find(Filters.and(Filters.eq("username", username), Filters.eq("password", password))).first();
+    }
+
+    @Override
+    public User findById(ObjectId userId) {
+        return collection().find(Filters.eq("_id", userId)).first();
+    }
+
+    @Override
+    public List<User> findVisible() {
+        return collection().find(Filters.ne("isHidden", true)).into(new ArrayList<>());
+    }
+
+    @Override
+    public void setHidden(ObjectId userId, boolean hidden) {
+        collection().updateOne(Filters.eq("_id", userId), new Document("$set", new Document("isHidden", hidden)));
+    }
+
+    @Override
+    public void setCanReceiveMessages(ObjectId userId, boolean canReceive) {
+        collection().updateOne(Filters.eq("_id", userId),
+                new Document("$set", new Document("canReceiveMessages", canReceive)));
+    }
+
+    @Override
+    public void update(ObjectId userId, String username, String email, Double latitude, Double longitude) {
+        Document setFields = new Document("username", username).append("email", email);
+        Document update = new Document("$set", setFields);
+        if (latitude != null && longitude != null) {
+            setFields.append("location", new Document("type", "Point").append("coordinates", Arrays.asList(longitude, latitude)));
+        } else {
+            update.append("$unset", new Document("location", ""));
+        }
+        collection().updateOne(Filters.eq("_id", userId), update);
+    }
+
+    @Override
+    public void delete(ObjectId userId) {
+        collection().deleteOne(Filters.eq("_id", userId));
+    }
+
+    @Override
+    public List<Pair<User, Double>> findWithinRadius(double latitude, double longitude, double radiusInKm) {
+        MongoCollection<Document> users = MongoConnectionManager.getDatabase().getCollection("users");
+        double radiusInMeters = radiusInKm * 1000;
+        List<Pair<User, Double>> usersWithDistance = new ArrayList<>();
+        List<Document> pipeline = Arrays.asList(
+            new Document("$geoNear",
+                new Document("near", new Document("type", "Point").append("coordinates", Arrays.asList(longitude, latitude)))
+                    .append("distanceField", "distanceMeters")
+                    .append("maxDistance", radiusInMeters)
+                    .append("spherical", true)
+            )
+        );
+        // Raw results are decoded lazily: the user codec reads the fields it knows and the
+        // distance is picked out of the same buffer, without building a Document per row
+        try (MongoCursor<RawBsonDocument> cursor = users.aggregate(pipeline, RawBsonDocument.class).iterator()) {
+            while (cursor.hasNext()) {
+                RawBsonDocument raw = cursor.next();
+                BsonValue dist = raw.get("distanceMeters");
+                if (dist != null && dist.isNumber()) {
+                    User user = raw.decode(Codecs.USER);
+                    usersWithDistance.add(Pair.of(user, dist.asNumber().doubleValue() / 1000.0));
+                }
+            }
+        }
+        return usersWithDistance;
+    }
+}
@@ -0,0 +1,45 @@
+package db;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.util.Date;
+import java.util.List;
+
+final class MongoWrites {
+
+    private MongoWrites() {
+    }
+
+    /** Keyset bound for a (field desc, _id desc) sort: rows strictly after the given one. */
+    static Bson before(String field, Date time, ObjectId id) {
+        return Filters.or(
+                Filters.lt(field, time),
+                Filters.and(Filters.eq(field, time), Filters.lt("_id", id)));
+    }
+
+    /**
+     * Unordered insertMany where documents that are already there (duplicate _id) count as
+     * written, so a replayed batch is harmless. Other per-document errors are logged and
+     * dropped; whole-batch failures (network, auth...) propagate so the caller can retry.
+     */
+    static <T> void insertIgnoringDuplicates(MongoCollection<T> collection, List<T> documents) {
+        if (documents.isEmpty()) return;
+        try {
+            collection.insertMany(documents, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException ex) {
+            for (BulkWriteError error : ex.getWriteErrors()) {
+                if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                    System.err.println("Dropped write to " + collection.getNamespace().getCollectionName()
+                            + " (#" + error.getIndex() + "): " + error.getMessage());
+                }
+            }
+        }
+    }
+}
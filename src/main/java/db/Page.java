@@ -0,0 +1,68 @@
+package db;
+
+import org.bson.types.ObjectId;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One page of a keyset-paginated query. Pass {@link #getNextToken()} back to
+ * the same call to continue after the last item; it is null on the last page.
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final String nextToken;
+
+    public Page(List<T> items, String nextToken) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextToken = nextToken;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public boolean hasMore() {
+        return nextToken != null;
+    }
+
+    // Stores return up to pageSize + 1 rows; the extra one only tells us there is another page
+    static <T> Page<T> of(List<T> fetched, int pageSize, Function<T, String> tokenOf) {
+        if (fetched.size() <= pageSize) return new Page<>(fetched, null);
+        List<T> items = fetched.subList(0, pageSize);
+        return new Page<>(items, tokenOf.apply(items.get(pageSize - 1)));
+    }
+
+    // --- Continuation tokens: "<_id hex>" or "<epoch millis>_<_id hex>" ---
+
+    static String token(ObjectId id) {
+        return id.toHexString();
+    }
+
+    static String token(Date time, ObjectId id) {
+        return (time != null ? time.getTime() : 0) + "_" + id.toHexString();
+    }
+
+    static ObjectId idOf(String token) {
+        if (token == null) return null;
+        String hex = token.substring(token.indexOf('_') + 1);
+        if (!ObjectId.isValid(hex)) throw new IllegalArgumentException("Invalid page token: " + token);
+        return new ObjectId(hex);
+    }
+
+    static Date timeOf(String token) {
+        if (token == null) return null;
+        int sep = token.indexOf('_');
+        try {
+            return new Date(Long.parseLong(token.substring(0, sep)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid page token: " + token);
+        }
+    }
+}
@@ -1,38 +1,24 @@
 package db;
 
-import com.mongodb.client.MongoCollection;
-import com.mongodb.client.MongoDatabase;
-import com.mongodb.client.model.Filters;
-import com.mongodb.client.model.Sorts;
-import org.bson.Document;
 import org.bson.types.ObjectId;
 
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 public class QuizManager {
 
     public static void saveQuizResult(ObjectId userId, String subject, int score, int totalQuestions, String quizType) {
-        MongoDatabase db = TestMongo.connect();
-        MongoCollection<Document> quizResults = db.getCollection("quizResults");
-
-        Document result = new Document("userId", userId)
-                .append("subject", subject)
-                .append("score", score)
-                .append("totalQuestions", totalQuestions)
-                .append("quizType", quizType)
-                .append("date", new Date());
-
-        quizResults.insertOne(result);
+        Storage.quizResults().insert(new QuizResult(new ObjectId(), userId, subject, score, totalQuestions, quizType, new Date()));
     }
 
-    public static List<Document> getQuizHistory(ObjectId userId) {
-        MongoDatabase db = TestMongo.connect();
-        MongoCollection<Document> quizResults = db.getCollection("quizResults");
+    public static List<QuizResult> getQuizHistory(ObjectId userId) {
+        return Storage.quizResults().findByUser(userId);
+    }
 
-        return quizResults.find(Filters.eq("userId", userId))
-                .sort(Sorts.descending("date"))
-                .into(new ArrayList<>());
+    /** A page of the user's results, newest first; pass null for the first page, then the previous page's token. */
+    public static Page<QuizResult> getQuizHistoryPage(ObjectId userId, String pageToken, int pageSize) {
+        List<QuizResult> fetched = Storage.quizResults().findByUserBefore(userId, Page.timeOf(pageToken),
+                Page.idOf(pageToken), pageSize + 1);
+        return Page.of(fetched, pageSize, r -> Page.token(r.getDate(), r.getId()));
     }
 }
@@ -0,0 +1,53 @@
+package db;
+
+import org.bson.types.ObjectId;
+import java.util.Date;
+
+public class QuizResult {
+    private final ObjectId id;
+    private final ObjectId userId;
+    private final String subject;
+    private final int score;
+    private final int totalQuestions;
+    private final String quizType;
+    private final Date date;
+
+    public QuizResult(ObjectId id, ObjectId userId, String subject, int score, int totalQuestions,
+                      String quizType, Date date) {
+        this.id = id;
+        this.userId = userId;
+        this.subject = subject;
+        this.score = score;
+        this.totalQuestions = totalQuestions;
+        this.quizType = quizType;
+        this.date = date;
+    }
+
+    public ObjectId getId() {
+        return id;
+    }
+
+    public ObjectId getUserId() {
+        return userId;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getTotalQuestions() {
+        return totalQuestions;
+    }
+
+    public String getQuizType() {
+        return quizType;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+}
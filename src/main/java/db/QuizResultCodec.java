@@ -0,0 +1,61 @@
+package db;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+
+import java.util.Date;
+
+public class QuizResultCodec implements Codec<QuizResult> {
+
+    @Override
+    public void encode(BsonWriter writer, QuizResult result, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        writer.writeObjectId("_id", result.getId() != null ? result.getId() : new ObjectId());
+        writer.writeObjectId("userId", result.getUserId());
+        writer.writeString("subject", result.getSubject());
+        writer.writeInt32("score", result.getScore());
+        writer.writeInt32("totalQuestions", result.getTotalQuestions());
+        writer.writeString("quizType", result.getQuizType());
+        writer.writeDateTime("date", result.getDate().getTime());
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public QuizResult decode(BsonReader reader, DecoderContext decoderContext) {
+        ObjectId id = null, userId = null;
+        String subject = null, quizType = null;
+        int score = 0, totalQuestions = 0;
+        Date date = null;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String name = reader.readName();
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                continue;
+            }
+            switch (name) {
+                case "_id": id = reader.readObjectId(); break;
+                case "userId": userId = reader.readObjectId(); break;
+                case "subject": subject = reader.readString(); break;
+                case "score": score = reader.readInt32(); break;
+                case "totalQuestions": totalQuestions = reader.readInt32(); break;
+                case "quizType": quizType = reader.readString(); break;
+                case "date": date = new Date(reader.readDateTime()); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        return new QuizResult(id, userId, subject, score, totalQuestions, quizType, date);
+    }
+
+    @Override
+    public Class<QuizResult> getEncoderClass() {
+        return QuizResult.class;
+    }
+}
@@ -0,0 +1,21 @@
+package db;
+
+import org.bson.types.ObjectId;
+
+import java.util.Date;
+import java.util.List;
+
+/** Storage backend for finished quiz scores. */
+public interface QuizResultStore {
+
+    void insert(QuizResult result);
+
+    /** Inserts the batch; results already stored under the same _id are skipped. */
+    void insertMany(List<QuizResult> results);
+
+    /** The user's results, newest first. */
+    List<QuizResult> findByUser(ObjectId userId);
+
+    /** Up to limit results older than (beforeDate, beforeId), newest first; null bounds start at the newest. */
+    List<QuizResult> findByUserBefore(ObjectId userId, Date beforeDate, ObjectId beforeId, int limit);
+}
@@ -0,0 +1,286 @@
+package db;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Runs one-off schema migrations and index creation.
+ *
+ * The applied version is kept in the "schemaMeta" collection, so a normal
+ * startup costs a single findOne. New steps are appended to MIGRATIONS with
+ * the next version number and never edited once released. A step that
+ * throws leaves the version where it was, so it runs again on the next
+ * start; steps must therefore be safe to repeat.
+ */
+public class SchemaMigrator {
+
+    private static final String META_COLLECTION = "schemaMeta";
+    private static final String META_ID = "schema";
+    private static final int BATCH_SIZE = 500;
+
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+            new Migration(1, "Convert user locations to GeoJSON points", SchemaMigrator::migrateUserLocations),
+            new Migration(2, "Create query indexes", SchemaMigrator::createIndexes),
+            new Migration(3, "Add _id to indexes for keyset paging", SchemaMigrator::createPagingIndexes),
+            new Migration(4, "Schedule flashcards for spaced repetition", SchemaMigrator::scheduleFlashcards),
+            new Migration(5, "Resolve duplicate usernames and index them as unique", SchemaMigrator::uniqueUsernames));
+
+    public static void migrate() {
+        MongoDatabase db = MongoConnectionManager.getDatabase();
+        MongoCollection<Document> meta = db.getCollection(META_COLLECTION);
+
+        Document state = meta.find(Filters.eq("_id", META_ID)).first();
+        int current = state != null ? state.getInteger("version", 0) : 0;
+
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version <= current) continue;
+            long start = System.currentTimeMillis();
+            System.out.println("Applying migration " + migration.version + ": " + migration.description);
+            try {
+                migration.step.accept(db);
+            } catch (RuntimeException ex) {
+                // Later steps may depend on this one, so stop here and retry from it next time
+                System.err.println("Migration " + migration.version + " failed, will retry on next start: "
+                        + ex.getMessage());
+                return;
+            }
+            meta.updateOne(Filters.eq("_id", META_ID),
+                    new Document("$set", new Document("version", migration.version)
+                            .append("description", migration.description)
+                            .append("appliedAt", new Date())),
+                    new UpdateOptions().upsert(true));
+            current = migration.version;
+            System.out.println("Migration " + migration.version + " done in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    // --- v1: "lat,lon" strings and swapped/out-of-range points become valid GeoJSON or are dropped ---
+    private static void migrateUserLocations(MongoDatabase db) {
+        MongoCollection<Document> users = db.getCollection("users");
+        List<WriteModel<Document>> batch = new ArrayList<>();
+        int fixed = 0, removed = 0, alreadyOk = 0;
+
+        try (MongoCursor<Document> cursor = users.find(Filters.exists("location"))
+                .projection(Projections.include("location"))
+                .batchSize(BATCH_SIZE)
+                .iterator()) {
+            while (cursor.hasNext()) {
+                Document user = cursor.next();
+                ObjectId id = user.getObjectId("_id");
+                Object raw = user.get("location");
+                double[] lonLat;
+                if (raw instanceof String) {
+                    lonLat = parseLocationString((String) raw);
+                } else if (raw instanceof Document) {
+                    lonLat = checkPoint((Document) raw);
+                    if (lonLat == ALREADY_VALID) {
+                        alreadyOk++;
+                        continue;
+                    }
+                } else {
+                    lonLat = null;
+                }
+
+                if (lonLat == null) {
+                    batch.add(new UpdateOneModel<>(Filters.eq("_id", id),
+                            new Document("$unset", new Document("location", ""))));
+                    removed++;
+                } else {
+                    Document geo = new Document("type", "Point").append("coordinates", Arrays.asList(lonLat[0], lonLat[1]));
+                    batch.add(new UpdateOneModel<>(Filters.eq("_id", id),
+                            new Document("$set", new Document("location", geo))));
+                    fixed++;
+                }
+                if (batch.size() >= BATCH_SIZE) flush(users, batch);
+            }
+        }
+        flush(users, batch);
+        System.out.println("Location data migration complete. fixed=" + fixed + " removed=" + removed + " ok=" + alreadyOk);
+    }
+
+    private static final double[] ALREADY_VALID = new double[0];
+
+    private static double[] parseLocationString(String raw) {
+        String[] parts = raw.split(",");
+        if (parts.length != 2) return null;
+        try {
+            double first = Double.parseDouble(parts[0].trim());
+            double second = Double.parseDouble(parts[1].trim());
+            // Assume stored as lat,lon originally
+            if (UserManager.inLat(first) && UserManager.inLon(second)) return new double[] { second, first };
+            // If reversed
+            if (UserManager.inLon(first) && UserManager.inLat(second)) return new double[] { first, second };
+            return null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static double[] checkPoint(Document loc) {
+        Object coordsObj = loc.get("coordinates");
+        if (!(coordsObj instanceof List)) return null;
+        List<?> coords = (List<?>) coordsObj;
+        if (coords.size() != 2 || !(coords.get(0) instanceof Number) || !(coords.get(1) instanceof Number)) return null;
+        double lon = ((Number) coords.get(0)).doubleValue();
+        double lat = ((Number) coords.get(1)).doubleValue();
+        if (UserManager.inLat(lat) && UserManager.inLon(lon)) return ALREADY_VALID;
+        // Try swap
+        if (UserManager.inLat(lon) && UserManager.inLon(lat)) return new double[] { lat, lon };
+        return null;
+    }
+
+    private static void flush(MongoCollection<Document> collection, List<WriteModel<Document>> batch) {
+        if (batch.isEmpty()) return;
+        try {
+            collection.bulkWrite(batch, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException ex) {
+            System.err.println("Migration batch had " + ex.getWriteErrors().size() + " failed writes: " + ex.getMessage());
+        }
+        batch.clear();
+    }
+
+    // --- v2: every index the query paths rely on (the unique username index is v5, so duplicates can't block this) ---
+    private static void createIndexes(MongoDatabase db) {
+        createIndexes(db, "users", Collections.singletonList(
+                new IndexModel(Indexes.geo2dsphere("location"))));
+        createIndexes(db, "flashcards", Collections.singletonList(
+                new IndexModel(Indexes.ascending("userId", "subject"))));
+        createIndexes(db, "messages", Collections.singletonList(
+                new IndexModel(Indexes.ascending("senderId", "receiverId", "timestamp"))));
+        createIndexes(db, "quizResults", Collections.singletonList(
+                new IndexModel(Indexes.compoundIndex(Indexes.ascending("userId"), Indexes.descending("date")))));
+    }
+
+    // --- v3: _id as the last key so paged queries sort entirely from the index ---
+    private static void createPagingIndexes(MongoDatabase db) {
+        createIndexes(db, "flashcards", Collections.singletonList(
+                new IndexModel(Indexes.ascending("userId", "subject", "_id"))));
+        createIndexes(db, "messages", Collections.singletonList(
+                new IndexModel(Indexes.ascending("senderId", "receiverId", "timestamp", "_id"))));
+        createIndexes(db, "quizResults", Collections.singletonList(
+                new IndexModel(Indexes.compoundIndex(Indexes.ascending("userId"), Indexes.descending("date", "_id")))));
+        // The v2 indexes are prefixes of these now and only cost writes
+        dropIndex(db, "flashcards", Indexes.ascending("userId", "subject"));
+        dropIndex(db, "messages", Indexes.ascending("senderId", "receiverId", "timestamp"));
+        dropIndex(db, "quizResults", Indexes.compoundIndex(Indexes.ascending("userId"), Indexes.descending("date")));
+    }
+
+    // --- v4: every card gets a due date (its creation time, so old cards come up first) and the due-card index ---
+    private static void scheduleFlashcards(MongoDatabase db) {
+        MongoCollection<Document> flashcards = db.getCollection("flashcards");
+        List<WriteModel<Document>> batch = new ArrayList<>();
+        int scheduled = 0;
+
+        try (MongoCursor<Document> cursor = flashcards.find(Filters.exists("due", false))
+                .projection(Projections.include("_id"))
+                .batchSize(BATCH_SIZE)
+                .iterator()) {
+            while (cursor.hasNext()) {
+                ObjectId id = cursor.next().getObjectId("_id");
+                batch.add(new UpdateOneModel<>(Filters.eq("_id", id),
+                        new Document("$set", new Document("due", id.getDate()))));
+                scheduled++;
+                if (batch.size() >= BATCH_SIZE) flush(flashcards, batch);
+            }
+        }
+        flush(flashcards, batch);
+        createIndexes(db, "flashcards", Collections.singletonList(
+                new IndexModel(Indexes.ascending("userId", "subject", "due"))));
+        System.out.println("Flashcard scheduling complete. scheduled=" + scheduled);
+    }
+
+    // --- v5: users sharing a username keep it on the oldest account, the others get "name-2", "name-3"... ---
+    private static void uniqueUsernames(MongoDatabase db) {
+        MongoCollection<Document> users = db.getCollection("users");
+        List<Document> duplicates = users.aggregate(Arrays.asList(
+                Aggregates.match(Filters.type("username", "string")),
+                Aggregates.group("$username", Accumulators.push("ids", "$_id"), Accumulators.sum("count", 1)),
+                Aggregates.match(Filters.gt("count", 1)))).into(new ArrayList<>());
+        int renamed = 0;
+        for (Document group : duplicates) {
+            String username = group.getString("_id");
+            List<ObjectId> ids = new ArrayList<>(group.getList("ids", ObjectId.class));
+            Collections.sort(ids);
+            int suffix = 2;
+            for (ObjectId id : ids.subList(1, ids.size())) {
+                String candidate;
+                do {
+                    candidate = username + "-" + suffix++;
+                } while (users.countDocuments(Filters.eq("username", candidate)) > 0);
+                users.updateOne(Filters.eq("_id", id), new Document("$set", new Document("username", candidate)));
+                System.err.println("Renamed duplicate username '" + username + "' of user " + id + " to '" + candidate + "'");
+                renamed++;
+            }
+        }
+        createIndexes(db, "users", Collections.singletonList(
+                new IndexModel(Indexes.ascending("username"), new IndexOptions().unique(true))));
+        System.out.println("Username check complete. renamed=" + renamed);
+    }
+
+    private static void dropIndex(MongoDatabase db, String collection, Bson keys) {
+        try {
+            db.getCollection(collection).dropIndex(keys);
+        } catch (MongoCommandException ex) {
+            System.err.println("Failed to drop index " + keys + " on " + collection + ": " + ex.getErrorMessage());
+        }
+    }
+
+    private static void createIndexes(MongoDatabase db, String collection, List<IndexModel> indexes) {
+        // One at a time so a single bad index (e.g. duplicate usernames) does not block the rest,
+        // but the step still fails so the version is not recorded and the index is retried
+        List<String> failed = new ArrayList<>();
+        for (IndexModel index : indexes) {
+            try {
+                db.getCollection(collection).createIndexes(Collections.singletonList(index));
+            } catch (MongoCommandException ex) {
+                System.err.println("Failed to create index " + index.getKeys() + " on " + collection + ": "
+                        + ex.getErrorMessage());
+                failed.add(index.getKeys().toString());
+            }
+        }
+        if (!failed.isEmpty()) {
+            throw new IllegalStateException("Could not create indexes on " + collection + ": " + failed);
+        }
+    }
+
+    private static class Migration {
+        final int version;
+        final String description;
+        final Consumer<MongoDatabase> step;
+
+        Migration(int version, String description, Consumer<MongoDatabase> step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package db;
+
+import db.embedded.EmbeddedStorage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks the storage backend the managers talk to.
+ *
+ * -Dthinkdeck.storage=mongo (default) uses the shared MongoClient;
+ * -Dthinkdeck.storage=embedded keeps everything in local log files under
+ * thinkdeck.storage.dir (default "db"), with no server needed.
+ *
+ * On Mongo, new messages and quiz results go through write-behind queues
+ * journaled under thinkdeck.writeBehind.dir (default "db/journal"); set
+ * thinkdeck.writeBehind=false to write them synchronously instead. The
+ * journal is fsynced on every write; thinkdeck.writeBehind.fsync=false
+ * trades that for speed, at the risk of losing the last writes on an OS
+ * crash or power loss.
+ *
+ * A JVM shutdown hook closes the backend on exit, draining the queues
+ * before the Mongo client goes away.
+ */
+public class Storage {
+
+    private static EmbeddedStorage embedded;
+    private static UserStore users;
+    private static FlashcardStore flashcards;
+    private static MessageStore messages;
+    private static QuizResultStore quizResults;
+    private static WriteBehindQueue<Message> messageQueue;
+    private static WriteBehindQueue<QuizResult> quizResultQueue;
+    private static Thread shutdownHook;
+
+    public static boolean isEmbedded() {
+        return "embedded".equalsIgnoreCase(System.getProperty("thinkdeck.storage", "mongo"));
+    }
+
+    public static synchronized void startup() {
+        if (users != null) return;
+        if (isEmbedded()) {
+            openEmbedded(Paths.get(System.getProperty("thinkdeck.storage.dir", "db")));
+        } else {
+            MongoConnectionManager.startup();
+            // Our hook closes the client, after the queues that still need it
+            MongoConnectionManager.removeShutdownHook();
+            registerShutdownHook();
+            SchemaMigrator.migrate();
+            users = new MongoUserStore();
+            flashcards = new MongoFlashcardStore();
+            messages = new MongoMessageStore();
+            quizResults = new MongoQuizResultStore();
+            if (!"false".equalsIgnoreCase(System.getProperty("thinkdeck.writeBehind"))) {
+                startWriteBehind();
+            }
+        }
+    }
+
+    private static void startWriteBehind() {
+        Path dir = Paths.get(System.getProperty("thinkdeck.writeBehind.dir", "db/journal"));
+        int batchSize = Integer.getInteger("thinkdeck.writeBehind.batchSize", 100);
+        long flushMillis = Long.getLong("thinkdeck.writeBehind.flushMillis", 500L);
+        boolean fsync = !"false".equalsIgnoreCase(System.getProperty("thinkdeck.writeBehind.fsync"));
+        MessageStore messageSink = messages;
+        QuizResultStore quizResultSink = quizResults;
+        try {
+            messageQueue = new WriteBehindQueue<>("messages", dir.resolve("messages.journal"), Codecs.MESSAGE,
+                    Message::getId, messageSink::insertMany, batchSize, flushMillis, fsync);
+            quizResultQueue = new WriteBehindQueue<>("quizResults", dir.resolve("quizResults.journal"), Codecs.QUIZ_RESULT,
+                    QuizResult::getId, quizResultSink::insertMany, batchSize, flushMillis, fsync);
+        } catch (IOException e) {
+            // Carry on with direct writes rather than refusing to start
+            System.err.println("Write-behind disabled, could not open journal in " + dir + ": " + e.getMessage());
+            closeWriteBehind();
+            return;
+        }
+        messages = new WriteBehindMessageStore(messageSink, messageQueue);
+        quizResults = new WriteBehindQuizResultStore(quizResultSink, quizResultQueue);
+    }
+
+    private static void closeWriteBehind() {
+        long timeout = Long.getLong("thinkdeck.writeBehind.shutdownMillis", 5000L);
+        if (messageQueue != null) messageQueue.close(timeout);
+        if (quizResultQueue != null) quizResultQueue.close(timeout);
+        messageQueue = null;
+        quizResultQueue = null;
+    }
+
+    /** Depth and flush counters of the write-behind queues; empty when they are not in use. */
+    public static synchronized List<WriteBehindQueue.Stats> getWriteBehindStats() {
+        List<WriteBehindQueue.Stats> stats = new ArrayList<>();
+        if (messageQueue != null) stats.add(messageQueue.getStats());
+        if (quizResultQueue != null) stats.add(quizResultQueue.getStats());
+        return stats;
+    }
+
+    /** Opens an embedded store in the given directory, regardless of thinkdeck.storage. */
+    public static synchronized void openEmbedded(Path dir) {
+        if (users != null) shutdown();
+        try {
+            embedded = EmbeddedStorage.open(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open embedded storage in " + dir, e);
+        }
+        registerShutdownHook();
+        users = embedded.users();
+        flashcards = embedded.flashcards();
+        messages = embedded.messages();
+        quizResults = embedded.quizResults();
+    }
+
+    // Frames close with EXIT_ON_CLOSE, so this is how most sessions end
+    private static void registerShutdownHook() {
+        if (shutdownHook != null) return;
+        shutdownHook = new Thread(Storage::shutdown, "storage-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    public static synchronized void shutdown() {
+        if (shutdownHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ignored) {
+                // Already running as the hook
+            }
+            shutdownHook = null;
+        }
+        if (embedded != null) {
+            try {
+                embedded.close();
+            } catch (IOException e) {
+                System.err.println("Error closing embedded storage: " + e.getMessage());
+            }
+            embedded = null;
+        } else {
+            // Drain queued writes while the client is still open
+            closeWriteBehind();
+            MongoConnectionManager.shutdown();
+        }
+        users = null;
+        flashcards = null;
+        messages = null;
+        quizResults = null;
+    }
+
+    public static synchronized UserStore users() {
+        startup();
+        return users;
+    }
+
+    public static synchronized FlashcardStore flashcards() {
+        startup();
+        return flashcards;
+    }
+
+    public static synchronized MessageStore messages() {
+        startup();
+        return messages;
+    }
+
+    public static synchronized QuizResultStore quizResults() {
+        startup();
+        return quizResults;
+    }
+}
@@ -1,16 +1,12 @@
 package db;
 
-import com.mongodb.client.MongoClient;
-import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoDatabase;
 
 public class TestMongo {
+    // Kept for older callers; the client is now shared through MongoConnectionManager
     public static MongoDatabase connect() {
         try {
-            MongoClient client = MongoClients.create("mongodb://localhost:27017");
-            MongoDatabase db = client.getDatabase("test_db");
-            System.out.println("Mongo connected: " + db.getName());
-            return db;
+            return MongoConnectionManager.getDatabase();
         } catch (Exception e) {
             System.err.println("Mongo connection error: " + e.getMessage());
             return null;
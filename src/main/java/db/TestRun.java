@@ -3,7 +3,7 @@ package db;
 import db.UserManager;
 import db.FlashcardManager;
 
-import org.bson.Document;
+import create_flashcard.Flashcard;
 import org.bson.types.ObjectId;
 import java.util.List;
 
@@ -11,16 +11,16 @@ public class TestRun {
     public static void main(String[] args) {
         UserManager.insertUser("Farhad", "rixonahmed@gmail.com", "1234", "Dhaka mirpur 12");
 
-        Document user = UserManager.loginUser("Farhad", "1234");
+        User user = UserManager.loginUser("Farhad", "1234");
 
         if (user != null) {
-            System.out.println("Login success: " + user.getString("username"));
-            ObjectId userId = user.getObjectId("_id");
+            System.out.println("Login success: " + user.getUsername());
+            ObjectId userId = user.getId();
 
-            List<Document> cards = FlashcardManager.getFlashcards(userId);
-            for (Document card : cards) {
-                System.out.println("Q: " + card.getString("question"));
-                System.out.println("A: " + card.getString("answer"));
+            List<Flashcard> cards = FlashcardManager.getFlashcards(userId);
+            for (Flashcard card : cards) {
+                System.out.println("Q: " + card.getQuestion());
+                System.out.println("A: " + card.getAnswer());
                 System.out.println("---");
             }
         } else {
@@ -0,0 +1,68 @@
+package db;
+
+import org.bson.types.ObjectId;
+
+public class User {
+    private final ObjectId id;
+    private final String username;
+    private final String email;
+    private final String password;
+    // GeoJSON point stored as [lon, lat]; both null when the user has no location
+    private final Double latitude;
+    private final Double longitude;
+    private final boolean hidden;
+    private final boolean canReceiveMessages;
+
+    public User(ObjectId id, String username, String email, String password, Double latitude, Double longitude,
+                boolean hidden, boolean canReceiveMessages) {
+        this.id = id;
+        this.username = username;
+        this.email = email;
+        this.password = password;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.hidden = hidden;
+        this.canReceiveMessages = canReceiveMessages;
+    }
+
+    public ObjectId getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public boolean hasLocation() {
+        return latitude != null && longitude != null;
+    }
+
+    // "lat, lon" as typed in the register/profile forms
+    public String getLocationText() {
+        return hasLocation() ? latitude + ", " + longitude : "";
+    }
+
+    public boolean isHidden() {
+        return hidden;
+    }
+
+    public boolean canReceiveMessages() {
+        return canReceiveMessages;
+    }
+}
@@ -0,0 +1,111 @@
+package db;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+
+public class UserCodec implements Codec<User> {
+
+    @Override
+    public void encode(BsonWriter writer, User user, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        writer.writeObjectId("_id", user.getId() != null ? user.getId() : new ObjectId());
+        writer.writeString("username", user.getUsername());
+        writer.writeString("email", user.getEmail());
+        writer.writeString("password", user.getPassword());
+        if (user.hasLocation()) {
+            writer.writeStartDocument("location");
+            writer.writeString("type", "Point");
+            writer.writeStartArray("coordinates");
+            writer.writeDouble(user.getLongitude());
+            writer.writeDouble(user.getLatitude());
+            writer.writeEndArray();
+            writer.writeEndDocument();
+        }
+        writer.writeBoolean("isHidden", user.isHidden());
+        writer.writeBoolean("canReceiveMessages", user.canReceiveMessages());
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public User decode(BsonReader reader, DecoderContext decoderContext) {
+        ObjectId id = null;
+        String username = null, email = null, password = null;
+        double[] lonLat = null;
+        boolean hidden = false, canReceiveMessages = true;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String name = reader.readName();
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                continue;
+            }
+            switch (name) {
+                case "_id": id = reader.readObjectId(); break;
+                case "username": username = reader.readString(); break;
+                case "email": email = reader.readString(); break;
+                case "password": password = reader.readString(); break;
+                case "isHidden": hidden = reader.readBoolean(); break;
+                case "canReceiveMessages": canReceiveMessages = reader.readBoolean(); break;
+                case "location":
+                    // Legacy "lat,lon" strings are left to the migration and treated as no location
+                    if (reader.getCurrentBsonType() == BsonType.DOCUMENT) {
+                        lonLat = readPoint(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default: reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        Double lat = lonLat != null ? lonLat[1] : null;
+        Double lon = lonLat != null ? lonLat[0] : null;
+        return new User(id, username, email, password, lat, lon, hidden, canReceiveMessages);
+    }
+
+    private static double[] readPoint(BsonReader reader) {
+        double[] lonLat = null;
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String name = reader.readName();
+            if (name.equals("coordinates") && reader.getCurrentBsonType() == BsonType.ARRAY) {
+                double[] coords = new double[2];
+                int i = 0;
+                reader.readStartArray();
+                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                    double v = readNumber(reader);
+                    if (i < 2) coords[i] = v;
+                    i++;
+                }
+                reader.readEndArray();
+                if (i == 2 && !Double.isNaN(coords[0]) && !Double.isNaN(coords[1])) lonLat = coords;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        return lonLat;
+    }
+
+    private static double readNumber(BsonReader reader) {
+        switch (reader.getCurrentBsonType()) {
+            case INT32: return reader.readInt32();
+            case INT64: return reader.readInt64();
+            case DOUBLE: return reader.readDouble();
+            default:
+                reader.skipValue();
+                return Double.NaN;
+        }
+    }
+
+    @Override
+    public Class<User> getEncoderClass() {
+        return User.class;
+    }
+}
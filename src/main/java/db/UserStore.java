@@ -0,0 +1,29 @@
+package db;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.bson.types.ObjectId;
+
+import java.util.List;
+
+/** Storage backend for user accounts. Locations are (lat, lon) pairs, null when unset. */
+public interface UserStore {
+
+    void insert(User user);
+
+    User findByCredentials(String username, String password);
+
+    User findById(ObjectId userId);
+
+    List<User> findVisible();
+
+    void setHidden(ObjectId userId, boolean hidden);
+
+    void setCanReceiveMessages(ObjectId userId, boolean canReceive);
+
+    void update(ObjectId userId, String username, String email, Double latitude, Double longitude);
+
+    void delete(ObjectId userId);
+
+    /** Users within the radius, closest first, paired with their distance in km. */
+    List<Pair<User, Double>> findWithinRadius(double latitude, double longitude, double radiusInKm);
+}
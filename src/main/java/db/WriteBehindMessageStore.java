@@ -0,0 +1,86 @@
+package db;
+
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Sends new messages through a write-behind queue; reads merge in the ones not flushed yet. */
+class WriteBehindMessageStore implements MessageStore {
+
+    private static final Comparator<Message> BY_TIME = Comparator.comparing(Message::getTimestamp,
+            Comparator.nullsFirst(Comparator.naturalOrder()));
+    private static final Comparator<Message> KEYSET = BY_TIME.thenComparing(Message::getId);
+
+    private final MessageStore delegate;
+    private final WriteBehindQueue<Message> queue;
+
+    WriteBehindMessageStore(MessageStore delegate, WriteBehindQueue<Message> queue) {
+        this.delegate = delegate;
+        this.queue = queue;
+    }
+
+    @Override
+    public void insert(Message message) {
+        queue.submit(message);
+    }
+
+    @Override
+    public void insertMany(List<Message> messages) {
+        for (Message message : messages) queue.submit(message);
+    }
+
+    @Override
+    public List<Message> findForReceiver(ObjectId userId) {
+        List<Message> result = merge(delegate.findForReceiver(userId),
+                queue.pending(m -> userId.equals(m.getReceiverId())));
+        result.sort(BY_TIME.reversed());
+        return result;
+    }
+
+    @Override
+    public List<Message> findConversation(ObjectId user1Id, ObjectId user2Id) {
+        List<Message> result = merge(delegate.findConversation(user1Id, user2Id),
+                queue.pending(m -> isBetween(m, user1Id, user2Id)));
+        result.sort(BY_TIME);
+        return result;
+    }
+
+    @Override
+    public List<Message> findConversationBefore(ObjectId user1Id, ObjectId user2Id, Date beforeTime, ObjectId beforeId,
+                                                int limit) {
+        // Anything that belongs in the first `limit` rows is either in the store's page or still queued
+        List<Message> result = merge(delegate.findConversationBefore(user1Id, user2Id, beforeTime, beforeId, limit),
+                queue.pending(m -> isBetween(m, user1Id, user2Id)
+                        && (beforeTime == null || KEYSET.compare(m, new Message(beforeId, null, null, null, beforeTime)) < 0)));
+        result.sort(KEYSET.reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    @Override
+    public void deleteForUser(ObjectId userId) {
+        queue.discard(m -> userId.equals(m.getSenderId()) || userId.equals(m.getReceiverId()));
+        delegate.deleteForUser(userId);
+    }
+
+    private static boolean isBetween(Message m, ObjectId user1Id, ObjectId user2Id) {
+        return (user1Id.equals(m.getSenderId()) && user2Id.equals(m.getReceiverId()))
+                || (user2Id.equals(m.getSenderId()) && user1Id.equals(m.getReceiverId()));
+    }
+
+    // A batch can already be in the store while still queued, so skip ids seen in both
+    private static List<Message> merge(List<Message> stored, List<Message> queued) {
+        if (queued.isEmpty()) return stored;
+        List<Message> result = new ArrayList<>(stored);
+        Set<ObjectId> ids = new HashSet<>();
+        for (Message m : stored) ids.add(m.getId());
+        for (Message m : queued) {
+            if (ids.add(m.getId())) result.add(m);
+        }
+        return result;
+    }
+}
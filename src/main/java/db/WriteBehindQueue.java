@@ -0,0 +1,322 @@
+package db;
+
+import db.embedded.BsonBytes;
+import db.embedded.RecordLog;
+import org.bson.codecs.Codec;
+import org.bson.types.ObjectId;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Acknowledges writes as soon as they are in a local journal and flushes
+ * them to the real store in batches, from a background thread.
+ *
+ * A batch goes out once batchSize items are waiting or flushMillis has
+ * passed. Flushed items are marked done in the journal and the file is
+ * truncated whenever the queue drains. Anything still in the journal at
+ * startup (crash, shutdown while the database was down) is queued again;
+ * items keep their _id, so the store skips the ones that already made it.
+ *
+ * With fsync on, every journal write is forced to disk before submit
+ * returns, so an acknowledged write survives power loss. Off, it only
+ * survives the process dying; the OS may still lose its last writes.
+ */
+public class WriteBehindQueue<T> implements Closeable {
+
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final String name;
+    private final Codec<T> codec;
+    private final Function<T, ObjectId> idOf;
+    private final Consumer<List<T>> sink;
+    private final int batchSize;
+    private final long flushMillis;
+    private final RecordLog journal;
+    private final Map<ObjectId, T> pending = new LinkedHashMap<>();
+    private final Thread flusher;
+    // The batch the flusher is writing to the store, if any; guarded by this
+    private List<T> inFlight;
+
+    private boolean closed;
+    private boolean flushRequested;
+    private boolean failing;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private volatile String lastError;
+
+    public WriteBehindQueue(String name, Path journalFile, Codec<T> codec, Function<T, ObjectId> idOf,
+                            Consumer<List<T>> sink, int batchSize, long flushMillis, boolean fsync) throws IOException {
+        this.name = name;
+        this.codec = codec;
+        this.idOf = idOf;
+        this.sink = sink;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushMillis = Math.max(10, flushMillis);
+
+        Files.createDirectories(journalFile.toAbsolutePath().getParent());
+        this.journal = RecordLog.open(journalFile, fsync, (op, id, payload) -> {
+            if (op == RecordLog.PUT) {
+                pending.put(id, BsonBytes.decode(codec, payload));
+            } else {
+                pending.remove(id);
+            }
+        });
+        if (!pending.isEmpty()) {
+            System.out.println("Write-behind " + name + ": replaying " + pending.size() + " journaled writes");
+        }
+
+        flusher = new Thread(this::run, "write-behind-" + name);
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /** Journals the item and returns; it reaches the store on the next flush. */
+    public void submit(T item) {
+        ObjectId id = idOf.apply(item);
+        byte[] payload = BsonBytes.encode(codec, item);
+        synchronized (this) {
+            if (!closed) {
+                try {
+                    journal.append(RecordLog.PUT, id, payload);
+                    pending.put(id, item);
+                    submitted.incrementAndGet();
+                    if (pending.size() >= batchSize) notifyAll();
+                    return;
+                } catch (IOException e) {
+                    System.err.println("Write-behind " + name + ": journal write failed, writing through: " + e.getMessage());
+                }
+            }
+        }
+        // No journal to rely on: fall back to a direct write
+        sink.accept(Collections.singletonList(item));
+    }
+
+    /** Items not yet flushed that match the filter, oldest first. */
+    public synchronized List<T> pending(Predicate<T> filter) {
+        List<T> result = new ArrayList<>();
+        for (T item : pending.values()) {
+            if (filter.test(item)) result.add(item);
+        }
+        return result;
+    }
+
+    /**
+     * Drops queued items matching the filter, e.g. when their owner is deleted.
+     * If the batch being flushed holds a match, waits until it has landed, so
+     * a delete run against the store afterwards also removes those items.
+     */
+    public synchronized void discard(Predicate<T> filter) {
+        List<RecordLog.Record> records = new ArrayList<>();
+        for (T item : pending.values()) {
+            if (filter.test(item)) records.add(new RecordLog.Record(RecordLog.DELETE, idOf.apply(item), new byte[0]));
+        }
+        if (!records.isEmpty()) {
+            try {
+                journal.appendAll(records);
+                pending.values().removeIf(filter);
+            } catch (IOException e) {
+                System.err.println("Write-behind " + name + ": could not discard queued writes: " + e.getMessage());
+            }
+        }
+        while (inFlight != null && inFlight.stream().anyMatch(filter)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** Asks the flusher to write out everything now instead of waiting for the timer. */
+    public synchronized void flush() {
+        flushRequested = true;
+        notifyAll();
+    }
+
+    private void run() {
+        long delay = flushMillis;
+        while (true) {
+            synchronized (this) {
+                long deadline = System.currentTimeMillis() + delay;
+                try {
+                    // While failing only the backoff timer triggers a retry, not queue size
+                    while (!closed && !flushRequested && (failing || pending.size() < batchSize)) {
+                        long wait = deadline - System.currentTimeMillis();
+                        if (wait <= 0) break;
+                        wait(wait);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) return;
+                flushRequested = false;
+            }
+            boolean ok = flushPending();
+            synchronized (this) {
+                failing = !ok;
+            }
+            delay = ok ? flushMillis : Math.min(delay * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
+    private boolean flushPending() {
+        while (true) {
+            List<T> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) return true;
+                batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+                for (T item : pending.values()) {
+                    batch.add(item);
+                    if (batch.size() == batchSize) break;
+                }
+                inFlight = batch;
+            }
+            try {
+                sink.accept(batch);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    inFlight = null;
+                    notifyAll();
+                }
+                failedFlushes.incrementAndGet();
+                lastError = e.getMessage();
+                System.err.println("Write-behind " + name + ": flush of " + batch.size() + " failed, will retry: " + e.getMessage());
+                return false;
+            }
+            acknowledge(batch);
+        }
+    }
+
+    private synchronized void acknowledge(List<T> batch) {
+        inFlight = null;
+        notifyAll();
+        List<RecordLog.Record> done = new ArrayList<>(batch.size());
+        for (T item : batch) {
+            ObjectId id = idOf.apply(item);
+            if (pending.remove(id) != null) done.add(new RecordLog.Record(RecordLog.DELETE, id, new byte[0]));
+        }
+        flushed.addAndGet(batch.size());
+        batches.incrementAndGet();
+        try {
+            if (pending.isEmpty()) {
+                journal.rewrite(Collections.<RecordLog.Record>emptyList());
+            } else {
+                journal.appendAll(done);
+            }
+        } catch (IOException e) {
+            // Worst case the batch is replayed next start and skipped as duplicates
+            System.err.println("Write-behind " + name + ": could not mark batch done: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the flusher and makes one last attempt to write out the queue,
+     * waiting at most timeoutMillis for the in-flight batch. Whatever is left
+     * stays in the journal for the next start.
+     */
+    public void close(long timeoutMillis) {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!flusher.isAlive()) flushPending();
+        synchronized (this) {
+            if (!pending.isEmpty()) {
+                System.err.println("Write-behind " + name + ": " + pending.size() + " writes left in the journal");
+            }
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Write-behind " + name + ": error closing journal: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        close(5000);
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(name, pending.size(), submitted.get(), flushed.get(), batches.get(),
+                failedFlushes.get(), lastError);
+    }
+
+    /** Point-in-time view of the queue. */
+    public static class Stats {
+        private final String name;
+        private final int depth;
+        private final long submitted;
+        private final long flushed;
+        private final long batches;
+        private final long failedFlushes;
+        private final String lastError;
+
+        Stats(String name, int depth, long submitted, long flushed, long batches, long failedFlushes, String lastError) {
+            this.name = name;
+            this.depth = depth;
+            this.submitted = submitted;
+            this.flushed = flushed;
+            this.batches = batches;
+            this.failedFlushes = failedFlushes;
+            this.lastError = lastError;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        public long getFlushed() {
+            return flushed;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        public long getFailedFlushes() {
+            return failedFlushes;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": depth=" + depth + " submitted=" + submitted + " flushed=" + flushed
+                    + " batches=" + batches + " failedFlushes=" + failedFlushes
+                    + (lastError != null ? " lastError=" + lastError : "");
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package db;
+
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Sends quiz results through a write-behind queue; history reads include the ones not flushed yet. */
+class WriteBehindQuizResultStore implements QuizResultStore {
+
+    private static final Comparator<QuizResult> NEWEST_FIRST = Comparator
+            .comparing(QuizResult::getDate, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(QuizResult::getId, Comparator.reverseOrder());
+
+    private final QuizResultStore delegate;
+    private final WriteBehindQueue<QuizResult> queue;
+
+    WriteBehindQuizResultStore(QuizResultStore delegate, WriteBehindQueue<QuizResult> queue) {
+        this.delegate = delegate;
+        this.queue = queue;
+    }
+
+    @Override
+    public void insert(QuizResult result) {
+        queue.submit(result);
+    }
+
+    @Override
+    public void insertMany(List<QuizResult> results) {
+        for (QuizResult result : results) queue.submit(result);
+    }
+
+    @Override
+    public List<QuizResult> findByUser(ObjectId userId) {
+        List<QuizResult> result = merge(delegate.findByUser(userId), queue.pending(r -> userId.equals(r.getUserId())));
+        result.sort(NEWEST_FIRST);
+        return result;
+    }
+
+    @Override
+    public List<QuizResult> findByUserBefore(ObjectId userId, Date beforeDate, ObjectId beforeId, int limit) {
+        QuizResult bound = beforeDate != null ? new QuizResult(beforeId, userId, null, 0, 0, null, beforeDate) : null;
+        List<QuizResult> result = merge(delegate.findByUserBefore(userId, beforeDate, beforeId, limit),
+                queue.pending(r -> userId.equals(r.getUserId()) && (bound == null || NEWEST_FIRST.compare(r, bound) > 0)));
+        result.sort(NEWEST_FIRST);
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    private static List<QuizResult> merge(List<QuizResult> stored, List<QuizResult> queued) {
+        if (queued.isEmpty()) return stored;
+        List<QuizResult> result = new ArrayList<>(stored);
+        Set<ObjectId> ids = new HashSet<>();
+        for (QuizResult r : stored) ids.add(r.getId());
+        for (QuizResult r : queued) {
+            if (ids.add(r.getId())) result.add(r);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,31 @@
+package db.embedded;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import java.nio.ByteBuffer;
+
+/** Turns codec-backed objects into raw BSON bytes and back, for the log files. */
+public final class BsonBytes {
+
+    private BsonBytes() {
+    }
+
+    public static <T> byte[] encode(Codec<T> codec, T value) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            codec.encode(writer, value, EncoderContext.builder().build());
+        }
+        return buffer.toByteArray();
+    }
+
+    public static <T> T decode(Codec<T> codec, byte[] payload) {
+        try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(payload))) {
+            return codec.decode(reader, DecoderContext.builder().build());
+        }
+    }
+}
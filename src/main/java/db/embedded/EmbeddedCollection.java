@@ -0,0 +1,224 @@
+package db.embedded;
+
+import org.bson.codecs.Codec;
+import org.bson.types.ObjectId;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * One collection of typed records held in memory and persisted to a RecordLog.
+ *
+ * Writes go to the log first and then to the in-memory maps, all under the
+ * write lock; reads share the read lock. Records are stored as the same BSON
+ * the Mongo codecs produce, so both backends agree on the format.
+ */
+class EmbeddedCollection<T> implements Closeable {
+
+    private final String name;
+    private final Codec<T> codec;
+    private final Function<T, ObjectId> idOf;
+    private final List<GroupIndex<T>> indexes;
+    private final Map<ObjectId, T> byId = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final RecordLog log;
+
+    EmbeddedCollection(Path file, boolean fsync, Codec<T> codec, Function<T, ObjectId> idOf, List<GroupIndex<T>> indexes)
+            throws IOException {
+        this.name = file.getFileName().toString();
+        this.codec = codec;
+        this.idOf = idOf;
+        this.indexes = new ArrayList<>(indexes);
+        this.log = RecordLog.open(file, fsync, this::replay);
+    }
+
+    private void replay(byte op, ObjectId id, byte[] payload) {
+        if (op == RecordLog.PUT) {
+            putInMemory(id, decode(payload));
+        } else {
+            removeInMemory(id);
+        }
+    }
+
+    <R> R read(Supplier<R> query) {
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Caller must hold the read lock (see {@link #read}). */
+    T get(ObjectId id) {
+        return byId.get(id);
+    }
+
+    /** Caller must hold the read lock (see {@link #read}). */
+    Collection<T> values() {
+        return byId.values();
+    }
+
+    T find(ObjectId id) {
+        return read(() -> byId.get(id));
+    }
+
+    void put(T value) {
+        ObjectId id = idOf.apply(value);
+        byte[] payload = encode(value);
+        lock.writeLock().lock();
+        try {
+            log.append(RecordLog.PUT, id, payload);
+            putInMemory(id, value);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Write to " + name + " failed", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Stores the value only if the condition, checked under the write lock, still holds. */
+    boolean putIf(BooleanSupplier condition, T value) {
+        ObjectId id = idOf.apply(value);
+        byte[] payload = encode(value);
+        lock.writeLock().lock();
+        try {
+            if (!condition.getAsBoolean()) return false;
+            log.append(RecordLog.PUT, id, payload);
+            putInMemory(id, value);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Write to " + name + " failed", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void putAll(List<T> values) {
+        if (values.isEmpty()) return;
+        List<RecordLog.Record> records = new ArrayList<>(values.size());
+        for (T value : values) {
+            records.add(new RecordLog.Record(RecordLog.PUT, idOf.apply(value), encode(value)));
+        }
+        lock.writeLock().lock();
+        try {
+            log.appendAll(records);
+            for (T value : values) putInMemory(idOf.apply(value), value);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Write to " + name + " failed", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Applies the change to the stored record, if there is one, under the write lock. */
+    boolean update(ObjectId id, Function<T, T> change) {
+        lock.writeLock().lock();
+        try {
+            T current = byId.get(id);
+            if (current == null) return false;
+            T updated = change.apply(current);
+            log.append(RecordLog.PUT, id, encode(updated));
+            putInMemory(id, updated);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Write to " + name + " failed", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Deletes whatever the selector picks from the collection; it runs under the write lock. */
+    int deleteWhere(Supplier<Collection<T>> selector) {
+        lock.writeLock().lock();
+        try {
+            List<T> doomed = new ArrayList<>(selector.get());
+            if (doomed.isEmpty()) return 0;
+            List<RecordLog.Record> records = new ArrayList<>(doomed.size());
+            for (T value : doomed) {
+                records.add(new RecordLog.Record(RecordLog.DELETE, idOf.apply(value), new byte[0]));
+            }
+            log.appendAll(records);
+            for (T value : doomed) removeInMemory(idOf.apply(value));
+            return doomed.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Delete from " + name + " failed", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void putInMemory(ObjectId id, T value) {
+        T previous = byId.put(id, value);
+        for (GroupIndex<T> index : indexes) {
+            if (previous != null) index.remove(previous);
+            index.add(value);
+        }
+    }
+
+    private void removeInMemory(ObjectId id) {
+        T previous = byId.remove(id);
+        if (previous == null) return;
+        for (GroupIndex<T> index : indexes) index.remove(previous);
+    }
+
+    /** Rewrites the log once overwritten/deleted records outnumber live ones. */
+    void compactIfNeeded() {
+        long live;
+        long total;
+        lock.readLock().lock();
+        try {
+            live = byId.size();
+            total = log.recordCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (total - live > Math.max(1000, live)) compact();
+    }
+
+    void compact() {
+        lock.writeLock().lock();
+        try {
+            long before = log.recordCount();
+            List<RecordLog.Record> live = new ArrayList<>(byId.size());
+            for (Map.Entry<ObjectId, T> e : byId.entrySet()) {
+                live.add(new RecordLog.Record(RecordLog.PUT, e.getKey(), encode(e.getValue())));
+            }
+            log.rewrite(live);
+            System.out.println("Compacted " + name + ": " + before + " -> " + live.size() + " records");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Compaction of " + name + " failed", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private byte[] encode(T value) {
+        return BsonBytes.encode(codec, value);
+    }
+
+    private T decode(byte[] payload) {
+        return BsonBytes.decode(codec, payload);
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            log.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
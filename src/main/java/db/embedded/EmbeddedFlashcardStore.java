@@ -0,0 +1,182 @@
+package db.embedded;
+
+import create_flashcard.Flashcard;
+import create_flashcard.ReviewState;
+import db.BulkInsertResult;
+import db.Codecs;
+import db.FlashcardStore;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+
+class EmbeddedFlashcardStore implements FlashcardStore {
+
+    private static final Comparator<Flashcard> BY_ID = Comparator.comparing(Flashcard::getId);
+
+    private final GroupIndex<Flashcard> byDeck = new GroupIndex<>(
+            c -> c.getUserId() != null ? deckKey(c.getUserId(), c.getSubject()) : null, BY_ID);
+    private final GroupIndex<Flashcard> byUser = new GroupIndex<>(Flashcard::getUserId, BY_ID);
+    // The embedded counterpart of the {userId, subject, due} index
+    private final GroupIndex<Flashcard> byDue = new GroupIndex<>(
+            c -> c.getUserId() != null ? deckKey(c.getUserId(), c.getSubject()) : null,
+            Comparator.comparingLong(Flashcard::getDue).thenComparing(BY_ID));
+    private final EmbeddedCollection<Flashcard> cards;
+
+    EmbeddedFlashcardStore(Path dir, boolean fsync) throws IOException {
+        cards = new EmbeddedCollection<>(dir.resolve("flashcards.log"), fsync, Codecs.FLASHCARD, Flashcard::getId,
+                Arrays.asList(byDeck, byUser, byDue));
+    }
+
+    EmbeddedCollection<Flashcard> collection() {
+        return cards;
+    }
+
+    private static List<Object> deckKey(ObjectId userId, String subject) {
+        return Arrays.asList(userId, subject);
+    }
+
+    @Override
+    public void insert(Flashcard card) {
+        cards.put(card);
+    }
+
+    // Each batch is one log append; a failed append fails that batch only
+    @Override
+    public BulkInsertResult insertMany(List<Flashcard> toInsert, int batchSize, boolean ordered) {
+        List<BulkInsertResult.Failure> failures = new ArrayList<>();
+        int inserted = 0;
+        int size = Math.max(1, batchSize);
+        for (int start = 0; start < toInsert.size(); start += size) {
+            int end = Math.min(start + size, toInsert.size());
+            try {
+                cards.putAll(toInsert.subList(start, end));
+                inserted += end - start;
+            } catch (UncheckedIOException ex) {
+                for (int i = start; i < end; i++) {
+                    failures.add(new BulkInsertResult.Failure(i, ex.getMessage()));
+                }
+                if (ordered) {
+                    for (int i = end; i < toInsert.size(); i++) {
+                        failures.add(new BulkInsertResult.Failure(i, "Skipped after an earlier error in an ordered insert"));
+                    }
+                    break;
+                }
+            }
+        }
+        return new BulkInsertResult(toInsert.size(), inserted, failures);
+    }
+
+    @Override
+    public List<Flashcard> findByUser(ObjectId userId) {
+        return cards.read(() -> new ArrayList<>(byUser.get(userId)));
+    }
+
+    @Override
+    public List<Flashcard> findDeck(ObjectId userId, String subject) {
+        return cards.read(() -> new ArrayList<>(byDeck.get(deckKey(userId, subject))));
+    }
+
+    @Override
+    public List<Flashcard> findQuestions(ObjectId userId, String subject) {
+        return cards.read(() -> {
+            List<Flashcard> questions = new ArrayList<>();
+            for (Flashcard c : byDeck.get(deckKey(userId, subject))) {
+                questions.add(new Flashcard(c.getId(), null, null, c.getQuestion(), null));
+            }
+            return questions;
+        });
+    }
+
+    @Override
+    public List<Flashcard> findDeckAfter(ObjectId userId, String subject, ObjectId afterId, int limit,
+                                         boolean questionsOnly) {
+        return cards.read(() -> {
+            NavigableSet<Flashcard> deck = byDeck.get(deckKey(userId, subject));
+            if (afterId != null) deck = deck.tailSet(new Flashcard(afterId, null, null, null, null), false);
+            List<Flashcard> page = new ArrayList<>(Math.min(limit, deck.size()));
+            for (Flashcard c : deck) {
+                if (page.size() == limit) break;
+                page.add(questionsOnly ? new Flashcard(c.getId(), null, null, c.getQuestion(), null) : c);
+            }
+            return page;
+        });
+    }
+
+    @Override
+    public List<String> findAnswers(ObjectId userId, String subject) {
+        return cards.read(() -> {
+            List<String> answers = new ArrayList<>();
+            for (Flashcard c : byDeck.get(deckKey(userId, subject))) {
+                answers.add(c.getAnswer());
+            }
+            return answers;
+        });
+    }
+
+    @Override
+    public String findAnswer(ObjectId cardId) {
+        Flashcard card = cards.find(cardId);
+        return card != null ? card.getAnswer() : null;
+    }
+
+    @Override
+    public List<Flashcard> findDue(ObjectId userId, String subject, long now, int limit) {
+        return cards.read(() -> {
+            List<Flashcard> due = new ArrayList<>();
+            for (Flashcard c : byDue.get(deckKey(userId, subject))) {
+                if (due.size() == limit || c.getDue() > now) break;
+                due.add(c);
+            }
+            return due;
+        });
+    }
+
+    @Override
+    public Long findNextDue(ObjectId userId, String subject) {
+        return cards.read(() -> {
+            NavigableSet<Flashcard> deck = byDue.get(deckKey(userId, subject));
+            return deck.isEmpty() ? null : deck.first().getDue();
+        });
+    }
+
+    @Override
+    public void updateReview(ObjectId cardId, ReviewState review) {
+        cards.update(cardId, card -> card.withReview(review));
+    }
+
+    @Override
+    public long count(ObjectId userId, String subject, int limit) {
+        long total = cards.read(() -> byDeck.get(deckKey(userId, subject)).size());
+        return limit > 0 ? Math.min(total, limit) : total;
+    }
+
+    @Override
+    public long count(ObjectId userId) {
+        return cards.read(() -> byUser.get(userId).size());
+    }
+
+    @Override
+    public Set<String> findSubjects(ObjectId userId) {
+        return cards.read(() -> {
+            Set<String> subjects = new HashSet<>();
+            for (Flashcard c : byUser.get(userId)) {
+                if (c.getSubject() != null) subjects.add(c.getSubject());
+            }
+            return subjects;
+        });
+    }
+
+    @Override
+    public void deleteByUser(ObjectId userId) {
+        cards.deleteWhere(() -> byUser.get(userId));
+    }
+}
@@ -0,0 +1,91 @@
+package db.embedded;
+
+import db.Codecs;
+import db.Message;
+import db.MessageStore;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Date;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+
+class EmbeddedMessageStore implements MessageStore {
+
+    private static final Comparator<Message> BY_TIME = Comparator
+            .comparing(Message::getTimestamp, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(Message::getId);
+
+    private final GroupIndex<Message> byConversation = new GroupIndex<>(
+            m -> conversationKey(m.getSenderId(), m.getReceiverId()), BY_TIME);
+    private final GroupIndex<Message> byReceiver = new GroupIndex<>(Message::getReceiverId, BY_TIME);
+    private final GroupIndex<Message> bySender = new GroupIndex<>(Message::getSenderId, BY_TIME);
+    private final EmbeddedCollection<Message> messages;
+
+    EmbeddedMessageStore(Path dir, boolean fsync) throws IOException {
+        messages = new EmbeddedCollection<>(dir.resolve("messages.log"), fsync, Codecs.MESSAGE, Message::getId,
+                Arrays.asList(byConversation, byReceiver, bySender));
+    }
+
+    EmbeddedCollection<Message> collection() {
+        return messages;
+    }
+
+    // Same key for both directions of a conversation
+    private static Object conversationKey(ObjectId a, ObjectId b) {
+        if (a == null || b == null) return null;
+        return a.compareTo(b) <= 0 ? Arrays.asList(a, b) : Arrays.asList(b, a);
+    }
+
+    @Override
+    public void insert(Message message) {
+        messages.put(message);
+    }
+
+    @Override
+    public void insertMany(List<Message> batch) {
+        messages.putAll(batch);
+    }
+
+    @Override
+    public List<Message> findForReceiver(ObjectId userId) {
+        return messages.read(() -> new ArrayList<>(byReceiver.get(userId).descendingSet()));
+    }
+
+    @Override
+    public List<Message> findConversation(ObjectId user1Id, ObjectId user2Id) {
+        return messages.read(() -> new ArrayList<>(byConversation.get(conversationKey(user1Id, user2Id))));
+    }
+
+    @Override
+    public List<Message> findConversationBefore(ObjectId user1Id, ObjectId user2Id, Date beforeTime, ObjectId beforeId,
+                                                int limit) {
+        return messages.read(() -> {
+            NavigableSet<Message> all = byConversation.get(conversationKey(user1Id, user2Id));
+            if (beforeTime != null && beforeId != null) {
+                all = all.headSet(new Message(beforeId, null, null, null, beforeTime), false);
+            }
+            List<Message> page = new ArrayList<>(Math.min(limit, all.size()));
+            for (Message m : all.descendingSet()) {
+                if (page.size() == limit) break;
+                page.add(m);
+            }
+            return page;
+        });
+    }
+
+    @Override
+    public void deleteForUser(ObjectId userId) {
+        messages.deleteWhere(() -> {
+            Set<Message> doomed = new LinkedHashSet<>(bySender.get(userId));
+            doomed.addAll(byReceiver.get(userId));
+            return doomed;
+        });
+    }
+}
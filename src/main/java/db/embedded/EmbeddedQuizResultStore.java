@@ -0,0 +1,63 @@
+package db.embedded;
+
+import db.Codecs;
+import db.QuizResult;
+import db.QuizResultStore;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.NavigableSet;
+
+class EmbeddedQuizResultStore implements QuizResultStore {
+
+    private final GroupIndex<QuizResult> byUser = new GroupIndex<>(QuizResult::getUserId, Comparator
+            .comparing(QuizResult::getDate, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(QuizResult::getId));
+    private final EmbeddedCollection<QuizResult> results;
+
+    EmbeddedQuizResultStore(Path dir, boolean fsync) throws IOException {
+        results = new EmbeddedCollection<>(dir.resolve("quizResults.log"), fsync, Codecs.QUIZ_RESULT,
+                QuizResult::getId, Collections.singletonList(byUser));
+    }
+
+    EmbeddedCollection<QuizResult> collection() {
+        return results;
+    }
+
+    @Override
+    public void insert(QuizResult result) {
+        results.put(result);
+    }
+
+    @Override
+    public void insertMany(List<QuizResult> batch) {
+        results.putAll(batch);
+    }
+
+    @Override
+    public List<QuizResult> findByUser(ObjectId userId) {
+        return results.read(() -> new ArrayList<>(byUser.get(userId).descendingSet()));
+    }
+
+    @Override
+    public List<QuizResult> findByUserBefore(ObjectId userId, Date beforeDate, ObjectId beforeId, int limit) {
+        return results.read(() -> {
+            NavigableSet<QuizResult> all = byUser.get(userId);
+            if (beforeDate != null && beforeId != null) {
+                all = all.headSet(new QuizResult(beforeId, userId, null, 0, 0, null, beforeDate), false);
+            }
+            List<QuizResult> page = new ArrayList<>(Math.min(limit, all.size()));
+            for (QuizResult r : all.descendingSet()) {
+                if (page.size() == limit) break;
+                page.add(r);
+            }
+            return page;
+        });
+    }
+}
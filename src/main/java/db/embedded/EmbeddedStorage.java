@@ -0,0 +1,107 @@
+package db.embedded;
+
+import db.FlashcardStore;
+import db.MessageStore;
+import db.QuizResultStore;
+import db.UserStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local, server-less storage: one append-only log file per collection in a
+ * directory, loaded fully into memory on open.
+ *
+ * Logs are compacted in the background once they are mostly dead records.
+ * Set thinkdeck.embedded.fsync=true to force every append to disk (slower,
+ * but survives power loss, not just a crashed process).
+ */
+public class EmbeddedStorage implements Closeable {
+
+    private final Path dir;
+    private final EmbeddedUserStore users;
+    private final EmbeddedFlashcardStore flashcards;
+    private final EmbeddedMessageStore messages;
+    private final EmbeddedQuizResultStore quizResults;
+    private final List<EmbeddedCollection<?>> collections;
+    private final ScheduledExecutorService compactor;
+
+    private EmbeddedStorage(Path dir, boolean fsync, long compactSeconds) throws IOException {
+        this.dir = dir;
+        long start = System.currentTimeMillis();
+        users = new EmbeddedUserStore(dir, fsync);
+        flashcards = new EmbeddedFlashcardStore(dir, fsync);
+        messages = new EmbeddedMessageStore(dir, fsync);
+        quizResults = new EmbeddedQuizResultStore(dir, fsync);
+        collections = Arrays.asList(users.collection(), flashcards.collection(),
+                messages.collection(), quizResults.collection());
+        System.out.println("Embedded storage opened at " + dir.toAbsolutePath() + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "embedded-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        compactor.scheduleWithFixedDelay(this::compactIfNeeded, compactSeconds, compactSeconds, TimeUnit.SECONDS);
+    }
+
+    public static EmbeddedStorage open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        boolean fsync = Boolean.getBoolean("thinkdeck.embedded.fsync");
+        long compactSeconds = Long.getLong("thinkdeck.embedded.compactSeconds", 60L);
+        return new EmbeddedStorage(dir, fsync, Math.max(1, compactSeconds));
+    }
+
+    private void compactIfNeeded() {
+        for (EmbeddedCollection<?> collection : collections) {
+            try {
+                collection.compactIfNeeded();
+            } catch (RuntimeException e) {
+                System.err.println("Compaction failed: " + e.getMessage());
+            }
+        }
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    public UserStore users() {
+        return users;
+    }
+
+    public FlashcardStore flashcards() {
+        return flashcards;
+    }
+
+    public MessageStore messages() {
+        return messages;
+    }
+
+    public QuizResultStore quizResults() {
+        return quizResults;
+    }
+
+    @Override
+    public void close() throws IOException {
+        compactor.shutdownNow();
+        IOException failure = null;
+        for (EmbeddedCollection<?> collection : collections) {
+            try {
+                collection.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+        System.out.println("Embedded storage closed.");
+    }
+}
@@ -0,0 +1,123 @@
+package db.embedded;
+
+import db.Codecs;
+import db.User;
+import db.UserStore;
+import org.apache.commons.lang3.tuple.Pair;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+class EmbeddedUserStore implements UserStore {
+
+    // Same sphere the Mongo 2dsphere index measures on, so both backends agree on distances
+    private static final double EARTH_RADIUS_KM = 6378.1;
+
+    private final GroupIndex<User> byUsername = new GroupIndex<>(User::getUsername, Comparator.comparing(User::getId));
+    private final EmbeddedCollection<User> users;
+
+    EmbeddedUserStore(Path dir, boolean fsync) throws IOException {
+        users = new EmbeddedCollection<>(dir.resolve("users.log"), fsync, Codecs.USER, User::getId,
+                Collections.singletonList(byUsername));
+    }
+
+    EmbeddedCollection<User> collection() {
+        return users;
+    }
+
+    @Override
+    public void insert(User user) {
+        if (!users.putIf(() -> byUsername.get(user.getUsername()).isEmpty(), user)) {
+            throw new IllegalArgumentException("Username already taken: " + user.getUsername());
+        }
+    }
+
+    @Override
+    public User findByCredentials(String username, String password) {
+        return users.read(() -> {
+            for (User user : byUsername.get(username)) {
+                if (Objects.equals(user.getPassword(), password)) return user;
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public User findById(ObjectId userId) {
+        return users.find(userId);
+    }
+
+    @Override
+    public List<User> findVisible() {
+        return users.read(() -> {
+            List<User> visible = new ArrayList<>();
+            for (User user : users.values()) {
+                if (!user.isHidden()) visible.add(user);
+            }
+            return visible;
+        });
+    }
+
+    @Override
+    public void setHidden(ObjectId userId, boolean hidden) {
+        users.update(userId, u -> new User(u.getId(), u.getUsername(), u.getEmail(), u.getPassword(),
+                u.getLatitude(), u.getLongitude(), hidden, u.canReceiveMessages()));
+    }
+
+    @Override
+    public void setCanReceiveMessages(ObjectId userId, boolean canReceive) {
+        users.update(userId, u -> new User(u.getId(), u.getUsername(), u.getEmail(), u.getPassword(),
+                u.getLatitude(), u.getLongitude(), u.isHidden(), canReceive));
+    }
+
+    @Override
+    public void update(ObjectId userId, String username, String email, Double latitude, Double longitude) {
+        boolean hasLocation = latitude != null && longitude != null;
+        // Checked under the write lock, like insert, so this matches Mongo's unique username index
+        users.update(userId, u -> {
+            for (User other : byUsername.get(username)) {
+                if (!other.getId().equals(userId)) throw new IllegalArgumentException("Username already taken: " + username);
+            }
+            return new User(u.getId(), username, email, u.getPassword(),
+                    hasLocation ? latitude : null, hasLocation ? longitude : null, u.isHidden(), u.canReceiveMessages());
+        });
+    }
+
+    @Override
+    public void delete(ObjectId userId) {
+        users.deleteWhere(() -> {
+            User user = users.get(userId);
+            return user != null ? Collections.singletonList(user) : Collections.<User>emptyList();
+        });
+    }
+
+    // No spatial index here: a linear haversine pass is fine for the few users a local store holds
+    @Override
+    public List<Pair<User, Double>> findWithinRadius(double latitude, double longitude, double radiusInKm) {
+        List<Pair<User, Double>> result = users.read(() -> {
+            List<Pair<User, Double>> found = new ArrayList<>();
+            for (User user : users.values()) {
+                if (!user.hasLocation()) continue;
+                double distance = distanceKm(latitude, longitude, user.getLatitude(), user.getLongitude());
+                if (distance <= radiusInKm) found.add(Pair.of(user, distance));
+            }
+            return found;
+        });
+        result.sort(Comparator.comparing(Pair::getRight));
+        return result;
+    }
+
+    private static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
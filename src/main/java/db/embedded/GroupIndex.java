@@ -0,0 +1,46 @@
+package db.embedded;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Secondary index: a hash lookup on the group key, each group kept sorted.
+ * The comparator must be a total order (break ties on _id) so updates can
+ * remove the exact old entry.
+ */
+class GroupIndex<T> {
+
+    private final Function<T, Object> groupKey;
+    private final Comparator<T> order;
+    private final Map<Object, NavigableSet<T>> groups = new HashMap<>();
+
+    GroupIndex(Function<T, Object> groupKey, Comparator<T> order) {
+        this.groupKey = groupKey;
+        this.order = order;
+    }
+
+    void add(T value) {
+        Object key = groupKey.apply(value);
+        if (key == null) return;
+        groups.computeIfAbsent(key, k -> new TreeSet<>(order)).add(value);
+    }
+
+    void remove(T value) {
+        Object key = groupKey.apply(value);
+        if (key == null) return;
+        NavigableSet<T> group = groups.get(key);
+        if (group == null) return;
+        group.remove(value);
+        if (group.isEmpty()) groups.remove(key);
+    }
+
+    NavigableSet<T> get(Object key) {
+        NavigableSet<T> group = groups.get(key);
+        return group != null ? Collections.unmodifiableNavigableSet(group) : Collections.emptyNavigableSet();
+    }
+}
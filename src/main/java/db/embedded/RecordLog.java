@@ -0,0 +1,200 @@
+package db.embedded;
+
+import org.bson.types.ObjectId;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of PUT/DELETE records keyed by ObjectId.
+ *
+ * Record layout: payload length (int), CRC32 of the rest (int), op (byte),
+ * id (12 bytes), payload (BSON). On open the file is replayed front to back
+ * and cut at the first short or corrupt record, which is what a crash in the
+ * middle of an append leaves behind. Used by the embedded collections and
+ * by the write-behind journal.
+ */
+public class RecordLog implements Closeable {
+
+    public static final byte PUT = 1;
+    public static final byte DELETE = 2;
+
+    private static final int HEADER_SIZE = 4 + 4 + 1 + 12;
+    private static final int MAX_PAYLOAD = 16 * 1024 * 1024;
+
+    public interface Visitor {
+        void accept(byte op, ObjectId id, byte[] payload);
+    }
+
+    public static class Record {
+        final byte op;
+        final ObjectId id;
+        final byte[] payload;
+
+        public Record(byte op, ObjectId id, byte[] payload) {
+            this.op = op;
+            this.id = id;
+            this.payload = payload;
+        }
+    }
+
+    private final Path path;
+    private final boolean fsync;
+    private FileChannel channel;
+    private long records;
+
+    private RecordLog(Path path, boolean fsync) {
+        this.path = path;
+        this.fsync = fsync;
+    }
+
+    public static RecordLog open(Path path, boolean fsync, Visitor visitor) throws IOException {
+        RecordLog log = new RecordLog(path, fsync);
+        log.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        log.replay(visitor);
+        return log;
+    }
+
+    private void replay(Visitor visitor) throws IOException {
+        long fileSize = channel.size();
+        long good = 0;
+        channel.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+        byte[] idBytes = new byte[12];
+        CRC32 crc = new CRC32();
+        while (good < fileSize) {
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                byte op = in.readByte();
+                in.readFully(idBytes);
+                if (length < 0 || length > MAX_PAYLOAD || (op != PUT && op != DELETE)) break;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                crc.reset();
+                crc.update(op);
+                crc.update(idBytes);
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) break;
+
+                visitor.accept(op, new ObjectId(idBytes), payload);
+                good += HEADER_SIZE + length;
+                records++;
+            } catch (EOFException e) {
+                break;
+            }
+        }
+        if (good < fileSize) {
+            System.err.println("Recovered " + path.getFileName() + ": dropped " + (fileSize - good)
+                    + " bytes of incomplete records");
+            channel.truncate(good);
+        }
+        channel.position(good);
+    }
+
+    public synchronized void append(byte op, ObjectId id, byte[] payload) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        put(buffer, op, id, payload);
+        buffer.flip();
+        write(buffer);
+        records++;
+    }
+
+    // A batch goes out in one write so a crash loses either a suffix or nothing
+    public synchronized void appendAll(List<Record> batch) throws IOException {
+        int total = 0;
+        for (Record r : batch) total += HEADER_SIZE + r.payload.length;
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        for (Record r : batch) put(buffer, r.op, r.id, r.payload);
+        buffer.flip();
+        write(buffer);
+        records += batch.size();
+    }
+
+    private static void put(ByteBuffer buffer, byte op, ObjectId id, byte[] payload) {
+        byte[] idBytes = id.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(op);
+        crc.update(idBytes);
+        crc.update(payload);
+        buffer.putInt(payload.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(op);
+        buffer.put(idBytes);
+        buffer.put(payload);
+    }
+
+    // On failure (e.g. disk full) the partial bytes are cut off again: left in place, replay would
+    // stop at them and drop every record appended after
+    private void write(ByteBuffer buffer) throws IOException {
+        long start = channel.position();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (fsync) channel.force(false);
+        } catch (IOException e) {
+            try {
+                channel.truncate(start);
+                channel.position(start);
+            } catch (IOException rollback) {
+                e.addSuppressed(rollback);
+            }
+            throw e;
+        }
+    }
+
+    public synchronized long recordCount() {
+        return records;
+    }
+
+    /** Replaces the file with just the given live records (written to a temp file, then renamed over). */
+    public synchronized void rewrite(Iterable<Record> live) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".compact");
+        long count = 0;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            for (Record r : live) {
+                int size = HEADER_SIZE + r.payload.length;
+                if (buffer.remaining() < size) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) out.write(buffer);
+                    buffer.clear();
+                    if (buffer.capacity() < size) buffer = ByteBuffer.allocate(size);
+                }
+                put(buffer, r.op, r.id, r.payload);
+                count++;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) out.write(buffer);
+            out.force(true);
+        }
+        channel.close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        records = count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(true);
+            channel.close();
+        }
+    }
+}
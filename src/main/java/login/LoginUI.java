@@ -5,9 +5,9 @@ import component.HyperlinkText;
 import component.Toaster;
 import db.UserManager;
 import db.FlashcardManager;
-import db.TestMongo;
+import db.Storage;
 
-import org.bson.Document;
+import db.User;
 
 import javax.swing.*;
 import java.awt.*;
@@ -26,8 +26,7 @@ public class LoginUI extends JFrame {
         SwingUtilities.invokeLater(() -> {
             try {
                 UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-                UserManager.migrateStringLocationsToGeoJSON(); // Migrate data first
-                UserManager.ensureLocationIndex(); // Then ensure the geospatial index is created
+                Storage.startup(); // Mongo (with pending migrations) or the embedded store, see thinkdeck.storage
             } catch (Exception e) {
                 LOGGER.log(Level.SEVERE, "Error during application startup", e);
             }
@@ -116,7 +115,11 @@ public class LoginUI extends JFrame {
         minimizeButton.addActionListener(e -> setState(Frame.ICONIFIED));
 
         JButton closeButton = createControlButton("×", new Color(200, 70, 70));
-        closeButton.addActionListener(e -> System.exit(0));
+        closeButton.addActionListener(e -> {
+            AiQuizPrefetcher.shutdown();
+            Storage.shutdown();
+            System.exit(0);
+        });
 
         controlPanel.add(minimizeButton);
         controlPanel.add(closeButton);
@@ -287,10 +290,10 @@ public class LoginUI extends JFrame {
         String username = usernameField.getText();
         String password = new String(passwordField.getPassword());
 
-        Document user = UserManager.loginUser(username, password);
+        User user = UserManager.loginUser(username, password);
         if (user != null) {
             toaster.success("Login successful");
-            String userId = user.getObjectId("_id").toHexString();
+            String userId = user.getId().toHexString();
             Timer fadeTimer = new Timer(10, e -> {
                 float opacity = getOpacity();
                 opacity -= 0.05f;
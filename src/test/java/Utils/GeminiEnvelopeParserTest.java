@@ -0,0 +1,105 @@
+package Utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GeminiEnvelopeParserTest {
+
+    private static final String RESPONSE = "{\n"
+            + "  \"candidates\": [\n"
+            + "    {\"content\": {\"parts\": [{\"text\": \"[{\\\"q\\\": 1}\"}, {\"text\": \", {\\\"q\\\": 2}]\"}],"
+            + " \"role\": \"model\"},\n"
+            + "     \"finishReason\": \"STOP\", \"index\": 0,"
+            + " \"safetyRatings\": [{\"category\": \"X\", \"probability\": \"NEGLIGIBLE\"}]},\n"
+            + "    {\"content\": {\"parts\": [{\"text\": \"second candidate\"}]}, \"finishReason\": \"MAX_TOKENS\"}\n"
+            + "  ],\n"
+            + "  \"usageMetadata\": {\"promptTokenCount\": 12, \"candidatesTokenCount\": 34, \"totalTokenCount\": 46,"
+            + " \"promptTokensDetails\": [{\"modality\": \"TEXT\", \"tokenCount\": 12}]},\n"
+            + "  \"modelVersion\": \"gemini-x\", \"cached\": false, \"score\": -1.5e3, \"extra\": null\n"
+            + "}";
+
+    @Test
+    void textOfTheFirstCandidateGoesToTheSinkInOrder() {
+        StringBuilder text = new StringBuilder();
+        GeminiEnvelopeParser.Envelope envelope = GeminiEnvelopeParser.parse(RESPONSE, text::append);
+
+        assertEquals("[{\"q\": 1}, {\"q\": 2}]", text.toString());
+        assertEquals("STOP", envelope.getFinishReason());
+        assertEquals(text.length(), envelope.getTextLength());
+    }
+
+    @Test
+    void usageIsReadAndOtherFieldsAreSkipped() {
+        GeminiEnvelopeParser.Envelope envelope = GeminiEnvelopeParser.parse(RESPONSE, text -> { });
+
+        assertEquals(12, envelope.getPromptTokens());
+        assertEquals(34, envelope.getCandidateTokens());
+        assertEquals(46, envelope.getTotalTokens());
+        assertNull(envelope.getBlockReason());
+        assertNull(envelope.getErrorMessage());
+    }
+
+    @Test
+    void escapesAreDecoded() {
+        String json = "{\"candidates\": [{\"content\": {\"parts\": [{\"text\":"
+                + " \"a\\n\\t\\\"quoted\\\" \\\\ \\/ \\u00e9\\u20AC {not} [json]\"}]}}]}";
+        StringBuilder text = new StringBuilder();
+        GeminiEnvelopeParser.parse(json, text::append);
+
+        assertEquals("a\n\t\"quoted\" \\ / é€ {not} [json]", text.toString());
+    }
+
+    @Test
+    void skippedStringsMayHoldBracesAndEscapedQuotes() {
+        String json = "{\"note\": \"} ] \\\" {\", \"candidates\": [{\"finishReason\": \"STOP\","
+                + " \"citation\": {\"title\": \"\\\"}\\\\\"}, \"content\": {\"parts\": [{\"text\": \"ok\"}]}}]}";
+        StringBuilder text = new StringBuilder();
+        GeminiEnvelopeParser.Envelope envelope = GeminiEnvelopeParser.parse(json, text::append);
+
+        assertEquals("ok", text.toString());
+        assertEquals("STOP", envelope.getFinishReason());
+    }
+
+    @Test
+    void blockReasonAndErrorAreReported() {
+        GeminiEnvelopeParser.Envelope blocked = GeminiEnvelopeParser.parse(
+                "{\"promptFeedback\": {\"safetyRatings\": [], \"blockReason\": \"SAFETY\"}}", text -> { });
+        assertEquals("SAFETY", blocked.getBlockReason());
+        assertEquals(0, blocked.getTextLength());
+
+        GeminiEnvelopeParser.Envelope failed = GeminiEnvelopeParser.parse(
+                "{\"error\": {\"code\": 429, \"message\": \"Quota exceeded\", \"status\": \"RESOURCE_EXHAUSTED\"}}",
+                text -> { });
+        assertEquals("Quota exceeded", failed.getErrorMessage());
+    }
+
+    @Test
+    void streamEventIsParsedFromAnOffset() {
+        StringBuilder text = new StringBuilder();
+        GeminiEnvelopeParser.parse("data: {\"candidates\": [{\"content\": {\"parts\": [{\"text\": \"chunk\"}]}}]}",
+                5, text::append);
+
+        assertEquals("chunk", text.toString());
+    }
+
+    @Test
+    void responseThatEndsTooEarlyIsRejected() {
+        for (int length = 0; length < RESPONSE.length(); length++) {
+            String truncated = RESPONSE.substring(0, length);
+            AiException e = assertThrows(AiException.class,
+                    () -> GeminiEnvelopeParser.parse(truncated, text -> { }), "truncated to " + length);
+            assertEquals(AiException.Kind.MALFORMED, e.getKind());
+        }
+    }
+
+    @Test
+    void malformedJsonIsRejected() {
+        assertThrows(AiException.class, () -> GeminiEnvelopeParser.parse("<html>502</html>", text -> { }));
+        assertThrows(AiException.class, () -> GeminiEnvelopeParser.parse("{\"a\" 1}", text -> { }));
+        assertThrows(AiException.class, () -> GeminiEnvelopeParser.parse(
+                "{\"candidates\": [{\"content\": {\"parts\": [{\"text\": \"\\uZZZZ\"}]}}]}", text -> { }));
+    }
+}
@@ -0,0 +1,82 @@
+package Utils;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonArrayStreamParserTest {
+
+    private static final String ARRAY = "[{\"q\": \"What is 2+2?\", \"options\": [\"3\", \"4\"], \"correct\": 1},"
+            + " {\"q\": \"Braces } ] { [ in \\\"text\\\" \\\\\", \"meta\": {\"nested\": [1, {\"deep\": true}]}}]";
+
+    @Test
+    void elementsArriveWholeFromOneFragment() {
+        List<String> elements = new ArrayList<>();
+        JsonArrayStreamParser parser = new JsonArrayStreamParser(elements::add);
+        parser.feed(ARRAY);
+
+        assertTrue(parser.isFinished());
+        assertEquals(2, elements.size());
+        assertEquals("What is 2+2?", new JSONObject(elements.get(0)).getString("q"));
+        JSONObject second = new JSONObject(elements.get(1));
+        assertEquals("Braces } ] { [ in \"text\" \\", second.getString("q"));
+        assertTrue(second.getJSONObject("meta").getJSONArray("nested").getJSONObject(1).getBoolean("deep"));
+    }
+
+    @Test
+    void fragmentsMaySplitAnywhere() {
+        List<String> whole = new ArrayList<>();
+        new JsonArrayStreamParser(whole::add).feed(ARRAY);
+
+        for (int split = 1; split < ARRAY.length(); split++) {
+            List<String> elements = new ArrayList<>();
+            JsonArrayStreamParser parser = new JsonArrayStreamParser(elements::add);
+            parser.feed(ARRAY.substring(0, split));
+            parser.feed(ARRAY.substring(split));
+            assertEquals(whole, elements, "split at " + split);
+        }
+
+        List<String> elements = new ArrayList<>();
+        JsonArrayStreamParser parser = new JsonArrayStreamParser(elements::add);
+        for (char c : ARRAY.toCharArray()) parser.feed(String.valueOf(c));
+        assertEquals(whole, elements);
+        assertTrue(parser.isFinished());
+    }
+
+    @Test
+    void elementIsHandedOverAsSoonAsItCloses() {
+        List<String> elements = new ArrayList<>();
+        JsonArrayStreamParser parser = new JsonArrayStreamParser(elements::add);
+        parser.feed("[{\"a\": 1}, {\"b\": ");
+
+        assertEquals(Arrays.asList("{\"a\": 1}"), elements);
+        assertFalse(parser.isFinished());
+    }
+
+    @Test
+    void fencesAndTextAroundTheArrayAreIgnored() {
+        List<String> elements = new ArrayList<>();
+        JsonArrayStreamParser parser = new JsonArrayStreamParser(elements::add);
+        parser.feed("Sure {here} you go:\n```json\n[{\"a\": 1}]\n```\nAnd another: [{\"b\": 2}]");
+
+        assertEquals(Arrays.asList("{\"a\": 1}"), elements);
+        assertTrue(parser.isFinished());
+    }
+
+    @Test
+    void emptyArrayFinishesWithoutElements() {
+        List<String> elements = new ArrayList<>();
+        JsonArrayStreamParser parser = new JsonArrayStreamParser(elements::add);
+        parser.feed(" [ ] ");
+
+        assertTrue(elements.isEmpty());
+        assertTrue(parser.isFinished());
+    }
+}
@@ -0,0 +1,61 @@
+package create_flashcard;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReviewStateTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @Test
+    void newCardIsDueRightAway() {
+        ReviewState state = ReviewState.initial(NOW);
+        assertEquals(NOW, state.getDue());
+        assertEquals(0, state.getReps());
+        assertEquals(ReviewState.DEFAULT_EASE, state.getEase(), 1e-9);
+    }
+
+    @Test
+    void passesGrowTheIntervalOneSixThenTimesEase() {
+        ReviewState first = ReviewState.initial(NOW).next(4, NOW);
+        assertEquals(1, first.getIntervalDays());
+        assertEquals(NOW + DAY, first.getDue());
+
+        ReviewState second = first.next(4, first.getDue());
+        assertEquals(6, second.getIntervalDays());
+        assertEquals(first.getDue() + 6 * DAY, second.getDue());
+
+        ReviewState third = second.next(4, second.getDue());
+        assertEquals(15, third.getIntervalDays());
+        assertEquals(3, third.getReps());
+    }
+
+    @Test
+    void gradeMovesTheEaseFactor() {
+        ReviewState start = ReviewState.initial(NOW);
+        assertEquals(2.6, start.next(5, NOW).getEase(), 1e-9);
+        assertEquals(2.5, start.next(4, NOW).getEase(), 1e-9);
+        assertEquals(2.36, start.next(3, NOW).getEase(), 1e-9);
+    }
+
+    @Test
+    void failSendsTheCardBackToRelearning() {
+        ReviewState learned = ReviewState.initial(NOW).next(5, NOW).next(5, NOW);
+        ReviewState failed = learned.next(1, NOW);
+
+        assertEquals(NOW + 10 * 60 * 1000, failed.getDue());
+        assertEquals(0, failed.getReps());
+        assertEquals(1, failed.getLapses());
+        assertEquals(1, failed.next(4, failed.getDue()).getIntervalDays());
+    }
+
+    @Test
+    void easeNeverDropsBelowTheMinimum() {
+        ReviewState state = ReviewState.initial(NOW);
+        for (int i = 0; i < 5; i++) state = state.next(0, NOW);
+        assertEquals(ReviewState.MIN_EASE, state.getEase(), 1e-9);
+        assertEquals(5, state.getLapses());
+    }
+}
@@ -0,0 +1,115 @@
+package create_quiz;
+
+import create_flashcard.Flashcard;
+import create_flashcard.ReviewState;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuizSessionTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    private final ObjectId userId = new ObjectId();
+
+    @Test
+    void flashcardSessionSurvivesARoundTrip() throws IOException {
+        Flashcard first = card("2 + 2?", "4", NOW - 2000);
+        Flashcard second = card("Capital of Peru?", "Lima", NOW - 1000);
+        Flashcard later = card("Große Zahl?", "∞", NOW + 86_400_000L);
+        QuizSession session = QuizSession.forCards(QuizSession.Mode.FLASHCARD, userId.toHexString(), "Mixed",
+                Arrays.asList(later, second, first));
+
+        Flashcard drawn = session.draw(NOW);
+        assertEquals(first.getId(), drawn.getId());
+        session.ask(new AiQuizQuestion(drawn.getQuestion(), Arrays.asList("3", "4", "5"), 1), drawn);
+        assertTrue(session.answer(1));
+        Flashcard asked = session.draw(NOW);
+        session.ask(new AiQuizQuestion(asked.getQuestion(), Arrays.asList("Lima", "Quito"), 0), asked);
+
+        QuizSession restored = QuizSession.fromBytes(session.toBytes());
+
+        assertEquals(QuizSession.Mode.FLASHCARD, restored.getMode());
+        assertEquals(userId.toHexString(), restored.getUserId());
+        assertEquals("Mixed", restored.getSubject());
+        assertEquals(1, restored.getScore());
+        assertEquals(1, restored.getAnswered());
+        assertEquals(Collections.singletonList(1), restored.getAnswers());
+        assertEquals("Capital of Peru?", restored.current().getQuestion());
+        assertEquals(second.getId(), restored.currentCard().getId());
+        assertEquals(second.getReview().getDue(), restored.currentCard().getReview().getDue());
+
+        // The card not yet due is still queued, with its text and schedule
+        assertFalse(restored.answer(1));
+        assertFalse(restored.hasRemaining(NOW));
+        Flashcard queued = restored.draw(NOW + 86_400_000L);
+        assertEquals(later.getId(), queued.getId());
+        assertEquals("Große Zahl?", queued.getQuestion());
+        assertEquals("∞", queued.getAnswer());
+    }
+
+    @Test
+    void aiSessionKeepsLongTextAndGenerationState() throws IOException {
+        char[] filler = new char[70_000];
+        Arrays.fill(filler, 'x');
+        String longQuestion = new String(filler);
+        QuizSession session = QuizSession.forAi(userId.toHexString(), "Space");
+        session.addQuestion(new AiQuizQuestion(longQuestion, Arrays.asList("a", "b"), 1));
+
+        QuizSession restored = QuizSession.fromBytes(session.toBytes());
+
+        assertEquals(QuizSession.Mode.AI, restored.getMode());
+        assertFalse(restored.isGenerationDone());
+        assertEquals(longQuestion, restored.current().getQuestion());
+        assertNull(restored.currentCard());
+        assertEquals(1, restored.current().getCorrectOptionIndex());
+    }
+
+    @Test
+    void corruptSnapshotsAreRejected() {
+        QuizSession session = QuizSession.forCards(QuizSession.Mode.PRACTICE, userId.toHexString(), "Deck",
+                Collections.singletonList(card("Q", "A", NOW)));
+        byte[] bytes = session.toBytes();
+
+        byte[] badMagic = bytes.clone();
+        badMagic[0] ^= 0x7F;
+        assertThrows(IOException.class, () -> QuizSession.fromBytes(badMagic));
+
+        byte[] badVersion = bytes.clone();
+        badVersion[4] = 99;
+        assertThrows(IOException.class, () -> QuizSession.fromBytes(badVersion));
+
+        byte[] badMode = bytes.clone();
+        badMode[5] = 42;
+        assertThrows(IOException.class, () -> QuizSession.fromBytes(badMode));
+
+        // The user id's length prefix follows magic, version and mode
+        byte[] hugeLength = bytes.clone();
+        ByteBuffer.wrap(hugeLength).putInt(6, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> QuizSession.fromBytes(hugeLength));
+
+        byte[] badUser = bytes.clone();
+        badUser[10] = '!';
+        assertThrows(IOException.class, () -> QuizSession.fromBytes(badUser));
+
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            assertThrows(IOException.class, () -> QuizSession.fromBytes(truncated), "truncated to " + length);
+        }
+    }
+
+    private Flashcard card(String question, String answer, long due) {
+        return new Flashcard(new ObjectId(), userId, "Mixed", question, answer, null,
+                new ReviewState(due, 0, ReviewState.DEFAULT_EASE, 0, 0));
+    }
+}
@@ -0,0 +1,64 @@
+package create_quiz;
+
+import create_flashcard.Flashcard;
+import create_flashcard.ReviewState;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReviewQueueTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    void mostOverdueCardComesFirst() {
+        Flashcard lastWeek = card(NOW - 7 * 86_400_000L);
+        Flashcard yesterday = card(NOW - 86_400_000L);
+        Flashcard justNow = card(NOW);
+        ReviewQueue queue = new ReviewQueue();
+        queue.addAll(Arrays.asList(justNow, lastWeek, yesterday));
+
+        assertSame(lastWeek, queue.poll(NOW));
+        assertSame(yesterday, queue.poll(NOW));
+        assertSame(justNow, queue.poll(NOW));
+        assertNull(queue.poll(NOW));
+    }
+
+    @Test
+    void cardsNotYetDueAreHeldBack() {
+        Flashcard tomorrow = card(NOW + 86_400_000L);
+        ReviewQueue queue = new ReviewQueue();
+        queue.offer(tomorrow);
+
+        assertFalse(queue.hasDue(NOW));
+        assertNull(queue.poll(NOW));
+        assertEquals(1, queue.size());
+        assertTrue(queue.hasDue(NOW + 86_400_000L));
+        assertSame(tomorrow, queue.poll(NOW + 86_400_000L));
+    }
+
+    @Test
+    void failedCardComesBackAfterRelearning() {
+        Flashcard card = card(NOW - 1000);
+        ReviewQueue queue = new ReviewQueue();
+        queue.offer(card);
+
+        Flashcard answered = queue.poll(NOW);
+        queue.offer(answered.withReview(answered.getReview().next(0, NOW)));
+
+        assertNull(queue.poll(NOW + 60_000));
+        assertEquals(card.getId(), queue.poll(NOW + 10 * 60_000).getId());
+    }
+
+    private static Flashcard card(long due) {
+        return new Flashcard(new ObjectId(), new ObjectId(), "Deck", "Q", "A", null,
+                new ReviewState(due, 0, ReviewState.DEFAULT_EASE, 0, 0));
+    }
+}
@@ -0,0 +1,66 @@
+package db;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class DistractorIndexTest {
+
+    private static final List<String> ANSWERS = Arrays.asList(
+            "Paris", "Berlin", "Madrid", "Rome", "Lisbon", "Vienna", "Prague", "Warsaw",
+            "Athens", "Dublin", "Oslo", "Bern", "Pari", "Parish", "Sofia", "Riga");
+
+    @Test
+    void pickNeverReturnsTheCorrectAnswer() {
+        DistractorIndex index = new DistractorIndex(ANSWERS);
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            String correct = ANSWERS.get(random.nextInt(ANSWERS.size()));
+            List<String> picked = index.pick(correct, 3, random);
+
+            assertEquals(3, picked.size());
+            assertEquals(3, new HashSet<>(picked).size(), "no option twice");
+            for (String option : picked) assertNotEquals(correct, option);
+        }
+    }
+
+    @Test
+    void spellingVariantsOfTheCorrectAnswerAreExcluded() {
+        // Same answer typed differently on two cards; only one of them is filed
+        DistractorIndex index = new DistractorIndex(Arrays.asList("Paris", "  PARIS ", "paris", "Pari", "Parish", "Rome"));
+        assertEquals(4, index.size());
+
+        Random random = new Random(7);
+        for (String correct : Arrays.asList("Paris", " paris", "PARIS  ")) {
+            for (int round = 0; round < 50; round++) {
+                List<String> picked = index.pick(correct, 3, random);
+                assertEquals(3, picked.size());
+                for (String option : picked) {
+                    assertFalse(option.trim().equalsIgnoreCase("paris"), option + " repeats " + correct);
+                }
+            }
+        }
+    }
+
+    @Test
+    void smallDeckGivesFewerOptions() {
+        DistractorIndex index = new DistractorIndex(Arrays.asList("Paris", "Rome"));
+        assertEquals(Arrays.asList("Rome"), index.pick("Paris", 3, new Random(1)));
+    }
+
+    @Test
+    void addedAnswersBecomeCandidates() {
+        DistractorIndex index = new DistractorIndex(Arrays.asList("Paris"));
+        index.add("Berlin");
+        index.add(" ");
+        assertEquals(2, index.size());
+        assertEquals(Arrays.asList("Berlin"), index.pick("Paris", 3, new Random(1)));
+    }
+}
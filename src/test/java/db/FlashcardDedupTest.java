@@ -0,0 +1,62 @@
+package db;
+
+import create_flashcard.Flashcard;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FlashcardDedupTest {
+
+    @TempDir
+    Path dir;
+
+    private final ObjectId userId = new ObjectId();
+
+    @BeforeEach
+    void open() {
+        Storage.openEmbedded(dir);
+    }
+
+    @AfterEach
+    void close() {
+        Storage.shutdown();
+    }
+
+    @Test
+    void templatedQuestionsWithDifferentAnswersAreKept() {
+        BulkInsertResult result = FlashcardManager.addFlashcards(userId, "Geography", Arrays.asList(
+                card("What is the capital of France?", "Paris"),
+                card("What is the capital of Germany?", "Berlin")));
+
+        assertEquals(2, result.getInserted());
+        assertEquals(0, result.getDuplicates());
+        assertEquals(2, FlashcardManager.getFlashcards(userId, "Geography").size());
+    }
+
+    @Test
+    void repeatedCardsAreSkippedWithinABatchAndAgainstTheDeck() {
+        FlashcardManager.addFlashcard(userId, "Geography", "What is the capital of France?", "Paris");
+
+        List<Flashcard> batch = Arrays.asList(
+                card("What is the capital of France", "Paris"),
+                card("What is the capital of Italy?", "Rome"),
+                card("what is the capital of italy?", "Rome"));
+        BulkInsertResult result = FlashcardManager.addFlashcards(userId, "Geography", batch);
+
+        assertEquals(1, result.getInserted());
+        assertEquals(2, result.getDuplicates());
+        assertEquals(2, FlashcardManager.getFlashcards(userId, "Geography").size());
+    }
+
+    private Flashcard card(String question, String answer) {
+        return new Flashcard(null, userId, "Geography", question, answer, null);
+    }
+}
@@ -0,0 +1,43 @@
+package db.embedded;
+
+import db.User;
+import db.UserStore;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EmbeddedUserStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void usernamesStayUniqueOnInsertAndUpdate() throws IOException {
+        try (EmbeddedStorage storage = EmbeddedStorage.open(dir)) {
+            UserStore users = storage.users();
+            User alice = user("alice");
+            User bob = user("bob");
+            users.insert(alice);
+            users.insert(bob);
+
+            assertThrows(IllegalArgumentException.class, () -> users.insert(user("alice")));
+            assertThrows(IllegalArgumentException.class,
+                    () -> users.update(bob.getId(), "alice", "bob@example.com", null, null));
+            assertEquals("bob", users.findById(bob.getId()).getUsername());
+
+            // Keeping your own name is not a clash
+            users.update(alice.getId(), "alice", "new@example.com", null, null);
+            assertEquals("new@example.com", users.findById(alice.getId()).getEmail());
+        }
+    }
+
+    private static User user(String name) {
+        return new User(new ObjectId(), name, name + "@example.com", "secret", null, null, false, true);
+    }
+}
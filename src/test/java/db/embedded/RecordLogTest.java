@@ -0,0 +1,112 @@
+package db.embedded;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RecordLogTest {
+
+    // length (4) + crc (4) + op (1) + id (12)
+    private static final int HEADER_SIZE = 21;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysWhatWasAppended() throws IOException {
+        Path file = dir.resolve("test.log");
+        ObjectId first = new ObjectId();
+        ObjectId second = new ObjectId();
+        try (RecordLog log = RecordLog.open(file, false, (op, id, payload) -> { })) {
+            log.append(RecordLog.PUT, first, bytes("one"));
+            log.appendAll(Arrays.asList(
+                    new RecordLog.Record(RecordLog.PUT, second, bytes("two")),
+                    new RecordLog.Record(RecordLog.DELETE, first, new byte[0])));
+        }
+
+        List<String> replayed = replay(file);
+        assertEquals(Arrays.asList("PUT " + first + " one", "PUT " + second + " two", "DELETE " + first + " "),
+                replayed);
+    }
+
+    @Test
+    void dropsATruncatedTailAndKeepsAppendingAfterIt() throws IOException {
+        Path file = dir.resolve("test.log");
+        ObjectId kept = new ObjectId();
+        try (RecordLog log = RecordLog.open(file, false, (op, id, payload) -> { })) {
+            log.append(RecordLog.PUT, kept, bytes("kept"));
+            log.append(RecordLog.PUT, new ObjectId(), bytes("cut short"));
+        }
+        long goodSize = HEADER_SIZE + "kept".length();
+        // A crash in the middle of the second append
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(goodSize + HEADER_SIZE + 3);
+        }
+
+        assertEquals(Arrays.asList("PUT " + kept + " kept"), replay(file));
+        assertEquals(goodSize, Files.size(file));
+
+        ObjectId next = new ObjectId();
+        try (RecordLog log = RecordLog.open(file, false, (op, id, payload) -> { })) {
+            log.append(RecordLog.PUT, next, bytes("next"));
+        }
+        assertEquals(Arrays.asList("PUT " + kept + " kept", "PUT " + next + " next"), replay(file));
+    }
+
+    @Test
+    void stopsAtACorruptRecord() throws IOException {
+        Path file = dir.resolve("test.log");
+        ObjectId kept = new ObjectId();
+        try (RecordLog log = RecordLog.open(file, false, (op, id, payload) -> { })) {
+            log.append(RecordLog.PUT, kept, bytes("kept"));
+            log.append(RecordLog.PUT, new ObjectId(), bytes("flipped"));
+            log.append(RecordLog.PUT, new ObjectId(), bytes("after"));
+        }
+        long goodSize = HEADER_SIZE + "kept".length();
+        byte[] content = Files.readAllBytes(file);
+        content[(int) goodSize + HEADER_SIZE] ^= 0x40; // first payload byte of the second record
+        Files.write(file, content);
+
+        assertEquals(Arrays.asList("PUT " + kept + " kept"), replay(file));
+        assertEquals(goodSize, Files.size(file));
+    }
+
+    @Test
+    void rewriteKeepsOnlyTheLiveRecords() throws IOException {
+        Path file = dir.resolve("test.log");
+        ObjectId live = new ObjectId();
+        try (RecordLog log = RecordLog.open(file, false, (op, id, payload) -> { })) {
+            for (int i = 0; i < 10; i++) log.append(RecordLog.PUT, live, bytes("v" + i));
+            log.rewrite(Arrays.asList(new RecordLog.Record(RecordLog.PUT, live, bytes("v9"))));
+            assertEquals(1, log.recordCount());
+        }
+        List<byte[]> payloads = new ArrayList<>();
+        RecordLog.open(file, false, (op, id, payload) -> payloads.add(payload)).close();
+        assertEquals(1, payloads.size());
+        assertArrayEquals(bytes("v9"), payloads.get(0));
+    }
+
+    private static List<String> replay(Path file) throws IOException {
+        List<String> records = new ArrayList<>();
+        RecordLog.open(file, false, (op, id, payload) -> records.add(
+                (op == RecordLog.PUT ? "PUT " : "DELETE ") + id + " " + new String(payload, StandardCharsets.UTF_8)))
+                .close();
+        return records;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}